@@ -2,13 +2,12 @@ package io.github.intellij.dlanguage;
 
 import com.intellij.execution.ExecutionException;
 import com.intellij.execution.configurations.GeneralCommandLine;
-import com.intellij.execution.process.CapturingProcessHandler;
-import com.intellij.execution.process.OSProcessHandler;
 import com.intellij.execution.process.ProcessAdapter;
 import com.intellij.execution.process.ProcessEvent;
 import com.intellij.execution.process.ProcessOutput;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.ProjectManager;
 import com.intellij.openapi.projectRoots.*;
 import com.intellij.openapi.projectRoots.impl.SdkConfigurationUtil;
 import com.intellij.openapi.roots.OrderRootType;
@@ -20,6 +19,9 @@ import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.Consumer;
 import io.github.intellij.dlanguage.icons.DlangIcons;
 import io.github.intellij.dlanguage.library.LibFileRootType;
+import io.github.intellij.dlanguage.tools.ToolProcesses;
+import io.github.intellij.dlanguage.tools.ToolProcesses.Priority;
+import io.github.intellij.dlanguage.tools.ToolProcesses.Tool;
 import java.io.IOException;
 import java.nio.file.Files;
 import org.jdom.Element;
@@ -28,7 +30,6 @@ import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.io.File;
-import java.nio.charset.Charset;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.Callable;
@@ -365,8 +366,7 @@ public class DlangSdkType extends SdkType {
         try {
             //this array works around some of the limitations of java
             final String[] configFileArray = {null};
-            final OSProcessHandler handler = new OSProcessHandler(commandLine);
-            handler.addProcessListener(new ProcessAdapter() {
+            toolProcesses().run(Tool.COMPILER, Priority.INTERACTIVE, commandLine, null, new ProcessAdapter() {
                 @Override
                 public void onTextAvailable(@NotNull final ProcessEvent event,
                     @NotNull final Key outputType) {
@@ -375,9 +375,7 @@ public class DlangSdkType extends SdkType {
                         configFileArray[0] = configFileArray[0].trim();
                     }
                 }
-            });
-            handler.startNotify();
-            handler.waitFor();
+            }, null);
             final String configFile = configFileArray[0];
             if (configFile == null) {
                 return new SetupStatus(false, false, false);
@@ -493,11 +491,8 @@ public class DlangSdkType extends SdkType {
                 cmd.addParameter("--version");
 
                 try {
-                    final ProcessOutput output = new CapturingProcessHandler(
-                        cmd.createProcess(),
-                        Charset.defaultCharset(),
-                        cmd.getCommandLineString()
-                    ).runProcess(2_000 );
+                    final ProcessOutput output = toolProcesses()
+                        .run(Tool.COMPILER, Priority.INTERACTIVE, cmd, null);
 
                     //Parse output of a DMD compiler
                     final List<String> outputLines = output.getStdoutLines();
@@ -514,6 +509,14 @@ public class DlangSdkType extends SdkType {
         });
     }
 
+    /**
+     * SDKs are set up without a project, their tools are run like the ones of the default project.
+     */
+    @NotNull
+    private static ToolProcesses toolProcesses() {
+        return ToolProcesses.getInstance(ProjectManager.getInstance().getDefaultProject());
+    }
+
     /* Returns full path to DMD compiler executable */
     public String getDmdPath(@NotNull final Sdk sdk) {
         final String homePath = sdk.getHomePath();
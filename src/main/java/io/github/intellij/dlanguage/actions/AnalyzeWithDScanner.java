@@ -0,0 +1,32 @@
+package io.github.intellij.dlanguage.actions;
+
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.project.Project;
+import io.github.intellij.dlanguage.highlighting.annotation.external.DScannerProjectTask;
+import io.github.intellij.dlanguage.settings.ToolKey;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Action that lints all the D files of the project with DScanner.
+ */
+public class AnalyzeWithDScanner extends AnAction implements DumbAware {
+
+    @Override
+    public void update(@NotNull final AnActionEvent e) {
+        final String dscannerPath = ToolKey.DSCANNER_KEY.getPath();
+        e.getPresentation().setEnabled(getEventProject(e) != null && dscannerPath != null && !dscannerPath.isEmpty());
+    }
+
+    @Override
+    public void actionPerformed(@NotNull final AnActionEvent e) {
+        final Project project = getEventProject(e);
+        if (project == null) return;
+
+        // dscanner reads the files from disk
+        FileDocumentManager.getInstance().saveAllDocuments();
+        new DScannerProjectTask(project).start();
+    }
+}
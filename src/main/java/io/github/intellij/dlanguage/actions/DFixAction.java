@@ -2,7 +2,7 @@ package io.github.intellij.dlanguage.actions;
 
 import com.intellij.execution.ExecutionException;
 import com.intellij.execution.configurations.GeneralCommandLine;
-import com.intellij.execution.process.OSProcessHandler;
+import com.intellij.execution.process.ProcessOutput;
 import com.intellij.notification.Notification;
 import com.intellij.notification.NotificationType;
 import com.intellij.notification.Notifications;
@@ -11,6 +11,9 @@ import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.actionSystem.CommonDataKeys;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.DumbAware;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
@@ -18,7 +21,11 @@ import com.intellij.psi.PsiFile;
 import com.intellij.util.ExceptionUtil;
 import io.github.intellij.dlanguage.psi.DlangFile;
 import io.github.intellij.dlanguage.settings.ToolKey;
+import io.github.intellij.dlanguage.tools.ToolProcesses;
+import io.github.intellij.dlanguage.tools.ToolProcesses.Priority;
+import io.github.intellij.dlanguage.tools.ToolProcesses.Tool;
 import io.github.intellij.dlanguage.utils.DToolsNotificationListener;
+import org.jetbrains.annotations.NotNull;
 
 import java.nio.file.Paths;
 
@@ -90,24 +97,28 @@ public class DFixAction extends AnAction implements DumbAware {
 
             ApplicationManager.getApplication().saveAll();
 
-            try {
-                final OSProcessHandler process = new OSProcessHandler(commandLine.createProcess(), commandLine.getCommandLineString());
-
-                process.startNotify();
-                process.waitFor();
-                backingFile.refresh(true, true);
-
-                Notifications.Bus.notify(new Notification(NOTIFICATION_GROUPID, NOTIFICATION_TITLE,
-                    psiFile.getName() + " fixed with DFix.(Load filesystem changes)",
-                    NotificationType.INFORMATION), project);
-
-            } catch (final ExecutionException ex) {
-                ex.printStackTrace();
-                Notifications.Bus.notify(new Notification(NOTIFICATION_GROUPID,
-                    "Fixing " + psiFile.getName() + "  with DFix failed.", ExceptionUtil.getUserStackTrace(ex, LOG),
-                    NotificationType.ERROR), project);
-                LOG.error(ex);
-            }
+            ProgressManager.getInstance().run(new Task.Backgroundable(project, NOTIFICATION_TITLE, true) {
+                @Override
+                public void run(@NotNull final ProgressIndicator indicator) {
+                    try {
+                        final ProcessOutput output = ToolProcesses.getInstance(project)
+                            .run(Tool.DFIX, Priority.INTERACTIVE, commandLine, indicator);
+                        backingFile.refresh(true, true);
+
+                        Notifications.Bus.notify(new Notification(NOTIFICATION_GROUPID, NOTIFICATION_TITLE,
+                            output.isTimeout()
+                                ? "DFix timed out fixing " + psiFile.getName() + "."
+                                : psiFile.getName() + " fixed with DFix.(Load filesystem changes)",
+                            output.isTimeout() ? NotificationType.ERROR : NotificationType.INFORMATION), project);
+
+                    } catch (final ExecutionException ex) {
+                        Notifications.Bus.notify(new Notification(NOTIFICATION_GROUPID,
+                            "Fixing " + psiFile.getName() + "  with DFix failed.", ExceptionUtil.getUserStackTrace(ex, LOG),
+                            NotificationType.ERROR), project);
+                        LOG.error(ex);
+                    }
+                }
+            });
         } catch (final Exception ex) {
             Notifications.Bus.notify(new Notification(NOTIFICATION_GROUPID,
                 "Fixing " + psiFile.getName() + " with DFix failed", ExceptionUtil.getUserStackTrace(ex, LOG),
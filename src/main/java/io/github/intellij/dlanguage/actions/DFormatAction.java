@@ -1,9 +1,8 @@
 package io.github.intellij.dlanguage.actions;
 
+import com.intellij.execution.ExecutionException;
 import com.intellij.execution.configurations.GeneralCommandLine;
-import com.intellij.execution.process.CapturingProcessAdapter;
-import com.intellij.execution.process.OSProcessHandler;
-import com.intellij.execution.process.ProcessEvent;
+import com.intellij.execution.process.ProcessOutput;
 import com.intellij.notification.Notification;
 import com.intellij.notification.NotificationListener;
 import com.intellij.notification.NotificationType;
@@ -15,6 +14,9 @@ import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.command.CommandProcessor;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.DumbAware;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
@@ -23,6 +25,9 @@ import com.intellij.psi.PsiFile;
 import com.intellij.util.ExceptionUtil;
 import io.github.intellij.dlanguage.psi.DlangFile;
 import io.github.intellij.dlanguage.settings.ToolKey;
+import io.github.intellij.dlanguage.tools.ToolProcesses;
+import io.github.intellij.dlanguage.tools.ToolProcesses.Priority;
+import io.github.intellij.dlanguage.tools.ToolProcesses.Tool;
 import io.github.intellij.dlanguage.utils.DToolsNotificationListener;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -100,21 +105,34 @@ public class DFormatAction extends AnAction implements DumbAware {
 
             ApplicationManager.getApplication().saveAll();
 
-            final String commandLineString = commandLine.getCommandLineString();
-            final OSProcessHandler handler = new OSProcessHandler(commandLine.createProcess(), commandLineString);
-            handler.addProcessListener(new CapturingProcessAdapter() {
+            ProgressManager.getInstance().run(new Task.Backgroundable(project, NOTIFICATION_TITLE, true) {
                 @Override
-                public void processTerminated(@NotNull final ProcessEvent event) {
-                    @NotNull final List<String> errors = getOutput().getStderrLines();
+                public void run(@NotNull final ProgressIndicator indicator) {
+                    final ProcessOutput output;
+                    try {
+                        output = ToolProcesses.getInstance(project)
+                            .run(Tool.DFORMAT, Priority.INTERACTIVE, commandLine, indicator);
+                    } catch (final ExecutionException ex) {
+                        showNotification("Formatting " + psiFile.getName() + " with DFormat failed",
+                            ExceptionUtil.getUserStackTrace(ex, LOG),
+                            NotificationType.ERROR, null, project);
+                        return;
+                    }
+                    if (output.isTimeout()) {
+                        showNotification("DFormat error.", "DFormat timed out", NotificationType.ERROR, null, project);
+                        return;
+                    }
+
+                    @NotNull final List<String> errors = output.getStderrLines();
 
                     if (!errors.isEmpty()) {
                         final String[] parts = errors.get(0).split("\\[\\w+]:\\s");
-                        final String output = parts.length == 2 ? parts[1] : errors.get(0);
-                        showNotification("DFormat error.", output, NotificationType.ERROR, null, project);
+                        final String message = parts.length == 2 ? parts[1] : errors.get(0);
+                        showNotification("DFormat error.", message, NotificationType.ERROR, null, project);
                         return;
                     }
 
-                    final String text = getOutput().getStdout();
+                    final String text = output.getStdout();
                     ApplicationManager.getApplication().invokeLater(() -> {
                         try {
                             @Nullable final Document document = PsiDocumentManager.getInstance(project).getDocument(psiFile);
@@ -146,7 +164,6 @@ public class DFormatAction extends AnAction implements DumbAware {
                     });
                 }
             });
-            handler.startNotify();
         } catch (final Exception ex) {
             showNotification("Formatting " + psiFile.getName() + " with DFormat failed",
                 ExceptionUtil.getUserStackTrace(ex, LOG),
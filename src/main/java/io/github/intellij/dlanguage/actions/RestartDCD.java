@@ -5,12 +5,13 @@ import com.intellij.notification.NotificationType;
 import com.intellij.notification.Notifications;
 import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.project.DumbAware;
 import com.intellij.openapi.project.Project;
 import com.intellij.ui.popup.PopupFactoryImpl;
-import io.github.intellij.dlanguage.codeinsight.dcd.DCDCompletionServer;
+import io.github.intellij.dlanguage.codeinsight.dcd.DCDServerPool;
 import io.github.intellij.dlanguage.module.DlangModuleType;
 import io.github.intellij.dlanguage.settings.ToolKey;
 import org.jetbrains.annotations.NotNull;
@@ -57,9 +58,9 @@ public class RestartDCD extends AnAction implements DumbAware {
     }
 
     private static void restartDcdServer(@NotNull final AnActionEvent e, @NotNull final Module module) {
-        final DCDCompletionServer dcdServer = module.getComponent(DCDCompletionServer.class);
-        if (dcdServer == null) displayError(e, "Could not find module component for dcd-server.");
-        else dcdServer.restart();
+        // finding the import paths of the module may run 'dub describe'
+        ApplicationManager.getApplication().executeOnPooledThread(() ->
+            DCDServerPool.getInstance(module.getProject()).restart(module));
     }
 
     private static void displayError(@NotNull final AnActionEvent e, @NotNull final String message) {
@@ -11,7 +11,6 @@ import com.intellij.util.ProcessingContext;
 import io.github.intellij.dlanguage.DLanguage;
 import io.github.intellij.dlanguage.icons.DlangIcons;
 import io.github.intellij.dlanguage.codeinsight.dcd.DCDCompletionClient;
-import io.github.intellij.dlanguage.codeinsight.dcd.DCDCompletionServer;
 import io.github.intellij.dlanguage.codeinsight.dcd.completions.Completion;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -20,6 +19,15 @@ import java.util.List;
 
 public final class DCompletionContributor extends CompletionContributor {
     public DCompletionContributor() {
+        extend(CompletionType.BASIC,
+                PlatformPatterns.psiElement().withLanguage(DLanguage.INSTANCE),
+                new DKeywordCompletionProvider()
+        );
+        // native variants first, they show up while DCD is still working
+        extend(CompletionType.BASIC,
+                PlatformPatterns.psiElement().withLanguage(DLanguage.INSTANCE),
+                new DNativeCompletionProvider()
+        );
         extend(CompletionType.BASIC,
                 PlatformPatterns.psiElement().withLanguage(DLanguage.INSTANCE),
                 new DCompletionProvider()
@@ -1,34 +1,188 @@
 package io.github.intellij.dlanguage.codeinsight;
 
 import com.intellij.codeInsight.completion.*;
+import com.intellij.codeInsight.lookup.LookupElement;
+import com.intellij.codeInsight.lookup.LookupElementBuilder;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
 import com.intellij.patterns.PlatformPatterns;
+import com.intellij.psi.PsiDocumentManager;
 import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
 import com.intellij.psi.ResolveState;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.stubs.StubIndex;
 import com.intellij.psi.util.PsiTreeUtil;
 import com.intellij.util.ProcessingContext;
 import io.github.intellij.dlanguage.DLanguage;
+import io.github.intellij.dlanguage.icons.DlangIcons;
+import io.github.intellij.dlanguage.processors.DCompletionProcessor;
 import io.github.intellij.dlanguage.processors.DImportScopeProcessor;
-import io.github.intellij.dlanguage.DLanguage;
-import io.github.intellij.dlanguage.processors.DImportScopeProcessor;
+import io.github.intellij.dlanguage.psi.DLanguageDeclaration;
+import io.github.intellij.dlanguage.psi.DLanguageImportDeclaration;
+import io.github.intellij.dlanguage.psi.DlangFile;
+import io.github.intellij.dlanguage.psi.interfaces.DNamedElement;
+import io.github.intellij.dlanguage.psi.named.DLanguageModuleDeclaration;
+import io.github.intellij.dlanguage.psi.named.DlangSingleImport;
+import io.github.intellij.dlanguage.stubs.index.DTopLevelDeclarationIndex;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 /**
  * Created by francis on 6/19/2017.
+ *
+ * Completes the top level symbols of modules which aren't imported yet, accepting one adds the import.
+ *
+ * Candidates come from {@link DTopLevelDeclarationIndex}: its keys are matched against the prefix before any element
+ * is looked up, and at most {@value #MAX_RESULTS} symbols are offered so that completing a short prefix against an
+ * index holding a whole SDK stays quick.
  */
 public class DCompletionContributorImports extends CompletionContributor {
+
+    static final int MAX_RESULTS = 50;
+    private static final int MAX_NAMES = 4 * MAX_RESULTS;
+    private static final int MIN_PREFIX_LENGTH = 2;
+
     public DCompletionContributorImports() {
         extend(CompletionType.BASIC, PlatformPatterns.psiElement().withLanguage(DLanguage.INSTANCE), new CompletionProvider<CompletionParameters>() {
             @Override
-            protected void addCompletions(@NotNull final CompletionParameters parameters, final ProcessingContext context, @NotNull final CompletionResultSet result) {
+            protected void addCompletions(@NotNull final CompletionParameters parameters, @NotNull final ProcessingContext context, @NotNull final CompletionResultSet result) {
                 final PsiElement position = parameters.getPosition();
-                final DImportScopeProcessor importScopeProcessor = new DImportScopeProcessor();
-                PsiTreeUtil.treeWalkUp(importScopeProcessor, position, position.getContainingFile(), ResolveState.initial());
-//                for (DLanguageImport anImport : importScopeProcessor.getImports()) {
-//
-//                }
-                //todo
+                if (result.getPrefixMatcher().getPrefix().length() < MIN_PREFIX_LENGTH || !isUnqualifiedReference(position)) {
+                    return;
+                }
+                addImportableSymbols(position, parameters.getOriginalFile(), result);
+            }
+        });
+    }
+
+    private static boolean isUnqualifiedReference(@NotNull final PsiElement position) {
+        if (PsiTreeUtil.getParentOfType(position, DLanguageImportDeclaration.class, DLanguageModuleDeclaration.class) != null) {
+            return false;
+        }
+        final PsiElement previous = PsiTreeUtil.prevVisibleLeaf(position);
+        return previous == null || !".".equals(previous.getText());
+    }
 
+    private static void addImportableSymbols(@NotNull final PsiElement position,
+                                             @NotNull final PsiFile originalFile,
+                                             @NotNull final CompletionResultSet result) {
+        final Project project = position.getProject();
+        final PrefixMatcher matcher = result.getPrefixMatcher();
+
+        // keys first: no index lookup may run while the keys are processed
+        final List<String> names = new ArrayList<>();
+        StubIndex.getInstance().processAllKeys(DTopLevelDeclarationIndex.Companion.getKEY(), project, name -> {
+            ProgressManager.checkCanceled();
+            if (matcher.prefixMatches(name)) {
+                names.add(name);
             }
+            return names.size() < MAX_NAMES;
         });
+        if (names.isEmpty()) {
+            return;
+        }
+
+        final Set<String> imported = importedModules(position);
+        final Set<String> added = new HashSet<>();
+        final GlobalSearchScope scope = GlobalSearchScope.allScope(project);
+        for (final String name : names) {
+            final boolean more = StubIndex.getInstance().processElements(DTopLevelDeclarationIndex.Companion.getKEY(), name,
+                project, scope, DNamedElement.class, element -> {
+                    ProgressManager.checkCanceled();
+                    final PsiFile file = element.getContainingFile();
+                    if (!(file instanceof DlangFile) || file.equals(originalFile)) {
+                        return true;
+                    }
+                    final String module = moduleName((DlangFile) file);
+                    final String text = DCompletionProcessor.Companion.completionText(element);
+                    if (imported.contains(module) || !added.add(module + '.' + text)) {
+                        return true;
+                    }
+                    result.addElement(LookupElementBuilder.create(module + '.' + text, text)
+                        .withIcon(DlangIcons.FILE)
+                        .withTailText(" (" + module + ')', true)
+                        .withInsertHandler(new AddImportInsertHandler(module)));
+                    return added.size() < MAX_RESULTS && !result.isStopped();
+                });
+            if (!more) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Modules imported at the position, the module of the file itself included.
+     */
+    @NotNull
+    private static Set<String> importedModules(@NotNull final PsiElement position) {
+        final DImportScopeProcessor importScopeProcessor = new DImportScopeProcessor();
+        PsiTreeUtil.treeWalkUp(importScopeProcessor, position, position.getContainingFile(), ResolveState.initial());
+        final Set<String> modules = new HashSet<>();
+        modules.add("object"); // imported implicitly
+        for (final DlangSingleImport singleImport : importScopeProcessor.getImports()) {
+            modules.add(singleImport.getImportedModuleName());
+        }
+        final PsiFile file = position.getContainingFile();
+        if (file instanceof DlangFile) {
+            modules.add(moduleName((DlangFile) file));
+        }
+        return modules;
+    }
+
+    @NotNull
+    private static String moduleName(@NotNull final DlangFile file) {
+        final String name = file.getFullyQualifiedModuleName();
+        return name == null || name.isEmpty() ? file.getModuleName() : name;
+    }
+
+    /**
+     * Adds {@code import module;} after the last top level import, or else after the module declaration.
+     */
+    static final class AddImportInsertHandler implements InsertHandler<LookupElement> {
+        @NotNull
+        private final String module;
+
+        AddImportInsertHandler(@NotNull final String module) {
+            this.module = module;
+        }
+
+        @Override
+        public void handleInsert(@NotNull final InsertionContext context, @NotNull final LookupElement item) {
+            final PsiFile file = context.getFile();
+            final Document document = context.getDocument();
+            final PsiDocumentManager documentManager = PsiDocumentManager.getInstance(context.getProject());
+            documentManager.commitDocument(document);
+
+            PsiElement moduleDeclaration = null;
+            PsiElement lastImport = null;
+            for (final PsiElement child : file.getChildren()) {
+                if (child instanceof DLanguageModuleDeclaration) {
+                    moduleDeclaration = child;
+                } else if (child instanceof DLanguageDeclaration && ((DLanguageDeclaration) child).getImportDeclaration() != null) {
+                    for (final DlangSingleImport singleImport : ((DLanguageDeclaration) child).getImportDeclaration().getSingleImports()) {
+                        if (module.equals(singleImport.getImportedModuleName())) {
+                            return; // imported meanwhile
+                        }
+                    }
+                    lastImport = child;
+                }
+            }
+
+            final String importText = "import " + module + ";";
+            if (lastImport != null) {
+                document.insertString(lastImport.getTextRange().getEndOffset(), "\n" + importText);
+            } else if (moduleDeclaration != null) {
+                document.insertString(moduleDeclaration.getTextRange().getEndOffset(), "\n\n" + importText);
+            } else {
+                document.insertString(0, importText + "\n\n");
+            }
+            documentManager.commitDocument(document);
+        }
     }
 }
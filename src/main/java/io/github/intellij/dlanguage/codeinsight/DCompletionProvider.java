@@ -3,23 +3,22 @@ package io.github.intellij.dlanguage.codeinsight;
 import com.intellij.codeInsight.completion.CompletionParameters;
 import com.intellij.codeInsight.completion.CompletionProvider;
 import com.intellij.codeInsight.completion.CompletionResultSet;
-import com.intellij.openapi.application.ex.ApplicationUtil;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.module.ModuleUtilCore;
 import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
 import com.intellij.util.ProcessingContext;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import io.github.intellij.dlanguage.codeinsight.dcd.DCDCompletionClient;
+import io.github.intellij.dlanguage.codeinsight.dcd.DCDCompletionRequests;
 import io.github.intellij.dlanguage.codeinsight.dcd.DCDCompletionServer;
+import io.github.intellij.dlanguage.codeinsight.dcd.DCDServerPool;
 import io.github.intellij.dlanguage.codeinsight.dcd.completions.Completion;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 
 import static io.github.intellij.dlanguage.codeinsight.DCompletionContributor.createLookupElement;
 
@@ -27,43 +26,35 @@ final class DCompletionProvider extends CompletionProvider<CompletionParameters>
 
     private static final Logger log = Logger.getInstance(DCompletionProvider.class);
 
-    private final Executor executor = Executors.newSingleThreadExecutor();
+    private final DCDCompletionRequests requests = new DCDCompletionRequests(AppExecutorUtil.getAppExecutorService());
 
     @Override
     protected void addCompletions(@NotNull CompletionParameters parameters, @NotNull ProcessingContext context, @NotNull CompletionResultSet result) {
         final int position = parameters.getEditor().getCaretModel().getOffset();
         final PsiFile file = parameters.getOriginalFile();
+        final CharSequence fileContent = parameters.getEditor().getDocument().getImmutableCharSequence();
+        final VirtualFile virtualFile = file.getVirtualFile();
+        final String filePath = virtualFile == null ? file.getName() : virtualFile.getPath();
+        final Module module = ModuleUtilCore.findModuleForPsiElement(file);
+        if (module == null) {
+            return;
+        }
 
-        final String fileContent = file.getText();
-
-        final CompletableFuture<List<Completion>> completionsFuture = CompletableFuture.runAsync(() -> {
-            final Module module = ModuleUtilCore.findModuleForPsiElement(file);
-            final DCDCompletionServer dcdCompletionServer = module.getComponent(DCDCompletionServer.class);
-            try {
-                dcdCompletionServer.exec();
-            } catch (DCDCompletionServer.DCDError e) {
-                log.warn("There was a problem starting dcd server", e);
-                throw new RuntimeException(e);
-            }
-        }, executor).thenApplyAsync(aVoid -> {
-            try {
-                return new DCDCompletionClient().autoComplete(position, file, fileContent);
-            } catch (DCDCompletionClient.DCDError e) {
-                log.warn("There was a problem using dcd client", e);
-                throw new RuntimeException(e);
-            }
-        });
-
-        final Future<Void> completionsHandlerFuture = completionsFuture.thenAccept(completions -> {
-            for (final Completion completion : completions) {
-                result.addElement(createLookupElement(completion.completionText(), "", completion.completionType()));
-            }
-        });
-
+        final List<Completion> completions;
         try {
-            ApplicationUtil.runWithCheckCanceled(completionsHandlerFuture, ProgressManager.getInstance().getProgressIndicator());
-        } catch (final Exception e) {
-            e.printStackTrace();
+            completions = requests.complete(filePath, fileContent, position, () -> {
+                // without a configured dcd-server, dcd-client may still reach one started outside of the IDE
+                final DCDCompletionServer server = DCDServerPool.getInstance(module.getProject()).serverFor(module);
+                final DCDCompletionClient client = server == null ? new DCDCompletionClient() : new DCDCompletionClient(server.getPort());
+                return client.autoComplete(position, file, fileContent);
+            }, ProgressManager.getInstance().getProgressIndicator());
+        } catch (final DCDCompletionClient.DCDError e) {
+            log.warn("There was a problem using dcd client", e);
+            return;
+        }
+
+        for (final Completion completion : completions) {
+            result.addElement(createLookupElement(completion.completionText(), "", completion.completionType()));
         }
     }
 }
@@ -1,15 +1,21 @@
 package io.github.intellij.dlanguage.codeinsight
 
 import com.intellij.codeInsight.lookup.LookupElement
+import com.intellij.extapi.psi.StubBasedPsiElementBase
 import com.intellij.lang.parameterInfo.*
-import com.intellij.psi.PsiNamedElement
-import com.intellij.psi.util.PsiTreeUtil.findChildrenOfType
+import com.intellij.openapi.util.Key
+import com.intellij.psi.PsiElement
+import com.intellij.psi.stubs.StubElement
+import com.intellij.psi.util.CachedValue
+import com.intellij.psi.util.CachedValueProvider
+import com.intellij.psi.util.CachedValuesManager
+import com.intellij.psi.util.PsiModificationTracker
 import com.intellij.psi.util.PsiTreeUtil.getParentOfType
 import io.github.intellij.dlanguage.psi.DLanguageFunctionCallExpression
 import io.github.intellij.dlanguage.psi.references.DReference
 import io.github.intellij.dlanguage.resolve.DResolveUtil
+import io.github.intellij.dlanguage.stubs.DlangConstructorStub
 import io.github.intellij.dlanguage.utils.*
-import kotlin.streams.toList
 
 private fun removeParentheses(parameterText: String): String {
     var text = parameterText
@@ -20,13 +26,66 @@ private fun removeParentheses(parameterText: String): String {
     return text
 }
 
+private val CONSTRUCTORS_KEY = Key.create<CachedValue<List<Constructor>>>("D_PARAMETER_INFO_CONSTRUCTORS")
+private val OVERLOADS_KEY = Key.create<CachedValue<Array<String>>>("D_PARAMETER_INFO_OVERLOADS")
+
+/**
+ * The constructors of a struct or class, read from its stub children when the file has no AST loaded and from the
+ * declarations of its body otherwise, and kept per aggregate until PSI changes so that parameter hints don't walk
+ * the body of large aggregates on every refresh.
+ */
+internal fun constructors(aggregate: PsiElement): List<Constructor> {
+    val stubBased = aggregate as? StubBasedPsiElementBase<*> ?: return emptyList()
+    return CachedValuesManager.getCachedValue(stubBased, CONSTRUCTORS_KEY) {
+        val constructors = mutableListOf<Constructor>()
+        val stub = stubBased.greenStub
+        if (stub != null) {
+            collectConstructors(stub, constructors)
+        } else {
+            val body = when (stubBased) {
+                is StructDeclaration -> stubBased.structBody
+                is InterfaceOrClass -> stubBased.structBody
+                else -> null
+            }
+            body?.declarations?.let { collectConstructors(it, constructors) }
+        }
+        CachedValueProvider.Result.create<List<Constructor>>(constructors, PsiModificationTracker.MODIFICATION_COUNT)
+    }
+}
+
+private fun collectConstructors(declarations: List<Declaration>, constructors: MutableList<Constructor>) {
+    for (declaration in declarations) {
+        declaration.constructor?.let { constructors.add(it) }
+        // version and static if blocks
+        declaration.conditionalDeclaration?.let { collectConstructors(it.declarations, constructors) }
+        // attribute blocks: private { ... }
+        collectConstructors(declaration.declarations, constructors)
+    }
+}
+
+private fun collectConstructors(stub: StubElement<*>, constructors: MutableList<Constructor>) {
+    // version, static if and attribute blocks have no stubs of their own, the constructors in them are children of
+    // the aggregate's stub like the others; every stub child which isn't a constructor (a nested aggregate, union,
+    // enum, function or template) is a scope of its own
+    stub.childrenStubs.filterIsInstance<DlangConstructorStub>().mapTo(constructors) { it.psi }
+}
+
+/**
+ * The overloads shown at [site], computed once until PSI changes: caret moves inside the argument list only
+ * refresh the hint.
+ */
+private fun <T : PsiElement> cachedOverloads(site: T, compute: (T) -> List<String>): Array<String> =
+    CachedValuesManager.getCachedValue(site, OVERLOADS_KEY) {
+        CachedValueProvider.Result.create(compute(site).toTypedArray(), PsiModificationTracker.MODIFICATION_COUNT)
+    }
+
 
-class ParameterInfo : ParameterInfoHandler<FunctionCallExpression, Pair<TemplateParameters?, Parameters>> {
+class ParameterInfo : ParameterInfoHandler<FunctionCallExpression, String> {
     override fun updateParameterInfo(parameterOwner: FunctionCallExpression, context: UpdateParameterInfoContext) {
 
     }
 
-    override fun getParametersForDocumentation(p: Pair<TemplateParameters?, Parameters>?, context: ParameterInfoContext?): Array<Any>? {
+    override fun getParametersForDocumentation(p: String?, context: ParameterInfoContext?): Array<Any>? {
         TODO("this doesn't need to be implemented b/c it is not used by intellij-core")
     }
 
@@ -35,33 +94,12 @@ class ParameterInfo : ParameterInfoHandler<FunctionCallExpression, Pair<Template
     }
 
     override fun showParameterInfo(functionCallExpression: FunctionCallExpression, context: CreateParameterInfoContext) {
-        var reference = functionCallExpression.unaryExpression?.primaryExpression?.identifierOrTemplateInstance?.identifier?.reference
-        if (reference == null) {
-            reference = functionCallExpression.unaryExpression?.primaryExpression?.identifierOrTemplateInstance?.templateInstance?.identifier?.reference
-        }
-        if (reference == null || reference !is DReference) {
-            return
-        }
-        val definitionNodes = DResolveUtil.getInstance(functionCallExpression.project).findDefinitionNode(reference.element, false)
-        // The following code may not clear.
-        // Struct construction can be syntactically identical to function calling.
-        // In the special case of struct construction we want too find parameters
-        // from struct constructors.
-        context.itemsToShow = definitionNodes.flatMap { functionOrStructDefinition: PsiNamedElement ->
-            if (functionOrStructDefinition is StructDeclaration) {
-                val structConstructors = functionOrStructDefinition.structBody?.declarations.orEmpty().map { it.constructor }.filterNotNull()
-                structConstructors.map { Pair(it.templateParameters, it.parameters) }
-            } else if (functionOrStructDefinition is FunctionDeclaration) {
-                val funcDecl = functionOrStructDefinition
-                listOf(Pair(funcDecl.templateParameters, funcDecl.parameters))
-            } else
-                emptyList()
-        }.filterNotNull().toTypedArray()
+        context.itemsToShow = overloads(functionCallExpression)
         context.showHint(functionCallExpression, 0, this)
     }
 
-    override fun updateUI(p: Pair<TemplateParameters?, Parameters>, context: ParameterInfoUIContext) {
-        context.setupRawUIComponentPresentation((p.first?.text?.plus(" ! ")).orEmpty() + p.second.text)
+    override fun updateUI(p: String, context: ParameterInfoUIContext) {
+        context.setupRawUIComponentPresentation(p)
     }
 
     override fun findElementForUpdatingParameterInfo(context: UpdateParameterInfoContext): FunctionCallExpression? {
@@ -93,16 +131,40 @@ class ParameterInfo : ParameterInfoHandler<FunctionCallExpression, Pair<Template
         return functionCallExpression
     }
 
-
+    companion object {
+        internal fun overloads(functionCallExpression: FunctionCallExpression): Array<String> =
+            cachedOverloads(functionCallExpression) { call ->
+                val identifierOrTemplateInstance = call.unaryExpression?.primaryExpression?.identifierOrTemplateInstance
+                val reference = (identifierOrTemplateInstance?.identifier ?: identifierOrTemplateInstance?.templateInstance?.identifier)?.reference
+                if (reference !is DReference) {
+                    return@cachedOverloads emptyList()
+                }
+                // Struct construction can be syntactically identical to function calling.
+                // In the special case of struct construction we want to find parameters
+                // from struct constructors.
+                DResolveUtil.getInstance(call.project).findDefinitionNode(reference.element).flatMap { definition ->
+                    when (definition) {
+                        is StructDeclaration -> constructors(definition).mapNotNull { constructor ->
+                            constructor.parameters?.let { presentation(constructor.templateParameters, it) }
+                        }
+                        is FunctionDeclaration -> listOfNotNull(definition.parameters?.let { presentation(definition.templateParameters, it) })
+                        else -> emptyList()
+                    }
+                }
+            }
+
+        private fun presentation(templateParameters: TemplateParameters?, parameters: Parameters): String =
+            (templateParameters?.text?.plus(" ! ")).orEmpty() + parameters.text
+    }
 }
 
 
-class ConstructorParameterInfo : ParameterInfoHandler<NewExpression, Parameters> {
+class ConstructorParameterInfo : ParameterInfoHandler<NewExpression, String> {
     override fun updateParameterInfo(parameterOwner: NewExpression, context: UpdateParameterInfoContext) {
 
     }
 
-    override fun getParametersForDocumentation(p: Parameters?, context: ParameterInfoContext?): Array<Any>? {
+    override fun getParametersForDocumentation(p: String?, context: ParameterInfoContext?): Array<Any>? {
         TODO("this doesn't need to be implemented b/c it is not used by intellij-core")
     }
 
@@ -111,19 +173,12 @@ class ConstructorParameterInfo : ParameterInfoHandler<NewExpression, Parameters>
     }
 
     override fun showParameterInfo(newExpression: NewExpression, context: CreateParameterInfoContext) {
-        val reference = newExpression.type?.type_2?.symbol?.identifierOrTemplateChain?.identifierOrTemplateInstances?.last()?.identifier?.reference
-        if (reference == null || reference !is DReference) {
-            return
-        }
-        val definitionNodes = DResolveUtil.getInstance(newExpression.project).findDefinitionNode(reference.element, false)
-        val classDecls: List<InterfaceOrClass> = definitionNodes.filter { it.parent is ClassDeclaration }.filterIsInstance(InterfaceOrClass::class.java)
-        val constructors = classDecls.flatMap { it.structBody?.declarations.orEmpty() }.map { it.constructor }.filterNotNull()
-        context.itemsToShow = constructors.flatMap { findChildrenOfType(it, Parameters::class.java) }.filterNotNull().toTypedArray()
+        context.itemsToShow = overloads(newExpression)
         context.showHint(newExpression, 0, this)
     }
 
-    override fun updateUI(p: Parameters, context: ParameterInfoUIContext) {
-        context.setupRawUIComponentPresentation(removeParentheses(p.text))
+    override fun updateUI(p: String, context: ParameterInfoUIContext) {
+        context.setupRawUIComponentPresentation(p)
     }
 
     override fun findElementForUpdatingParameterInfo(context: UpdateParameterInfoContext): NewExpression? {
@@ -155,16 +210,29 @@ class ConstructorParameterInfo : ParameterInfoHandler<NewExpression, Parameters>
         return newExpression
     }
 
-
+    companion object {
+        internal fun overloads(newExpression: NewExpression): Array<String> =
+            cachedOverloads(newExpression) { expression ->
+                val reference = expression.type?.type_2?.symbol?.identifierOrTemplateChain?.identifierOrTemplateInstances?.last()?.identifier?.reference
+                if (reference !is DReference) {
+                    return@cachedOverloads emptyList()
+                }
+                DResolveUtil.getInstance(expression.project).findDefinitionNode(reference.element)
+                    .filter { it.parent is ClassDeclaration }
+                    .filterIsInstance(InterfaceOrClass::class.java)
+                    .flatMap { constructors(it) }
+                    .mapNotNull { it.parameters?.let { parameters -> removeParentheses(parameters.text) } }
+            }
+    }
 }
 
 
-class TemplateParameterInfo : ParameterInfoHandler<TemplateInstance, TemplateParameters> {
+class TemplateParameterInfo : ParameterInfoHandler<TemplateInstance, String> {
     override fun updateParameterInfo(parameterOwner: TemplateInstance, context: UpdateParameterInfoContext) {
 
     }
 
-    override fun getParametersForDocumentation(p: TemplateParameters?, context: ParameterInfoContext?): Array<Any>? {
+    override fun getParametersForDocumentation(p: String?, context: ParameterInfoContext?): Array<Any>? {
         TODO("this doesn't need to be implemented b/c it is not used by intellij-core")
     }
 
@@ -173,18 +241,21 @@ class TemplateParameterInfo : ParameterInfoHandler<TemplateInstance, TemplatePar
     }
 
     override fun showParameterInfo(templateExpression: TemplateInstance, context: CreateParameterInfoContext) {
-        val reference = templateExpression.identifier?.reference
-        if (reference == null || reference !is DReference) {
-            return
+        context.itemsToShow = cachedOverloads(templateExpression) { instance ->
+            val reference = instance.identifier?.reference
+            if (reference !is DReference) {
+                return@cachedOverloads emptyList()
+            }
+            DResolveUtil.getInstance(instance.project).findDefinitionNode(reference.element)
+                .filterIsInstance(TemplateDeclaration::class.java)
+                .mapNotNull { it.templateParameters?.let { parameters -> removeParentheses(parameters.text) } }
         }
-        val definitionNodes = DResolveUtil.getInstance(templateExpression.project).findDefinitionNode(reference.element, false).filterIsInstance(TemplateDeclaration::class.java)
-        context.itemsToShow = definitionNodes.map { it.templateParameters }.filterNotNull().toTypedArray()
 
         context.showHint(templateExpression, 0, this)
     }
 
-    override fun updateUI(p: TemplateParameters, context: ParameterInfoUIContext) {
-        context.setupRawUIComponentPresentation(removeParentheses(p.text))
+    override fun updateUI(p: String, context: ParameterInfoUIContext) {
+        context.setupRawUIComponentPresentation(p)
     }
 
     override fun findElementForUpdatingParameterInfo(context: UpdateParameterInfoContext): TemplateInstance? {
@@ -3,34 +3,75 @@ package io.github.intellij.dlanguage.codeinsight.dcd;
 import com.google.common.collect.Maps;
 import com.intellij.execution.ExecutionException;
 import com.intellij.execution.configurations.GeneralCommandLine;
-import com.intellij.execution.process.CapturingProcessHandler;
-import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.psi.PsiFile;
 import io.github.intellij.dlanguage.codeinsight.dcd.completions.TextCompletion;
 import io.github.intellij.dlanguage.settings.ToolKey;
+import io.github.intellij.dlanguage.tools.ToolProcesses;
+import io.github.intellij.dlanguage.tools.ToolProcesses.Priority;
+import io.github.intellij.dlanguage.tools.ToolProcesses.Tool;
 import io.github.intellij.dlanguage.utils.DUtil;
 import io.github.intellij.dlanguage.codeinsight.dcd.completions.Completion;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.BufferedWriter;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.nio.charset.Charset;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.ConnectException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 public final class DCDCompletionClient {
 
     private final static Logger LOG = Logger.getInstance(DCDCompletionClient.class);
     private static final Map<String, String> completionTypeMap = getCompletionTypeMap();
+    private static final DCDSourceBuffers SOURCES = new DCDSourceBuffers();
 
-    public List<Completion> autoComplete(final int position, final PsiFile file, final String fileContent) throws DCDError {
+    private final int port;
+    private final DCDSocketClient socketClient;
+
+    public DCDCompletionClient() {
+        this(DCDSocketClient.DEFAULT_PORT);
+    }
+
+    /**
+     * @param port the TCP port of the dcd-server, see {@link DCDCompletionServer#getPort()}
+     */
+    public DCDCompletionClient(final int port) {
+        this.port = port;
+        this.socketClient = new DCDSocketClient(port);
+    }
+
+    /**
+     * @param fileContent the content of the editor, encoded once as long as it doesn't change
+     */
+    public List<Completion> autoComplete(final int position, final PsiFile file, final CharSequence fileContent) throws DCDError {
+        final String fileName = file.getVirtualFile() == null ? file.getName() : file.getVirtualFile().getPath();
+        final DCDSourceBuffers.Source source = SOURCES.encode(fileName, fileContent);
+        // dcd expects the cursor as a byte offset
+        final int cursor = DCDSourceBuffers.byteOffset(fileContent, position);
+        try {
+            return socketClient.autoComplete(fileName, source.bytes, source.length(), cursor, importPaths());
+        } catch (final ConnectException e) {
+            LOG.debug("dcd-server doesn't listen on its TCP port, falling back to dcd-client", e);
+        } catch (final IOException e) {
+            throw new DCDError(e);
+        }
+        return autoCompleteWithDcdClient(cursor, file, source);
+    }
+
+    @NotNull
+    private static List<String> importPaths() {
+        final String flags = ToolKey.DCD_CLIENT_KEY.getFlags();
+        return DUtil.isNotNullOrEmpty(flags) ? Arrays.asList(flags.split(",")) : Collections.emptyList();
+    }
+
+    private List<Completion> autoCompleteWithDcdClient(final int cursor, final PsiFile file, final DCDSourceBuffers.Source source) throws DCDError {
         final String path = lookupPath();
         if (StringUtil.isEmptyOrSpaces(path)) {
             LOG.debug("Attempted auto completion via DCD but path was blank");
@@ -43,25 +84,17 @@ public final class DCDCompletionClient {
             return Collections.emptyList();
         }
 
-        final GeneralCommandLine dcdClientCommandLine = this.buildDcdCommand(path, position, file);
-
-        final Process process;
-        try {
-            process = dcdClientCommandLine.createProcess();
-        } catch (ExecutionException e) {
-            throw new DCDError(e);
-        }
-
-        try (final BufferedWriter output = new BufferedWriter(new OutputStreamWriter(process.getOutputStream()))) {
-            output.write(fileContent);
-        } catch (IOException e) {
-            throw new DCDError(e);
-        }
+        final GeneralCommandLine dcdClientCommandLine = this.buildDcdCommand(path, cursor, file)
+            .withCharset(StandardCharsets.UTF_8);
 
+        // the source goes to stdin as encoded, the completions are parsed as dcd-client prints them
         try {
-            final String result = this.readCommandLine(dcdClientCommandLine, file.getText()).get(3L, TimeUnit.SECONDS);
-            return processDcdOutput(result);
-        } catch (InterruptedException | java.util.concurrent.ExecutionException | TimeoutException e) {
+            return ToolProcesses.getInstance(file.getProject()).read(Tool.DCD_CLIENT, Priority.INTERACTIVE,
+                dcdClientCommandLine,
+                stdin -> stdin.write(source.bytes, 0, source.length()),
+                stdout -> parseDcdOutput(new InputStreamReader(stdout, StandardCharsets.UTF_8)),
+                null);
+        } catch (final ExecutionException e) {
             throw new DCDError(e);
         }
     }
@@ -73,7 +106,11 @@ public final class DCDCompletionClient {
         final GeneralCommandLine commandLine = new GeneralCommandLine()
             .withWorkDirectory(workingDirectory)
             .withExePath(dcdClientPath)
-            .withParameters("-c", String.valueOf(position));
+            .withParameters("--tcp", "-c", String.valueOf(position));
+
+        if (port != DCDSocketClient.DEFAULT_PORT) {
+            commandLine.addParameters("--port", String.valueOf(port));
+        }
 
         final String flags = ToolKey.DCD_CLIENT_KEY.getFlags();
 
@@ -84,51 +121,44 @@ public final class DCDCompletionClient {
         return commandLine;
     }
 
+    List<Completion> processDcdOutput(@NotNull final String output) {
+        try {
+            return parseDcdOutput(new StringReader(output));
+        } catch (final IOException e) {
+            throw new IllegalStateException(e); // not with a StringReader
+        }
+    }
+
     /**
-     * Executes commandLine, optionally piping input to stdin, and return stdout.
-     * This method was taken from {@link io.github.intellij.dlanguage.utils.ExecUtil} as it's likely going to be deleted
+     * Reads completions line by line as dcd-client prints them: an {@code identifiers} header, then
+     * {@code identifier\tkind} lines. Calltips and symbol locations give no completions.
      */
-    private Future<String> readCommandLine(@NotNull final GeneralCommandLine commandLine, @Nullable final String input) {
-        return ApplicationManager.getApplication().executeOnPooledThread(() -> {
-            final Process process = commandLine.createProcess();
-
-            if (input != null) {
-                try (final BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(process.getOutputStream()))) {
-                    writer.write(input);
-                    writer.flush();
-                }
-            }
-
-            return new CapturingProcessHandler(process,
-                Charset.defaultCharset(),
-                commandLine.getCommandLineString()
-            ).runProcess().getStdout();
-        });
-    }
+    @NotNull
+    static List<Completion> parseDcdOutput(@NotNull final Reader output) throws IOException {
+        final BufferedReader lines = new BufferedReader(output, 8192);
+        final String header = lines.readLine();
+        if (header == null || !header.contains("identifiers")) {
+            //TODO - "calltips" go in a Parameter Info handler (ctrl+p) instead of here - see: ShowParameterInfoHandler.register
+            return Collections.emptyList();
+        }
 
-    List<Completion> processDcdOutput(@NotNull final String output) {
-        if (!output.isEmpty()) {
-            final String[] lines = output.split("\\n");
-
-            if (lines.length > 1 && lines[0].contains("identifiers")) {
-                final List<Completion> completions = new ArrayList<>();
-                for (int i = 1; i < lines.length; i++) {
-                    final String line = lines[i];
-
-                    final String[] tokens = line.split("\\s");
-                    final String completionType = getCompletionType(tokens);
-                    final String completionText = getCompletionText(tokens);
-                    completions.add(new TextCompletion(completionType, completionText));
-                }
-                return completions;
+        final List<Completion> completions = new ArrayList<>(256);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            int identifierEnd = 0;
+            while (identifierEnd < line.length() && !Character.isWhitespace(line.charAt(identifierEnd))) {
+                identifierEnd++;
+            }
+            int kindStart = line.length();
+            while (kindStart > 0 && !Character.isWhitespace(line.charAt(kindStart - 1))) {
+                kindStart--;
             }
-//            else if (lines[0].contains("calltips")) {
-//                //TODO - this goes in a Parameter Info handler (ctrl+p) instead of here - see: ShowParameterInfoHandler.register
-//                System.out.println(tokens);
-//            }
+            completions.add(completion(line.substring(0, identifierEnd), line.substring(kindStart)));
         }
-
-        return Collections.emptyList();
+        return completions;
     }
 
     @Nullable
@@ -136,24 +166,16 @@ public final class DCDCompletionClient {
         return ToolKey.DCD_CLIENT_KEY.getPath();
     }
 
-    private String getType(final String[] parts) {
-        final String type = parts[parts.length - 1];
-        return type.isEmpty() ? "U" : type.trim();
-    }
-
-    private String getCompletionType(final String[] parts) {
-        final String mapping = completionTypeMap.get(getType(parts));
-        return mapping == null ? "Unknown" : mapping;
-    }
-
-    private String getCompletionText(final String[] parts) {
-        final String text = parts[0];
-        final String result = text.isEmpty() ? "" : text.trim();
-        final String type = getType(parts);
-        if (type.equals("f")) {
-            return result + "()";
-        }
-        return result;
+    /**
+     * Completion for an identifier of the given DCD kind (a single character, see {@link #getCompletionTypeMap()}),
+     * whether it came from dcd-client output or straight from the server.
+     */
+    @NotNull
+    static Completion completion(@NotNull final String identifier, @NotNull final String kind) {
+        final String type = kind.isEmpty() ? "U" : kind.trim();
+        final String mapping = completionTypeMap.get(type);
+        final String text = identifier.trim();
+        return new TextCompletion(mapping == null ? "Unknown" : mapping, type.equals("f") ? text + "()" : text);
     }
 
     private static Map<String, String> getCompletionTypeMap() {
@@ -0,0 +1,243 @@
+package io.github.intellij.dlanguage.codeinsight.dcd;
+
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import io.github.intellij.dlanguage.codeinsight.dcd.completions.Completion;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Sits between completion and DCD so that typing an identifier asks DCD once, not once per keystroke.
+ *
+ * Requests are keyed by the file, the offset where the identifier being completed starts and the file content around
+ * that identifier. DCD answers with every symbol starting with the prefix typed so far, so while the
+ * user narrows the prefix at the same place of an otherwise unchanged file the previous answer (or the request still
+ * in flight) is filtered locally. Any other request for the file supersedes the one in flight, whose caller gives up.
+ */
+public final class DCDCompletionRequests {
+
+    private static final int CACHED_FILES = 16;
+    private static final long POLL_MILLIS = 10;
+
+    /**
+     * Asks DCD for the completions at the caret, called on the executor.
+     */
+    @FunctionalInterface
+    public interface Backend {
+        @NotNull
+        List<Completion> complete() throws Exception;
+    }
+
+    private static final class Key {
+        final CharSequence text;
+        final int identifierStart;
+        final int caret;
+        final long contentHash;
+
+        Key(final CharSequence text, final int identifierStart, final int caret) {
+            this.text = text;
+            this.identifierStart = identifierStart;
+            this.caret = caret;
+            this.contentHash = contentHash(text, identifierStart, caret);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key key = (Key) o;
+            // the hash only tells different contents apart, the characters around the identifier must be the same
+            return contentHash == key.contentHash && identifierStart == key.identifierStart
+                && text.length() - caret == key.text.length() - key.caret
+                && regionMatches(text, 0, key.text, 0, identifierStart)
+                && regionMatches(text, caret, key.text, key.caret, text.length() - caret);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(contentHash) * 31 + identifierStart;
+        }
+
+        private static boolean regionMatches(final CharSequence text, final int offset,
+                                             final CharSequence other, final int otherOffset, final int length) {
+            if (text == other && offset == otherOffset) {
+                return true;
+            }
+            for (int i = 0; i < length; i++) {
+                if (text.charAt(offset + i) != other.charAt(otherOffset + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class Request {
+        final Key key;
+        final String prefix;
+        final CompletableFuture<List<Completion>> completions;
+
+        Request(final Key key, final String prefix, final CompletableFuture<List<Completion>> completions) {
+            this.key = key;
+            this.prefix = prefix;
+            this.completions = completions;
+        }
+
+        boolean answers(final Key key, final String prefix) {
+            return this.key.equals(key) && prefix.startsWith(this.prefix);
+        }
+    }
+
+    private final Executor executor;
+
+    // guarded by this
+    private final Map<String, Request> inFlight = new HashMap<>();
+    private final Map<String, Request> answered = new LinkedHashMap<String, Request>(CACHED_FILES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Request> eldest) {
+            return size() > CACHED_FILES;
+        }
+    };
+
+    public DCDCompletionRequests(@NotNull final Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Completions at {@code caret} in {@code text}, the content of the file at {@code filePath}, which is kept to tell
+     * whether a later request is for the same content and so must not change, like the document's immutable sequence.
+     *
+     * @param backend   asks DCD, only called when neither a previous answer nor the request in flight can be reused
+     * @param indicator cancels the wait (not the request, which is left to answer the next keystroke)
+     * @throws ProcessCanceledException if the indicator is cancelled or a newer request superseded this one
+     */
+    @NotNull
+    public List<Completion> complete(@NotNull final String filePath,
+                                     @NotNull final CharSequence text,
+                                     final int caret,
+                                     @NotNull final Backend backend,
+                                     @Nullable final ProgressIndicator indicator) throws DCDCompletionClient.DCDError {
+        final int identifierStart = identifierStart(text, caret);
+        final String prefix = text.subSequence(identifierStart, caret).toString();
+        final Key key = new Key(text, identifierStart, caret);
+
+        final CompletableFuture<List<Completion>> completions;
+        synchronized (this) {
+            final Request previous = answered.get(filePath);
+            if (previous != null && previous.answers(key, prefix)) {
+                return filter(previous.completions.join(), prefix);
+            }
+            final Request running = inFlight.get(filePath);
+            if (running != null && running.answers(key, prefix)) {
+                completions = running.completions;
+            } else {
+                if (running != null) {
+                    running.completions.cancel(false);
+                }
+                completions = start(filePath, new Request(key, prefix, new CompletableFuture<>()), backend);
+            }
+        }
+        return filter(await(completions, indicator), prefix);
+    }
+
+    private CompletableFuture<List<Completion>> start(final String filePath, final Request request, final Backend backend) {
+        inFlight.put(filePath, request);
+        executor.execute(() -> {
+            if (request.completions.isDone()) {
+                return; // superseded before it started
+            }
+            try {
+                request.completions.complete(backend.complete());
+            } catch (final Throwable e) {
+                request.completions.completeExceptionally(e);
+            }
+        });
+        request.completions.whenComplete((result, error) -> {
+            synchronized (this) {
+                if (inFlight.get(filePath) == request) {
+                    inFlight.remove(filePath);
+                }
+                if (error == null) {
+                    answered.put(filePath, request);
+                }
+            }
+        });
+        return request.completions;
+    }
+
+    @NotNull
+    private static List<Completion> await(final CompletableFuture<List<Completion>> completions,
+                                          @Nullable final ProgressIndicator indicator) throws DCDCompletionClient.DCDError {
+        while (true) {
+            if (indicator != null) {
+                indicator.checkCanceled();
+            }
+            try {
+                return completions.get(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (final TimeoutException e) {
+                // poll the indicator again
+            } catch (final CancellationException e) {
+                throw new ProcessCanceledException();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ProcessCanceledException(e);
+            } catch (final ExecutionException | CompletionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof DCDCompletionClient.DCDError) {
+                    throw (DCDCompletionClient.DCDError) cause;
+                }
+                throw new DCDCompletionClient.DCDError(cause);
+            }
+        }
+    }
+
+    @NotNull
+    private static List<Completion> filter(@NotNull final List<Completion> completions, @NotNull final String prefix) {
+        if (prefix.isEmpty()) {
+            return completions;
+        }
+        final List<Completion> matching = new ArrayList<>();
+        for (final Completion completion : completions) {
+            if (completion.completionText().regionMatches(true, 0, prefix, 0, prefix.length())) {
+                matching.add(completion);
+            }
+        }
+        return matching;
+    }
+
+    static int identifierStart(@NotNull final CharSequence text, final int caret) {
+        int start = caret;
+        while (start > 0 && Character.isJavaIdentifierPart(text.charAt(start - 1))) {
+            start--;
+        }
+        return start;
+    }
+
+    /**
+     * Hash of the content without the identifier being typed, the same as long as only that identifier changes.
+     */
+    static long contentHash(@NotNull final CharSequence text, final int identifierStart, final int caret) {
+        long hash = 1125899906842597L;
+        for (int i = 0; i < identifierStart; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        hash = 31 * hash + identifierStart;
+        for (int i = caret; i < text.length(); i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return hash;
+    }
+}
@@ -3,295 +3,153 @@ package io.github.intellij.dlanguage.codeinsight.dcd;
 import com.intellij.execution.ExecutionException;
 import com.intellij.execution.configurations.GeneralCommandLine;
 import com.intellij.execution.configurations.ParametersList;
-import com.intellij.notification.Notification;
-import com.intellij.notification.NotificationType;
-import com.intellij.notification.Notifications;
-import com.intellij.openapi.diagnostic.Logger;
-import com.intellij.openapi.module.Module;
-import com.intellij.openapi.module.ModuleComponent;
-import com.intellij.openapi.project.Project;
-import com.intellij.openapi.projectRoots.Sdk;
-import com.intellij.openapi.roots.ModuleRootManager;
-import com.intellij.openapi.roots.OrderRootType;
-import com.intellij.openapi.roots.ProjectRootManager;
-import com.intellij.openapi.util.text.StringUtil;
-import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.util.containers.ContainerUtil;
-import io.github.intellij.dlanguage.messagebus.ToolChangeListener;
-import io.github.intellij.dlanguage.messagebus.Topics;
-import io.github.intellij.dlanguage.settings.ToolKey;
-import io.github.intellij.dlanguage.settings.ToolSettings;
-import io.github.intellij.dlanguage.DlangSdkType;
-import io.github.intellij.dlanguage.project.DubConfigurationParser;
-import io.github.intellij.dlanguage.utils.NotificationUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.*;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
 
 import static io.github.intellij.dlanguage.utils.DUtil.isNotNullOrEmpty;
 
 /**
- * Process wrapper for DCD Server.  Implements ModuleComponent so destruction of processes coincides with closing projects.
+ * A dcd-server process for one set of import paths. Servers are started, restarted and stopped by
+ * {@link DCDServerPool}, which shares a server between every module using the same import paths.
  */
-public final class DCDCompletionServer implements ModuleComponent, ToolChangeListener {
-
-    private static final Logger LOG = Logger.getInstance(DCDCompletionServer.class);
-
-    @NotNull
-    public final Module module;
+public final class DCDCompletionServer {
 
     @NotNull
     private final String workingDirectory;
 
-    @Nullable
-    public String path;
-
     @NotNull
-    public String flags;
+    private final List<String> importPaths;
 
     @Nullable
-    private Process process;
+    private volatile Process process;
 
-    @Nullable
-    private BufferedReader input;
+    private volatile int port = DCDSocketClient.DEFAULT_PORT;
 
+    // the following are guarded by the DCDServerSupervisor owning the server
+    private long startedAt;
+    int failures;
     @Nullable
-    private BufferedWriter output;
+    ScheduledFuture<?> pendingRestart;
+    boolean stopped;
 
-    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+    DCDCompletionServer(@NotNull final String workingDirectory, @NotNull final List<String> importPaths) {
+        this.workingDirectory = workingDirectory;
+        this.importPaths = importPaths;
+    }
 
     /**
-     * Private constructor used during module component initialization.
+     * The TCP port the server listens on, distinct for every server of the pool.
      */
-    public DCDCompletionServer(@NotNull final Module module) {
-        this.module = module;
-        this.path = lookupPath();
-        this.flags = lookupFlags();
-        this.workingDirectory = lookupWorkingDirectory();
-        // Ensure that we are notified of changes to the settings.
-        module.getProject().getMessageBus().connect().subscribe(Topics.DCD_SERVER_TOOL_CHANGE, this);
-    }
-
-    private static void displayError(@NotNull final Project project, @NotNull final String message) {
-        NotificationUtil.displayToolsNotification(NotificationType.ERROR, project, "dcd error", message);
-    }
-
-    public synchronized void exec() throws DCDError {
-        if (path != null) {
-            if (process == null) {
-                spawnProcess();
-            }
-            if (output == null) {
-                throw new InitError("Output stream was unexpectedly null.");
-            }
-            if (input == null) {
-                throw new InitError("Input stream was unexpectedly null.");
-            }
-        }
-    }
-
-    private void spawnProcess() {
-        if(path == null || path.isEmpty()) {
-            LOG.warn("request made to spawn process for DCD Server but path is not set");
-            return;
-        }
-        final GeneralCommandLine commandLine = new GeneralCommandLine(path);
-        commandLine.setWorkDirectory(workingDirectory);
-        commandLine.setRedirectErrorStream(true);
-        final ParametersList parametersList = commandLine.getParametersList();
-
-        if (isNotNullOrEmpty(flags)) {
-            parametersList.addAll(flags);
-        }
-
-        // try to auto add project files in source root
-        final String sources = getRootSourceDir();
-        if (isNotNullOrEmpty(sources)) {
-            parametersList.addParametersString("-I");
-            parametersList.addParametersString(sources);
-        }
-
-        // try to auto add the compiler sources
-        final List<String> compilerSources = getCompilerSourcePaths();
-        for (final String s : compilerSources) {
-            parametersList.addParametersString("-I");
-            parametersList.addParametersString(s);
-        }
-
-        // try to auto add dub dependencies
-        final DubConfigurationParser dubParser = new DubConfigurationParser(module.getProject(),
-            ToolKey.DUB_KEY.getPath(), false);
-        if (dubParser.canUseDub()) {
-            dubParser.getDubProject().ifPresent(dubProject -> dubProject.getPackages().forEach(pkg -> {
-                final List<String> sourcesDirs = pkg.getSourcesDirs();
-
-                LOG.debug("adding source for ", pkg.getName());
-
-                for(final String srcDir : sourcesDirs) {
-                    parametersList.addParametersString("-I");
-                    parametersList.addParametersString(String.format("%s%s", pkg.getPath(), srcDir));
-                }
-            }));
-        } else {
-            LOG.info("not possible to run 'dub describe'");
-        }
-
-        try {
-            LOG.info("DCD server start parameters " + parametersList.toString());
-            process = commandLine.createProcess();
-            LOG.info("DCD process started");
-        } catch (final ExecutionException e) {
-            Notifications.Bus.notify(new Notification("DCDNotification", "DCD Error",
-                "Unable to start a dcd server. Make sure that you have specified the path to the dcd-server and dcd-client executables correctly. You can specify executable paths under File > Settings > Languages & Frameworks > D Tools",
-                NotificationType.ERROR), module.getProject());
-            LOG.error("Error spawning DCD process", e);
-//            throw new InitError(e.toString());
-        }
-        input = new BufferedReader(new InputStreamReader(process.getInputStream()));
-        output = new BufferedWriter(new OutputStreamWriter(process.getOutputStream()));
+    public int getPort() {
+        return port;
     }
 
-    private String getRootSourceDir() {
-        final Project myProject = module.getProject();
-        final List<VirtualFile> sourceRoots = new ArrayList<>();
-        final ProjectRootManager projectRootManager = ProjectRootManager.getInstance(myProject);
-        ContainerUtil.addAll(sourceRoots, projectRootManager.getContentSourceRoots());
-        return sourceRoots.isEmpty() ? null : sourceRoots.get(0).getPath();
+    public boolean isAlive() {
+        final Process current = process;
+        return current != null && current.isAlive();
     }
 
-    private List<String> getCompilerSourcePaths() {
-        final ArrayList<String> compilerSourcePaths = new ArrayList<>();
-        final ModuleRootManager moduleRootManager = ModuleRootManager.getInstance(module);
-        final Sdk sdk = moduleRootManager.getSdk();
-
-        if (sdk != null && (sdk.getSdkType() instanceof DlangSdkType)) {
-            for (VirtualFile f: sdk.getSdkModificator().getRoots(OrderRootType.SOURCES)) {
-                if (f.exists() && f.isDirectory()) {
-                    compilerSourcePaths.add(f.getPath());
-                }
-            }
-        }
-        return compilerSourcePaths;
+    @NotNull
+    List<String> getImportPaths() {
+        return importPaths;
     }
 
-    @NotNull
-    private String lookupWorkingDirectory() {
-        final VirtualFile moduleFile = module.getModuleFile();
-        final VirtualFile moduleDir = moduleFile == null ? null : moduleFile.getParent();
-        return moduleDir == null ?
-            StringUtil.defaultIfEmpty(module.getProject().getBasePath(), "") :
-            moduleDir.getPath();
+    boolean isCurrent(@NotNull final Process process) {
+        return this.process == process;
     }
 
-    @Nullable
-    private String lookupPath() {
-        return ToolKey.DCD_SERVER_KEY.getPath();
+    long uptimeMillis(final long now) {
+        return process == null ? 0 : now - startedAt;
     }
 
     @NotNull
-    private String lookupFlags() {
-        return ToolKey.DCD_SERVER_KEY.getFlags();
+    Process start(@NotNull final String path,
+                  @Nullable final String flags,
+                  @NotNull final DCDServerSupervisor.Launcher launcher) throws ExecutionException {
+        port = freePort();
+        final Process started = launcher.launch(commandLine(path, flags, port));
+        startedAt = System.currentTimeMillis();
+        process = started;
+        return started;
     }
 
     /**
-     * Kills the existing process and closes input and output if they exist.
+     * Destroys the process, its exit is then no longer reported as a crash.
      */
-    private synchronized void kill() {
-        if (process != null) process.destroy();
+    void kill() {
+        final Process current = process;
         process = null;
-        try {
-            if (input != null) input.close();
-        } catch (final IOException e) { /* Ignored */ }
-        input = null;
-        try {
-            if (output != null) output.close();
-        } catch (final IOException e) { /* Ignored */ }
-        output = null;
-    }
-
-    /**
-     * Restarts the dcd-server.
-     */
-    public synchronized void restart() {
-        kill();
-        if(isNotNullOrEmpty(path)) {
-            try {
-                Thread.sleep(1500);
-                spawnProcess();
-            } /*catch (final DCDError e) {
-                displayError(e.message);
-            }*/ catch (final InterruptedException e) {
-                LOG.error(e);
-            }
+        if (current != null) {
+            current.destroy();
         }
     }
 
-    private void displayError(@NotNull final String message) {
-        displayError(module.getProject(), message);
-    }
-
-    @Override
-    public void moduleAdded() {
-// No need to do anything here.
-    }
-
-    @Override
-    public void initComponent() {
-// No need to do anything here.
-    }
+    @NotNull
+    GeneralCommandLine commandLine(@NotNull final String path, @Nullable final String flags, final int port) {
+        final GeneralCommandLine commandLine = new GeneralCommandLine(path);
+        commandLine.setWorkDirectory(workingDirectory);
+        final ParametersList parametersList = commandLine.getParametersList();
 
-    // Implemented methods for ModuleComponent.
+        if (isNotNullOrEmpty(flags)) {
+            parametersList.addParametersString(flags);
+        }
 
-    @Override
-    public void disposeComponent() {
-        executorService.shutdownNow();
-        kill();
-    }
+        // DCDSocketClient talks to the server over TCP (unix sockets are the default on Linux and OS X)
+        if (!parametersList.hasParameter("--tcp")) {
+            parametersList.add("--tcp");
+        }
+        parametersList.add("--port", String.valueOf(port));
 
-    @NotNull
-    @Override
-    public String getComponentName() {
-        return "DCDCompletionServer";
+        for (final String importPath : importPaths) {
+            parametersList.add("-I", importPath);
+        }
+        return commandLine;
     }
 
-    @Override
-    public void onToolSettingsChanged(@NotNull final ToolSettings settings) {
-        LOG.debug("DCD Server settings changed");
-        kill();
-        this.path = settings.getPath();
-        this.flags = settings.getFlags();
-        if(isNotNullOrEmpty(this.path)) {
-            restart();
+    /**
+     * Resident memory of the process in bytes, 0 where it can't be told (anything but Linux).
+     */
+    long residentBytes() {
+        final Process current = process;
+        if (current == null) {
+            return 0;
+        }
+        try {
+            final Path status = Paths.get("/proc", String.valueOf(current.pid()), "status");
+            if (!Files.isReadable(status)) {
+                return 0;
+            }
+            for (final String line : Files.readAllLines(status)) {
+                if (line.startsWith("VmRSS:")) {
+                    // "VmRSS:    123456 kB"
+                    return Long.parseLong(line.substring(6).replace("kB", "").trim()) * 1024;
+                }
+            }
+        } catch (final IOException | UnsupportedOperationException | NumberFormatException e) {
+            // the process exited meanwhile or doesn't expose its pid
         }
+        return 0;
     }
 
-    // Custom Exceptions
-    public static abstract class DCDError extends Exception {
-        // Using error to index errors since message might have extra information.
-        final
-        @NotNull
-        String error;
-        final
-        @NotNull
-        String message;
-        final boolean killProcess;
-
-        DCDError(@NotNull final String error, @NotNull final String message, final boolean killProcess) {
-            this.error = error;
-            this.message = message;
-            this.killProcess = killProcess;
+    private static int freePort() throws ExecutionException {
+        try (final ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return socket.getLocalPort();
+        } catch (final IOException e) {
+            throw new ExecutionException("No free port for dcd-server", e);
         }
     }
 
-    public static class InitError extends DCDError {
-        InitError(@NotNull final String error) {
-            super(error, "Initializing dcd server failed with error: " + error, true);
-        }
+    @Override
+    public String toString() {
+        return "dcd-server on port " + port + " for " + importPaths;
     }
 }
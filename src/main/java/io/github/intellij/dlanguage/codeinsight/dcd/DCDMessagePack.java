@@ -0,0 +1,349 @@
+package io.github.intellij.dlanguage.codeinsight.dcd;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The subset of MessagePack (https://msgpack.org) spoken by dcd-server: its requests and responses are D structs
+ * serialized by msgpack-d as arrays of their fields, in declaration order.
+ *
+ * Strings are written with the formats older msgpack-d versions understand (no str8).
+ */
+final class DCDMessagePack {
+
+    private DCDMessagePack() {
+    }
+
+    /**
+     * Writes into a buffer preallocated for the expected size, which only grows if that was too small.
+     */
+    static final class Packer {
+        private byte[] buffer;
+        private int size;
+
+        Packer(final int expectedSize) {
+            this.buffer = new byte[Math.max(expectedSize, 16)];
+        }
+
+        Packer arrayHeader(final int size) {
+            if (size < 16) {
+                write(0x90 | size);
+            } else if (size < 0x10000) {
+                write(0xdc);
+                writeShort(size);
+            } else {
+                write(0xdd);
+                writeInt(size);
+            }
+            return this;
+        }
+
+        Packer mapHeader(final int size) {
+            if (size < 16) {
+                write(0x80 | size);
+            } else if (size < 0x10000) {
+                write(0xde);
+                writeShort(size);
+            } else {
+                write(0xdf);
+                writeInt(size);
+            }
+            return this;
+        }
+
+        Packer uint(final long value) {
+            if (value < 0) {
+                throw new IllegalArgumentException("negative value " + value);
+            }
+            if (value < 0x80) {
+                write((int) value);
+            } else if (value < 0x100) {
+                write(0xcc);
+                write((int) value);
+            } else if (value < 0x10000) {
+                write(0xcd);
+                writeShort((int) value);
+            } else if (value < 0x100000000L) {
+                write(0xce);
+                writeInt((int) value);
+            } else {
+                write(0xcf);
+                writeInt((int) (value >>> 32));
+                writeInt((int) value);
+            }
+            return this;
+        }
+
+        Packer string(@NotNull final String value) {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length < 32) {
+                write(0xa0 | bytes.length);
+            } else if (bytes.length < 0x10000) {
+                write(0xda);
+                writeShort(bytes.length);
+            } else {
+                write(0xdb);
+                writeInt(bytes.length);
+            }
+            write(bytes, bytes.length);
+            return this;
+        }
+
+        Packer strings(@NotNull final List<String> values) {
+            arrayHeader(values.size());
+            for (final String value : values) {
+                string(value);
+            }
+            return this;
+        }
+
+        Packer binary(@NotNull final byte[] bytes, final int length) {
+            if (length < 0x100) {
+                write(0xc4);
+                write(length);
+            } else if (length < 0x10000) {
+                write(0xc5);
+                writeShort(length);
+            } else {
+                write(0xc6);
+                writeInt(length);
+            }
+            write(bytes, length);
+            return this;
+        }
+
+        /**
+         * Leaves {@code length} bytes to be filled in later with {@link #set(int, int)}.
+         */
+        Packer skip(final int length) {
+            ensureCapacity(length);
+            size += length;
+            return this;
+        }
+
+        void set(final int index, final int value) {
+            buffer[index] = (byte) value;
+        }
+
+        private void write(final int value) {
+            ensureCapacity(1);
+            buffer[size++] = (byte) value;
+        }
+
+        private void write(@NotNull final byte[] bytes, final int length) {
+            ensureCapacity(length);
+            System.arraycopy(bytes, 0, buffer, size, length);
+            size += length;
+        }
+
+        private void writeShort(final int value) {
+            write(value >>> 8);
+            write(value);
+        }
+
+        private void writeInt(final int value) {
+            write(value >>> 24);
+            write(value >>> 16);
+            write(value >>> 8);
+            write(value);
+        }
+
+        private void ensureCapacity(final int length) {
+            if (size + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + length));
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        void writeTo(@NotNull final OutputStream out) throws IOException {
+            out.write(buffer, 0, size);
+        }
+
+        @NotNull
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+    }
+
+    /**
+     * Reads values into plain Java objects: {@link Long}, {@link Boolean}, {@link Double}, {@link String},
+     * {@code byte[]}, {@link List}, {@link Map} and null.
+     */
+    static final class Unpacker {
+        private final byte[] bytes;
+        private final int end;
+        private int position;
+
+        Unpacker(@NotNull final byte[] bytes, final int offset, final int length) {
+            this.bytes = bytes;
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        boolean hasNext() {
+            return position < end;
+        }
+
+        boolean nextIsArray() throws IOException {
+            require(1);
+            final int type = bytes[position] & 0xff;
+            return (type & 0xf0) == 0x90 || type == 0xdc || type == 0xdd;
+        }
+
+        /**
+         * Reads the size of an array whose elements are then read one by one, rather than as a {@link List}.
+         */
+        int arrayHeader() throws IOException {
+            final int type = readByte();
+            if ((type & 0xf0) == 0x90) return type & 0x0f;
+            if (type == 0xdc) return readShort();
+            if (type == 0xdd) return readLength();
+            throw new IOException(String.format("Array expected at %d, found type 0x%02x", position - 1, type));
+        }
+
+        /**
+         * Skips {@code values} values, nested ones included, without decoding them.
+         */
+        void skip(final int values) throws IOException {
+            for (long remaining = values; remaining > 0; remaining--) {
+                final int type = readByte();
+                if (type <= 0x7f || type >= 0xe0) continue;
+                if ((type & 0xf0) == 0x80) { remaining += 2L * (type & 0x0f); continue; }
+                if ((type & 0xf0) == 0x90) { remaining += type & 0x0f; continue; }
+                if ((type & 0xe0) == 0xa0) { advance(type & 0x1f); continue; }
+                switch (type) {
+                    case 0xc0: case 0xc2: case 0xc3: break;
+                    case 0xcc: case 0xd0: advance(1); break;
+                    case 0xcd: case 0xd1: advance(2); break;
+                    case 0xca: case 0xce: case 0xd2: advance(4); break;
+                    case 0xcb: case 0xcf: case 0xd3: advance(8); break;
+                    case 0xc4: case 0xd9: advance(readByte()); break;
+                    case 0xc5: case 0xda: advance(readShort()); break;
+                    case 0xc6: case 0xdb: advance(readLength()); break;
+                    case 0xdc: remaining += readShort(); break;
+                    case 0xdd: remaining += readLength(); break;
+                    case 0xde: remaining += 2L * readShort(); break;
+                    case 0xdf: remaining += 2L * readLength(); break;
+                    default:
+                        throw new IOException(String.format("Unsupported msgpack type 0x%02x at %d", type, position - 1));
+                }
+            }
+        }
+
+        @Nullable
+        Object next() throws IOException {
+            final int type = readByte();
+            if (type <= 0x7f) return (long) type;
+            if (type >= 0xe0) return (long) (byte) type;
+            if ((type & 0xf0) == 0x80) return readMap(type & 0x0f);
+            if ((type & 0xf0) == 0x90) return readArray(type & 0x0f);
+            if ((type & 0xe0) == 0xa0) return readString(type & 0x1f);
+            switch (type) {
+                case 0xc0: return null;
+                case 0xc2: return Boolean.FALSE;
+                case 0xc3: return Boolean.TRUE;
+                case 0xc4: return readBytes(readByte());
+                case 0xc5: return readBytes(readShort());
+                case 0xc6: return readBytes(readLength());
+                case 0xca: return (double) Float.intBitsToFloat(readInt());
+                case 0xcb: return Double.longBitsToDouble(readLong());
+                case 0xcc: return (long) readByte();
+                case 0xcd: return (long) readShort();
+                case 0xce: return readInt() & 0xffffffffL;
+                case 0xcf: return readLong();
+                case 0xd0: return (long) (byte) readByte();
+                case 0xd1: return (long) (short) readShort();
+                case 0xd2: return (long) readInt();
+                case 0xd3: return readLong();
+                case 0xd9: return readString(readByte());
+                case 0xda: return readString(readShort());
+                case 0xdb: return readString(readLength());
+                case 0xdc: return readArray(readShort());
+                case 0xdd: return readArray(readLength());
+                case 0xde: return readMap(readShort());
+                case 0xdf: return readMap(readLength());
+                default:
+                    throw new IOException(String.format("Unsupported msgpack type 0x%02x at %d", type, position - 1));
+            }
+        }
+
+        private List<Object> readArray(final int size) throws IOException {
+            final List<Object> values = new ArrayList<>(Math.min(size, end - position));
+            for (int i = 0; i < size; i++) {
+                values.add(next());
+            }
+            return values;
+        }
+
+        private Map<Object, Object> readMap(final int size) throws IOException {
+            final Map<Object, Object> values = new LinkedHashMap<>();
+            for (int i = 0; i < size; i++) {
+                values.put(next(), next());
+            }
+            return values;
+        }
+
+        private String readString(final int length) throws IOException {
+            require(length);
+            final String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        private byte[] readBytes(final int length) throws IOException {
+            require(length);
+            final byte[] value = new byte[length];
+            System.arraycopy(bytes, position, value, 0, length);
+            position += length;
+            return value;
+        }
+
+        private int readByte() throws IOException {
+            require(1);
+            return bytes[position++] & 0xff;
+        }
+
+        private int readShort() throws IOException {
+            return (readByte() << 8) | readByte();
+        }
+
+        private int readInt() throws IOException {
+            return (readShort() << 16) | readShort();
+        }
+
+        private int readLength() throws IOException {
+            final int length = readInt();
+            if (length < 0) {
+                throw new IOException("Length too large: " + (length & 0xffffffffL));
+            }
+            return length;
+        }
+
+        private long readLong() throws IOException {
+            return ((long) readInt() << 32) | (readInt() & 0xffffffffL);
+        }
+
+        private void advance(final int length) throws IOException {
+            require(length);
+            position += length;
+        }
+
+        private void require(final int length) throws IOException {
+            if (length > end - position) {
+                throw new IOException("Truncated msgpack data, " + length + " bytes expected at " + position);
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package io.github.intellij.dlanguage.codeinsight.dcd;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.configurations.GeneralCommandLine;
+import com.intellij.notification.Notification;
+import com.intellij.notification.NotificationType;
+import com.intellij.notification.Notifications;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.projectRoots.Sdk;
+import com.intellij.openapi.roots.ModuleRootManager;
+import com.intellij.openapi.roots.OrderRootType;
+import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.roots.ProjectRootModificationTracker;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import io.github.intellij.dlanguage.DlangSdkType;
+import io.github.intellij.dlanguage.messagebus.ToolChangeListener;
+import io.github.intellij.dlanguage.messagebus.Topics;
+import io.github.intellij.dlanguage.project.DubConfigurationParser;
+import io.github.intellij.dlanguage.settings.ToolKey;
+import io.github.intellij.dlanguage.settings.ToolSettings;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The dcd-servers of a project. Modules share a server as long as they import from the same paths: the project's
+ * source roots, the sources of their D compiler and the dub dependencies, so a project with many dub sub-packages
+ * indexes phobos and its dependencies once rather than once per module.
+ *
+ * Servers are supervised by a {@link DCDServerSupervisor}: health checked every {@value #HEALTH_CHECK_SECONDS}
+ * seconds, restarted with backoff on the scheduler when they crash, and bounded in number and memory.
+ */
+public final class DCDServerPool implements Disposable, ToolChangeListener {
+
+    private static final Logger LOG = Logger.getInstance(DCDServerPool.class);
+
+    static final int MAX_SERVERS = 4;
+    static final long MAX_RESIDENT_BYTES = 2L << 30;
+    static final long INITIAL_BACKOFF_MILLIS = 1000;
+    static final long HEALTH_CHECK_SECONDS = 30;
+
+    private static final Key<CachedValue<List<String>>> IMPORT_PATHS_KEY = Key.create("D_DCD_IMPORT_PATHS");
+    private static final Key<CachedValue<List<String>>> DUB_IMPORT_PATHS_KEY = Key.create("D_DCD_DUB_IMPORT_PATHS");
+
+    @NotNull
+    private final Project project;
+
+    @NotNull
+    private final DCDServerSupervisor supervisor;
+
+    @NotNull
+    private final ScheduledFuture<?> healthCheck;
+
+    public DCDServerPool(@NotNull final Project project) {
+        this.project = project;
+        final ScheduledExecutorService scheduler = AppExecutorUtil.getAppScheduledExecutorService();
+        this.supervisor = new DCDServerSupervisor(DCDServerPool::launch, scheduler,
+            MAX_SERVERS, MAX_RESIDENT_BYTES, INITIAL_BACKOFF_MILLIS, this::displayStartFailure);
+        this.supervisor.configure(ToolKey.DCD_SERVER_KEY.getPath(), ToolKey.DCD_SERVER_KEY.getFlags());
+        this.healthCheck = scheduler.scheduleWithFixedDelay(supervisor::checkHealth,
+            HEALTH_CHECK_SECONDS, HEALTH_CHECK_SECONDS, TimeUnit.SECONDS);
+        // Ensure that we are notified of changes to the settings.
+        project.getMessageBus().connect(this).subscribe(Topics.DCD_SERVER_TOOL_CHANGE, this);
+    }
+
+    public static DCDServerPool getInstance(@NotNull final Project project) {
+        return ServiceManager.getService(project, DCDServerPool.class);
+    }
+
+    /**
+     * The server for the import paths of {@code module}, started on first use. Computing the import paths may run
+     * 'dub describe', don't call this on the EDT.
+     *
+     * @return null if no dcd-server is configured
+     */
+    @Nullable
+    public DCDCompletionServer serverFor(@NotNull final Module module) {
+        return supervisor.server(workingDirectory(), importPaths(module));
+    }
+
+    /**
+     * Restarts the server used by {@code module} right away. Don't call this on the EDT either.
+     */
+    public void restart(@NotNull final Module module) {
+        supervisor.restart(workingDirectory(), importPaths(module));
+    }
+
+    @Override
+    public void onToolSettingsChanged(@NotNull final ToolSettings settings) {
+        LOG.debug("DCD Server settings changed");
+        supervisor.configure(settings.getPath(), settings.getFlags());
+    }
+
+    @Override
+    public void dispose() {
+        healthCheck.cancel(false);
+        supervisor.shutdown();
+    }
+
+    @NotNull
+    private String workingDirectory() {
+        return StringUtil.defaultIfEmpty(project.getBasePath(), "");
+    }
+
+    /**
+     * Sorted, so that modules importing from the same paths map to the same server.
+     */
+    @NotNull
+    private List<String> importPaths(@NotNull final Module module) {
+        return CachedValuesManager.getManager(project).getCachedValue(module, IMPORT_PATHS_KEY, () -> {
+            final Set<String> paths = new TreeSet<>();
+
+            // project files in the source roots
+            for (final VirtualFile root : ProjectRootManager.getInstance(project).getContentSourceRoots()) {
+                paths.add(root.getPath());
+            }
+
+            // the compiler sources
+            final Sdk sdk = ModuleRootManager.getInstance(module).getSdk();
+            if (sdk != null && sdk.getSdkType() instanceof DlangSdkType) {
+                for (final VirtualFile root : sdk.getRootProvider().getFiles(OrderRootType.SOURCES)) {
+                    if (root.isDirectory()) {
+                        paths.add(root.getPath());
+                    }
+                }
+            }
+
+            paths.addAll(dubImportPaths());
+
+            return CachedValueProvider.Result.create(Collections.unmodifiableList(new ArrayList<>(paths)),
+                ProjectRootModificationTracker.getInstance(project));
+        }, false);
+    }
+
+    @NotNull
+    private List<String> dubImportPaths() {
+        return CachedValuesManager.getManager(project).getCachedValue(project, DUB_IMPORT_PATHS_KEY, () -> {
+            final List<String> paths = new ArrayList<>();
+            final DubConfigurationParser dubParser = new DubConfigurationParser(project, ToolKey.DUB_KEY.getPath(), false);
+            if (dubParser.canUseDub()) {
+                dubParser.getDubProject().ifPresent(dubProject -> dubProject.getPackages().forEach(pkg -> {
+                    LOG.debug("adding source for ", pkg.getName());
+                    for (final String srcDir : pkg.getSourcesDirs()) {
+                        paths.add(String.format("%s%s", pkg.getPath(), srcDir));
+                    }
+                }));
+            } else {
+                LOG.info("not possible to run 'dub describe'");
+            }
+            return CachedValueProvider.Result.create(paths, ProjectRootModificationTracker.getInstance(project));
+        }, false);
+    }
+
+    private void displayStartFailure(@NotNull final ExecutionException e) {
+        Notifications.Bus.notify(new Notification("DCDNotification", "DCD Error",
+            "Unable to start a dcd server. Make sure that you have specified the path to the dcd-server and dcd-client executables correctly. You can specify executable paths under File > Settings > Languages & Frameworks > D Tools",
+            NotificationType.ERROR), project);
+    }
+
+    @NotNull
+    private static Process launch(@NotNull final GeneralCommandLine commandLine) throws ExecutionException {
+        LOG.info("DCD server start parameters " + commandLine.getParametersList());
+        final Process process = commandLine.withRedirectErrorStream(true).createProcess();
+        // dcd-server logs to its output, it would block once the pipe is full if nobody read it
+        AppExecutorUtil.getAppExecutorService().execute(() -> discard(process.getInputStream()));
+        return process;
+    }
+
+    private static void discard(@NotNull final InputStream output) {
+        final byte[] buffer = new byte[4096];
+        try (final InputStream in = output) {
+            while (in.read(buffer) != -1) {
+                // nothing to keep
+            }
+        } catch (final IOException e) {
+            // the process was destroyed
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package io.github.intellij.dlanguage.codeinsight.dcd;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.configurations.GeneralCommandLine;
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static io.github.intellij.dlanguage.utils.DUtil.isNotNullOrEmpty;
+
+/**
+ * Keeps at most {@code maxServers} dcd-servers running, one per distinct set of import paths.
+ *
+ * A server that crashes, fails to start or grows beyond {@code maxResidentBytes} is restarted on the scheduler after
+ * an exponential backoff, callers asking for it meanwhile get it as is (and their request fails fast) instead of
+ * waiting. Asking for one more set of import paths than allowed stops the least recently used server.
+ */
+final class DCDServerSupervisor {
+
+    private static final Logger LOG = Logger.getInstance(DCDServerSupervisor.class);
+
+    static final long MAX_BACKOFF_MILLIS = 60_000;
+
+    /** a server running this long is considered healthy again and its failures are forgotten */
+    static final long STABLE_MILLIS = 60_000;
+
+    @FunctionalInterface
+    interface Launcher {
+        @NotNull
+        Process launch(@NotNull GeneralCommandLine commandLine) throws ExecutionException;
+    }
+
+    private final Launcher launcher;
+    private final ScheduledExecutorService scheduler;
+    private final int maxServers;
+    private final long maxResidentBytes;
+    private final long initialBackoffMillis;
+    private final Consumer<ExecutionException> onStartFailure;
+
+    // guarded by this, in access order so that the first server is the least recently used
+    private final Map<List<String>, DCDCompletionServer> servers = new LinkedHashMap<>(8, 0.75f, true);
+    @Nullable
+    private String path;
+    @Nullable
+    private String flags;
+
+    DCDServerSupervisor(@NotNull final Launcher launcher,
+                        @NotNull final ScheduledExecutorService scheduler,
+                        final int maxServers,
+                        final long maxResidentBytes,
+                        final long initialBackoffMillis,
+                        @NotNull final Consumer<ExecutionException> onStartFailure) {
+        this.launcher = launcher;
+        this.scheduler = scheduler;
+        this.maxServers = maxServers;
+        this.maxResidentBytes = maxResidentBytes;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.onStartFailure = onStartFailure;
+    }
+
+    /**
+     * Stops every server, the next request starts them again with the new dcd-server path and flags.
+     */
+    synchronized void configure(@Nullable final String path, @Nullable final String flags) {
+        shutdown();
+        this.path = path;
+        this.flags = flags;
+    }
+
+    /**
+     * The server for {@code importPaths}, started if there is none yet.
+     *
+     * @return null if no dcd-server is configured
+     */
+    @Nullable
+    synchronized DCDCompletionServer server(@NotNull final String workingDirectory, @NotNull final List<String> importPaths) {
+        if (!isNotNullOrEmpty(path)) {
+            return null;
+        }
+        DCDCompletionServer server = servers.get(importPaths);
+        if (server == null) {
+            while (servers.size() >= maxServers) {
+                final Iterator<DCDCompletionServer> leastRecentlyUsed = servers.values().iterator();
+                final DCDCompletionServer evicted = leastRecentlyUsed.next();
+                leastRecentlyUsed.remove();
+                LOG.info("Stopping " + evicted + ", at most " + maxServers + " dcd-servers are kept running");
+                stop(evicted);
+            }
+            server = new DCDCompletionServer(workingDirectory, importPaths);
+            servers.put(importPaths, server);
+            start(server);
+        }
+        return server;
+    }
+
+    /**
+     * Restarts the server for {@code importPaths} now, whatever its backoff.
+     */
+    @Nullable
+    synchronized DCDCompletionServer restart(@NotNull final String workingDirectory, @NotNull final List<String> importPaths) {
+        final DCDCompletionServer server = servers.remove(importPaths);
+        if (server != null) {
+            stop(server);
+        }
+        return server(workingDirectory, importPaths);
+    }
+
+    synchronized int size() {
+        return servers.size();
+    }
+
+    /**
+     * Restarts servers which died unnoticed or use too much memory, forgets the failures of long running ones.
+     */
+    synchronized void checkHealth() {
+        final long now = System.currentTimeMillis();
+        for (final DCDCompletionServer server : new ArrayList<>(servers.values())) {
+            if (server.pendingRestart != null) {
+                continue;
+            }
+            if (!server.isAlive()) {
+                scheduleRestart(server);
+                continue;
+            }
+            if (server.uptimeMillis(now) >= STABLE_MILLIS) {
+                server.failures = 0;
+            }
+            final long residentBytes = server.residentBytes();
+            if (residentBytes > maxResidentBytes) {
+                LOG.warn(server + " uses " + (residentBytes >> 20) + "MB, restarting it");
+                server.kill();
+                scheduleRestart(server);
+            }
+        }
+    }
+
+    synchronized void shutdown() {
+        for (final DCDCompletionServer server : servers.values()) {
+            stop(server);
+        }
+        servers.clear();
+    }
+
+    static long backoffMillis(final long initialBackoffMillis, final int failures) {
+        return Math.min(MAX_BACKOFF_MILLIS, initialBackoffMillis << Math.min(failures, 16));
+    }
+
+    private void start(@NotNull final DCDCompletionServer server) {
+        try {
+            final Process process = server.start(path, flags, launcher);
+            LOG.info("Started " + server);
+            process.onExit().thenRun(() -> exited(server, process));
+        } catch (final ExecutionException e) {
+            LOG.warn("Unable to start " + server, e);
+            if (server.failures == 0) {
+                onStartFailure.accept(e);
+            }
+            scheduleRestart(server);
+        }
+    }
+
+    private synchronized void exited(@NotNull final DCDCompletionServer server, @NotNull final Process process) {
+        if (server.stopped || !server.isCurrent(process)) {
+            return; // killed on purpose
+        }
+        LOG.warn(server + " exited with code " + process.exitValue());
+        scheduleRestart(server);
+    }
+
+    private void scheduleRestart(@NotNull final DCDCompletionServer server) {
+        if (server.stopped || server.pendingRestart != null) {
+            return;
+        }
+        final long delay = backoffMillis(initialBackoffMillis, server.failures++);
+        server.pendingRestart = scheduler.schedule(() -> {
+            synchronized (this) {
+                server.pendingRestart = null;
+                if (!server.stopped) {
+                    start(server);
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private static void stop(@NotNull final DCDCompletionServer server) {
+        server.stopped = true;
+        if (server.pendingRestart != null) {
+            server.pendingRestart.cancel(false);
+            server.pendingRestart = null;
+        }
+        server.kill();
+    }
+}
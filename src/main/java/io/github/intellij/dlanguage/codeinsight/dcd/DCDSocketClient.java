@@ -0,0 +1,194 @@
+package io.github.intellij.dlanguage.codeinsight.dcd;
+
+import io.github.intellij.dlanguage.codeinsight.dcd.completions.Completion;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Talks to dcd-server directly over its TCP socket (dcd-server started with {@code --tcp}), speaking the same
+ * msgpack protocol as dcd-client, so that completion doesn't pay for starting a dcd-client process every time.
+ *
+ * dcd-server answers a single request per connection and then closes it, a client is therefore a long lived object
+ * opening a cheap loopback connection per request. Unix domain sockets aren't available before Java 16.
+ */
+public final class DCDSocketClient {
+
+    public static final int DEFAULT_PORT = 9166;
+
+    /** {@code RequestKind.autocomplete} of dcd-server */
+    private static final int KIND_AUTOCOMPLETE = 1;
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 500;
+    private static final int READ_TIMEOUT_MILLIS = 3000;
+
+    private final InetSocketAddress address;
+
+    public DCDSocketClient() {
+        this(DEFAULT_PORT);
+    }
+
+    public DCDSocketClient(final int port) {
+        this.address = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+    }
+
+    /**
+     * Asks for the completions at {@code cursor}.
+     *
+     * @param sourceCode UTF-8 content of the file, only the first {@code sourceLength} bytes are sent
+     * @param cursor     offset of the caret in bytes (not characters) from the start of {@code sourceCode}
+     * @throws java.net.ConnectException if no dcd-server listens on the port
+     */
+    @NotNull
+    public List<Completion> autoComplete(@NotNull final String fileName,
+                                         @NotNull final byte[] sourceCode,
+                                         final int sourceLength,
+                                         final int cursor,
+                                         @NotNull final List<String> importPaths) throws IOException {
+        final DCDMessagePack.Packer request = autocompleteRequest(fileName, sourceCode, sourceLength, cursor, importPaths);
+        final ResponseBuffer response = new ResponseBuffer();
+        try (final Socket socket = new Socket()) {
+            socket.setTcpNoDelay(true);
+            socket.connect(address, CONNECT_TIMEOUT_MILLIS);
+            socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+            final OutputStream out = socket.getOutputStream();
+            request.writeTo(out);
+            out.flush();
+            response.readFrom(socket.getInputStream());
+        }
+        return completions(response.bytes(), response.size());
+    }
+
+    /**
+     * An {@code AutocompleteRequest} prefixed by its length as a little endian {@code size_t}, packed into a buffer
+     * sized for the source so that it is copied once.
+     */
+    @NotNull
+    static DCDMessagePack.Packer autocompleteRequest(@NotNull final String fileName,
+                                                     @NotNull final byte[] sourceCode,
+                                                     final int sourceLength,
+                                                     final int cursor,
+                                                     @NotNull final List<String> importPaths) {
+        final DCDMessagePack.Packer packer = new DCDMessagePack.Packer(sourceLength + 256)
+            .skip(8)
+            .arrayHeader(6)
+            .string(fileName)
+            .uint(KIND_AUTOCOMPLETE)
+            .strings(importPaths)
+            .binary(sourceCode, sourceLength)
+            .uint(cursor)
+            .string("");
+        long length = packer.size() - 8;
+        for (int i = 0; i < 8; i++) {
+            packer.set(i, (int) length);
+            length >>>= 8;
+        }
+        return packer;
+    }
+
+    /**
+     * Reads the completions of an {@code AutocompleteResponse}:
+     * {@code [completionType, symbolFilePath, symbolLocation, [[identifier, kind, definition, ...]...], ...]}.
+     * The identifiers are read in place, skipping the fields completion doesn't show, without decoding the response
+     * into lists first. Anything that doesn't look like an identifier list (calltips, symbol locations) gives no
+     * completions.
+     */
+    @NotNull
+    static List<Completion> completions(@NotNull final byte[] response, final int length) throws IOException {
+        if (length == 0) {
+            return Collections.emptyList();
+        }
+        final DCDMessagePack.Unpacker unpacker = new DCDMessagePack.Unpacker(response, 0, length);
+        if (!unpacker.nextIsArray()) {
+            throw new IOException("Unexpected dcd response: " + unpacker.next());
+        }
+        final int fields = unpacker.arrayHeader();
+        if (fields < 4) {
+            throw new IOException("Unexpected dcd response with " + fields + " fields");
+        }
+        if (!"identifiers".equals(text(unpacker.next()))) {
+            return Collections.emptyList();
+        }
+        unpacker.skip(2); // symbolFilePath, symbolLocation
+        if (!unpacker.nextIsArray()) {
+            return Collections.emptyList();
+        }
+        final int entries = unpacker.arrayHeader();
+        final List<Completion> completions = new ArrayList<>(Math.min(entries, length));
+        for (int i = 0; i < entries; i++) {
+            if (!unpacker.nextIsArray()) {
+                unpacker.skip(1);
+                continue;
+            }
+            final int size = unpacker.arrayHeader();
+            if (size < 2) {
+                unpacker.skip(size);
+                continue;
+            }
+            final String identifier = text(unpacker.next());
+            final String kind = kind(unpacker.next());
+            unpacker.skip(size - 2); // definition, symbolFilePath, symbolLocation, documentation
+            if (identifier != null && !identifier.isEmpty()) {
+                completions.add(DCDCompletionClient.completion(identifier, kind));
+            }
+        }
+        return completions;
+    }
+
+    private static String text(final Object value) {
+        if (value instanceof String) {
+            return (String) value;
+        }
+        if (value instanceof byte[]) {
+            return new String((byte[]) value, StandardCharsets.UTF_8);
+        }
+        return null;
+    }
+
+    // kind is a D char, packed as an unsigned integer (or a one character string by some msgpack-d versions)
+    private static String kind(final Object value) {
+        if (value instanceof Long) {
+            return String.valueOf((char) ((Long) value).intValue());
+        }
+        final String text = text(value);
+        return text == null ? "" : text;
+    }
+
+    /**
+     * Collects the response and hands out its buffer as is, rather than a copy.
+     */
+    private static final class ResponseBuffer extends ByteArrayOutputStream {
+        ResponseBuffer() {
+            super(8192);
+        }
+
+        void readFrom(@NotNull final InputStream in) throws IOException {
+            int read;
+            while (true) {
+                if (count == buf.length) {
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                }
+                read = in.read(buf, count, buf.length - count);
+                if (read == -1) {
+                    return;
+                }
+                count += read;
+            }
+        }
+
+        byte[] bytes() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package io.github.intellij.dlanguage.codeinsight.dcd;
+
+import com.intellij.openapi.util.text.StringUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The UTF-8 encoding of the files completed with DCD, kept while their content doesn't change.
+ *
+ * DCD has no cache for unsaved buffers, every request carries the whole source. What can be saved is encoding it:
+ * an unchanged buffer (the same characters) is encoded once, straight from the document's characters into a
+ * buffer of the exact size, and then handed as is to the socket or to dcd-client.
+ */
+final class DCDSourceBuffers {
+
+    private static final int CACHED_FILES = 8;
+
+    static final class Source {
+        @NotNull
+        private final CharSequence text;
+        @NotNull
+        final byte[] bytes;
+
+        private Source(@NotNull final CharSequence text, @NotNull final byte[] bytes) {
+            this.text = text;
+            this.bytes = bytes;
+        }
+
+        private boolean encodes(@NotNull final CharSequence text) {
+            // the document hands out the same immutable sequence until it changes, comparing is the fallback
+            return this.text == text || StringUtil.equals(this.text, text);
+        }
+
+        int length() {
+            return bytes.length;
+        }
+    }
+
+    // guarded by this
+    private final Map<String, Source> sources = new LinkedHashMap<String, Source>(CACHED_FILES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Source> eldest) {
+            return size() > CACHED_FILES;
+        }
+    };
+
+    /**
+     * @param text the content of the file, not changed afterwards, like {@code Document#getImmutableCharSequence()}
+     */
+    @NotNull
+    Source encode(@NotNull final String filePath, @NotNull final CharSequence text) {
+        synchronized (this) {
+            final Source cached = sources.get(filePath);
+            if (cached != null && cached.encodes(text)) {
+                return cached;
+            }
+        }
+        final Source source = new Source(text, encode(text));
+        synchronized (this) {
+            sources.put(filePath, source);
+        }
+        return source;
+    }
+
+    /**
+     * The offset in bytes of the character at {@code position}, DCD expects cursors as byte offsets.
+     */
+    static int byteOffset(@NotNull final CharSequence text, final int position) {
+        return utf8Length(text, Math.min(Math.max(position, 0), text.length()));
+    }
+
+    @NotNull
+    static byte[] encode(@NotNull final CharSequence text) {
+        final int length = text.length();
+        final byte[] bytes = new byte[utf8Length(text, length)];
+        int index = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes[index++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[index++] = (byte) (0xc0 | (c >> 6));
+                bytes[index++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                bytes[index++] = (byte) (0xf0 | (codePoint >> 18));
+                bytes[index++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                bytes[index++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                bytes[index++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                bytes[index++] = '?'; // unpaired, like String.getBytes
+            } else {
+                bytes[index++] = (byte) (0xe0 | (c >> 12));
+                bytes[index++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                bytes[index++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        return bytes;
+    }
+
+    private static int utf8Length(@NotNull final CharSequence text, final int end) {
+        int length = 0;
+        for (int i = 0; i < end; i++) {
+            final char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
@@ -1,146 +1,128 @@
 package io.github.intellij.dlanguage.highlighting.annotation.external;
 
-import com.intellij.execution.ExecutionException;
 import com.intellij.execution.configurations.GeneralCommandLine;
-import com.intellij.execution.process.OSProcessHandler;
-import com.intellij.openapi.diagnostic.Logger;
-import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.util.text.StringUtil;
-import com.intellij.psi.PsiDocumentManager;
 import com.intellij.psi.PsiFile;
 import com.intellij.util.containers.ContainerUtil;
 import io.github.intellij.dlanguage.highlighting.annotation.DAnnotationHolder;
 import io.github.intellij.dlanguage.highlighting.annotation.Problems;
-import io.github.intellij.dlanguage.settings.ToolKey;
 import io.github.intellij.dlanguage.highlighting.annotation.DProblem;
-import io.github.intellij.dlanguage.tools.dub.DubProcessListener;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+/**
+ * Compiles the edited module on its own (with -o-), importing the rest of the package and its dub dependencies
+ * through import paths, so that a check costs the module and what it imports rather than the whole package.
+ */
 public class CompileCheck {
-    private static final Logger LOG = Logger.getInstance(CompileCheck.class);
 
+    // Example DMD error:
+    // src/hello.d(3,1): Error: only one main allowed
+    private static final Pattern PROBLEM = Pattern.compile("([\\w\\\\/]+\\.d)\\((\\d+),(\\d+)\\):\\s(\\w+):(.+)");
+
+    /**
+     * The problems of {@code text}, the content of {@code file} as it is being edited. Checks run in the background
+     * (see {@link CompileCheckQueue}): until the check of this content is done there is nothing to report, and the
+     * file is annotated again once it is.
+     */
     @NotNull
-    public Problems checkFileSyntax(@NotNull final PsiFile file) {
-        final String dubPath = ToolKey.DUB_KEY.getPath();
-        if (dubPath == null) return new Problems();
+    public Problems checkFileSyntax(@NotNull final PsiFile file, @NotNull final CharSequence text) {
+        if (file.getVirtualFile() == null) return new Problems();
 
-        final String result = processFile(file, dubPath);
-        return findProblems(result, file);
+        final List<String> report = CompileCheckQueue.getInstance(file.getProject()).report(file, text);
+        return report == null ? new Problems() : findProblems(report, text);
     }
 
+    /**
+     * The command checking {@code source} without generating anything, with the {@code flags} of its build.
+     */
     @NotNull
-    private String processFile(final PsiFile file, final String dubPath) {
+    static GeneralCommandLine commandLine(@NotNull final String compilerPath, @Nullable final String workingDirectory,
+                                          @NotNull final List<String> importPaths,
+                                          @NotNull final List<String> stringImportPaths,
+                                          @NotNull final List<String> flags, @NotNull final String source) {
         final GeneralCommandLine cmd = new GeneralCommandLine()
-            .withWorkDirectory(file.getProject().getBasePath())
-            .withExePath(dubPath)
-            .withEnvironment("DFLAGS", "-o-")
-            .withParameters("build", "--combined", "-q");
-
-        try {
-            final String dubCommand = cmd.getCommandLineString();
-            final DubProcessListener listener = new DubProcessListener();
-            final OSProcessHandler process = new OSProcessHandler(cmd.createProcess(), dubCommand);
-            process.addProcessListener(listener);
-            process.startNotify();
-            process.waitFor();
-            return listener.getOutput();
-        } catch (final ExecutionException e) {
-            LOG.warn("There was a problem running 'dub build --combined -q'", e);
+            .withWorkDirectory(workingDirectory)
+            .withExePath(compilerPath)
+            .withParameters("-o-", "-vcolumns");
+        cmd.addParameters(flags);
+        for (final String path : importPaths) {
+            cmd.addParameter("-I" + path);
+        }
+        for (final String path : stringImportPaths) {
+            cmd.addParameter("-J" + path);
         }
-        return "";
+        cmd.addParameter(source);
+        return cmd;
     }
 
-
+    /**
+     * The flags dub builds a package with: its versions and debug versions (of the configuration dub described,
+     * including the Have_ versions of its dependencies), then its dflags as they are.
+     */
     @NotNull
-    private Problems findProblems(final String stdout, final PsiFile file) {
-        final List<String> lints = StringUtil.split(stdout, "\n");
-        final Problems problems = new Problems();
-        for (final String lint : lints) {
-            ContainerUtil.addIfNotNull(problems, parseProblem(lint, file));
+    static List<String> dubFlags(@NotNull final List<String> versions, @NotNull final List<String> debugVersions,
+                                 @NotNull final List<String> dflags) {
+        final List<String> flags = new ArrayList<>(versions.size() + debugVersions.size() + dflags.size());
+        for (final String version : versions) {
+            flags.add("-version=" + version);
         }
-        return problems;
-    }
-
-    private int getDocumentLineCount(final Document document) {
-        try {
-            final int lineCount = document.getLineCount();
-            return lineCount == 0 ? 1 : lineCount;
-        } catch (final NullPointerException e) {
-            return 1;
+        for (final String version : debugVersions) {
+            flags.add("-debug=" + version);
         }
+        flags.addAll(dflags);
+        return flags;
     }
 
-    private int getLineStartOffset(final Document document, final int line) {
-        try {
-            return document.getLineStartOffset(line);
-        } catch (final Exception e) {
-            return 1;
+    /**
+     * The lines of the compiler's {@code output} which are about {@code path}, the compiler also reports the
+     * problems of the modules it imports.
+     */
+    @NotNull
+    static List<String> linesAbout(@NotNull final String output, @NotNull final String path) {
+        final List<String> lines = new ArrayList<>();
+        for (final String line : StringUtil.splitByLines(output)) {
+            final Matcher m = PROBLEM.matcher(line);
+            String sourceFile = null;
+            while (m.find()) {
+                sourceFile = m.group(1);
+            }
+            if (sourceFile != null && isSameFile(path, sourceFile)) {
+                lines.add(line);
+            }
         }
+        return lines;
     }
 
-    private int getLineEndOffset(final Document document, final int line) {
-        try {
-            return document.getLineEndOffset(line);
-        } catch (final Exception e) {
-            return 1;
+    @NotNull
+    static Problems findProblems(@NotNull final List<String> report, @NotNull final CharSequence text) {
+        final Problems problems = new Problems();
+        if (report.isEmpty()) {
+            return problems;
         }
-    }
-
-    private int getValidLineNumber(int line, final Document document) {
-        final int lineCount = getDocumentLineCount(document);
-        line = line - 1;
-        if (line <= 0) {
-            line = 1;
-        } else if (line >= lineCount) {
-            line = lineCount - 1;
+        final LineStarts lines = new LineStarts(text);
+        for (final String lint : report) {
+            ContainerUtil.addIfNotNull(problems, parseProblem(lint, lines));
         }
-        return line;
-    }
-
-    private int getOffsetStart(final PsiFile file, int line, final int column) {
-        final Document document = PsiDocumentManager.getInstance(file.getProject()).getDocument(file);
-        line = getValidLineNumber(line, document);
-        return getLineStartOffset(document, line) + column;
-    }
-
-    private int getOffsetEnd(final PsiFile file, int line) {
-        final Document document = PsiDocumentManager.getInstance(file.getProject()).getDocument(file);
-        line = getValidLineNumber(line, document);
-        return getLineEndOffset(document, line);
+        return problems;
     }
 
-    private TextRange calculateTextRange(final PsiFile file, final int line, final int column) {
-        final int startOffset = getOffsetStart(file, line, column);
-        final int endOffset = getOffsetEnd(file, line);
-        try {
-            class IgnoresInvalidTextRange extends TextRange {
-                private IgnoresInvalidTextRange(final int startOffset, final int endOffset) {
-                    super(startOffset, endOffset, false);
-                }
-            }
-            return new IgnoresInvalidTextRange(startOffset, endOffset);
-        } catch (final Throwable e) {
-            if (e.getMessage().contains("Invalid range")) {
-                //do nothing.
-                return null;
-            } else throw e;
-        }
+    private static TextRange calculateTextRange(final LineStarts lines, final int line, final int column) {
+        final int startOffset = lines.getOffset(line - 1, column);
+        final int endOffset = lines.getLineEndOffset(line - 1);
+        return new TextRange(startOffset, endOffset);
     }
 
     @Nullable
-    private Problem parseProblem(final String lint, final PsiFile file) {
-        // Example DUB error:
-        // src/hello.d(3,1): Error: only one main allowed
-        final Pattern p = Pattern.compile("([\\w\\\\/]+\\.d)\\((\\d+),(\\d+)\\):\\s(\\w+):(.+)");
-        final Matcher m = p.matcher(lint);
+    private static Problem parseProblem(final String lint, final LineStarts lines) {
+        final Matcher m = PROBLEM.matcher(lint);
 
-        String sourceFile = "";
         String message = "";
         int line = 0;
         int column = 0;
@@ -149,25 +131,23 @@ public class CompileCheck {
 
         while (m.find()) {
             hasMatch = true;
-            sourceFile = m.group(1);
-            line = Integer.valueOf(m.group(2));
-            column = Integer.valueOf(m.group(3)) - 1;
+            line = Integer.parseInt(m.group(2));
+            column = Integer.parseInt(m.group(3)) - 1;
             severity = m.group(4);
             message = m.group(5);
         }
 
-        if (hasMatch && isSameFile(file, sourceFile)) {
-            final TextRange range = calculateTextRange(file, line, column);
+        if (hasMatch) {
+            final TextRange range = calculateTextRange(lines, line, column);
             return new Problem(range, message, severity);
         } else {
             return null;
         }
     }
 
-    private boolean isSameFile(final PsiFile file, final String relativeOtherFilePath) {
-        final String filePath = file.getVirtualFile().getPath();
+    private static boolean isSameFile(final String filePath, final String relativeOtherFilePath) {
         final String unixRelativeOtherFilePath = relativeOtherFilePath.replace('\\', '/');
-        return filePath.endsWith(unixRelativeOtherFilePath);
+        return filePath.replace('\\', '/').endsWith(unixRelativeOtherFilePath);
     }
 
     public static class Problem extends DProblem {
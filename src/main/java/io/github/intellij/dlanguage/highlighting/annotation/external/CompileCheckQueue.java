@@ -0,0 +1,405 @@
+package io.github.intellij.dlanguage.highlighting.annotation.external;
+
+import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.configurations.GeneralCommandLine;
+import com.intellij.execution.process.ProcessOutput;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleUtilCore;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.projectRoots.Sdk;
+import com.intellij.openapi.roots.ModuleRootManager;
+import com.intellij.openapi.roots.ProjectRootModificationTracker;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.SimpleModificationTracker;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import io.github.intellij.dlanguage.DlangSdkType;
+import io.github.intellij.dlanguage.project.DubConfigurationParser;
+import io.github.intellij.dlanguage.project.DubPackage;
+import io.github.intellij.dlanguage.settings.ToolKey;
+import io.github.intellij.dlanguage.tools.ToolProcesses;
+import io.github.intellij.dlanguage.tools.ToolProcesses.Priority;
+import io.github.intellij.dlanguage.tools.ToolProcesses.Tool;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * The compile checks of a project. The edited module is compiled on its own, the rest of its package and its dub
+ * dependencies are only imported, so a check costs the module and what it imports rather than a build of the package.
+ *
+ * Checks run one at a time on a background queue, {@value #DEBOUNCE_MILLIS} ms after the last edit of a file (a later
+ * edit cancels the check of the previous content), and their reports are kept by file and content: a file whose
+ * content was already checked, like after an undo, is annotated right away. The report is checked again when any
+ * file changed on disk since, the modules it imports may have changed.
+ */
+public final class CompileCheckQueue implements Disposable {
+
+    private static final Logger LOG = Logger.getInstance(CompileCheckQueue.class);
+
+    static final long DEBOUNCE_MILLIS = 500;
+    static final int MAX_RESULTS = 64;
+
+    private static final Key<CachedValue<BuildState>> BUILD_STATE_KEY = Key.create("D_COMPILE_CHECK_BUILD_STATE");
+    private static final String[] DUB_FILES = {"dub.json", "dub.sdl", "dub.selections.json"};
+
+    @NotNull
+    private final Project project;
+
+    @NotNull
+    private final Function<Module, BuildState> buildStates;
+
+    /**
+     * Changes when a dub file of the project changes, is created or is removed: the first 'dub build' writes
+     * dub.selections.json, which changes the import paths.
+     */
+    private final SimpleModificationTracker dubFiles = new SimpleModificationTracker();
+
+    @NotNull
+    private final ScheduledExecutorService executor =
+        AppExecutorUtil.createBoundedScheduledExecutorService("D Compile Check", 1);
+
+    /**
+     * The reports of the contents of each file, least recently used first.
+     */
+    private final Map<Content, Result> results = new LinkedHashMap<Content, Result>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Content, Result> eldest) {
+            return size() > MAX_RESULTS;
+        }
+    };
+
+    private final Map<String, Pending> pending = new HashMap<>();
+
+    /**
+     * A content of a file, by its hash.
+     */
+    private static final class Content {
+        @NotNull
+        private final String path;
+        private final long hash;
+
+        private Content(@NotNull final String path, final long hash) {
+            this.path = path;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Content)) return false;
+            final Content content = (Content) o;
+            return hash == content.hash && path.equals(content.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, hash);
+        }
+    }
+
+    /**
+     * The report of a content, and the modification count of the file system when it was checked.
+     */
+    private static final class Result {
+        private final long stamp;
+        @NotNull
+        private final List<String> report;
+
+        private Result(final long stamp, @NotNull final List<String> report) {
+            this.stamp = stamp;
+            this.report = report;
+        }
+    }
+
+    private static final class Pending {
+        private final long hash;
+        private final long stamp;
+        private final ProgressIndicator indicator = new EmptyProgressIndicator();
+        private ScheduledFuture<?> future;
+
+        private Pending(final long hash, final long stamp) {
+            this.hash = hash;
+            this.stamp = stamp;
+        }
+    }
+
+    /**
+     * How the modules of a D module are compiled.
+     */
+    static final class BuildState {
+        @Nullable
+        private final String compilerPath;
+        @NotNull
+        private final List<String> importPaths;
+        @NotNull
+        private final List<String> stringImportPaths;
+        /** the versions, debug versions and dflags of the dub package */
+        @NotNull
+        private final List<String> flags;
+
+        BuildState(@Nullable final String compilerPath, @NotNull final List<String> importPaths,
+                           @NotNull final List<String> stringImportPaths, @NotNull final List<String> flags) {
+            this.compilerPath = compilerPath;
+            this.importPaths = importPaths;
+            this.stringImportPaths = stringImportPaths;
+            this.flags = flags;
+        }
+    }
+
+    public CompileCheckQueue(@NotNull final Project project) {
+        this.project = project;
+        this.buildStates = this::buildState;
+        project.getMessageBus().connect(this).subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+            @Override
+            public void after(@NotNull final List<? extends VFileEvent> events) {
+                for (final VFileEvent event : events) {
+                    if (isDubFile(event.getPath())
+                        || event instanceof VFileMoveEvent && isDubFile(((VFileMoveEvent) event).getNewPath())
+                        || event instanceof VFilePropertyChangeEvent
+                            && isDubFile(((VFilePropertyChangeEvent) event).getNewPath())) {
+                        dubFiles.incModificationCount();
+                        return;
+                    }
+                }
+            }
+        });
+    }
+
+    CompileCheckQueue(@NotNull final Project project, @NotNull final Function<Module, BuildState> buildStates) {
+        this.project = project;
+        this.buildStates = buildStates;
+    }
+
+    public static CompileCheckQueue getInstance(@NotNull final Project project) {
+        return ServiceManager.getService(project, CompileCheckQueue.class);
+    }
+
+    /**
+     * The compiler's report about {@code text}, the content of {@code file}, or null until it was checked. Checking
+     * it is queued if needed, and {@code file} is annotated again once the report is there.
+     */
+    @Nullable
+    public List<String> report(@NotNull final PsiFile file, @NotNull final CharSequence text) {
+        final VirtualFile virtualFile = file.getVirtualFile();
+        if (virtualFile == null) return null;
+        final String path = virtualFile.getPath();
+        final long hash = hash(text);
+        final long stamp = VirtualFileManager.getInstance().getModificationCount();
+
+        final Result result;
+        synchronized (results) {
+            result = results.get(new Content(path, hash));
+        }
+        if (result != null) {
+            if (result.stamp != stamp) {
+                schedule(file, path, text, hash, stamp);
+            }
+            return result.report;
+        }
+        schedule(file, path, text, hash, stamp);
+        return null;
+    }
+
+    private synchronized void schedule(@NotNull final PsiFile file, @NotNull final String path,
+                                       @NotNull final CharSequence text, final long hash, final long stamp) {
+        final Pending queued = pending.get(path);
+        if (queued != null) {
+            if (queued.hash == hash && queued.stamp == stamp) {
+                return;
+            }
+            queued.future.cancel(false);
+            queued.indicator.cancel();
+        }
+        final Pending next = new Pending(hash, stamp);
+        next.future = executor.schedule(() -> {
+            try {
+                check(file, path, text, hash, stamp, next.indicator);
+            } catch (final ProcessCanceledException e) {
+                // superseded by a later edit
+            } finally {
+                synchronized (this) {
+                    pending.remove(path, next);
+                }
+            }
+        }, DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+        pending.put(path, next);
+    }
+
+    private void check(@NotNull final PsiFile file, @NotNull final String path, @NotNull final CharSequence text,
+                       final long hash, final long stamp, @NotNull final ProgressIndicator indicator) {
+        if (project.isDisposed()) return;
+        final Module module = ReadAction.compute(() ->
+            file.isValid() ? ModuleUtilCore.findModuleForPsiElement(file) : null);
+        if (module == null) return;
+
+        final BuildState state = buildStates.apply(module);
+        final List<String> report = state.compilerPath == null
+            ? Collections.emptyList()
+            : compile(file, text, state, indicator);
+        if (report == null) return;
+
+        final Result previous;
+        synchronized (results) {
+            previous = results.put(new Content(path, hash), new Result(stamp, report));
+        }
+        if (previous == null || !previous.report.equals(report)) {
+            ApplicationManager.getApplication().invokeLater(() -> {
+                if (file.isValid()) {
+                    DaemonCodeAnalyzer.getInstance(project).restart(file);
+                }
+            }, project.getDisposed());
+        }
+    }
+
+    /**
+     * Compiles a copy of {@code text}, named like {@code file} so that a module without a module declaration keeps
+     * its name.
+     *
+     * @return the lines of the report about the copy, or null if the compiler couldn't be run
+     */
+    @Nullable
+    private List<String> compile(@NotNull final PsiFile file, @NotNull final CharSequence text,
+                                 @NotNull final BuildState state, @NotNull final ProgressIndicator indicator) {
+        File directory = null;
+        try {
+            directory = FileUtil.createTempDirectory("compile-check", null, true);
+            final File copy = new File(directory, file.getName());
+            Files.write(copy.toPath(), text.toString().getBytes(file.getVirtualFile().getCharset()));
+
+            final GeneralCommandLine cmd = CompileCheck.commandLine(state.compilerPath, project.getBasePath(),
+                state.importPaths, state.stringImportPaths, state.flags, copy.getPath());
+            final ProcessOutput output = ToolProcesses.getInstance(project)
+                .run(Tool.COMPILER, Priority.INTERACTIVE, cmd, indicator);
+            if (output.isTimeout()) {
+                return null;
+            }
+            return CompileCheck.linesAbout(output.getStdout() + output.getStderr(), copy.getPath());
+        } catch (final IOException | ExecutionException e) {
+            LOG.warn("There was a problem running the compile check", e);
+            return null;
+        } finally {
+            if (directory != null) {
+                FileUtil.delete(directory);
+            }
+        }
+    }
+
+    /**
+     * The compiler of {@code module} and where its imports come from: its source roots and the import paths of the
+     * dub packages of the project, and the versions and flags dub builds the root package with. Running 'dub
+     * describe' takes a while, so this is cached until the roots or the dub files change.
+     */
+    @NotNull
+    private BuildState buildState(@NotNull final Module module) {
+        return CachedValuesManager.getManager(project).getCachedValue(module, BUILD_STATE_KEY, () -> {
+            final Set<String> importPaths = new LinkedHashSet<>();
+            final Set<String> stringImportPaths = new LinkedHashSet<>();
+            final List<String> flags = new ArrayList<>();
+            final String compilerPath = ReadAction.compute(() -> {
+                for (final VirtualFile root : ModuleRootManager.getInstance(module).getSourceRoots(false)) {
+                    importPaths.add(root.getPath());
+                }
+                final Sdk sdk = ModuleRootManager.getInstance(module).getSdk();
+                return sdk != null && sdk.getSdkType() instanceof DlangSdkType
+                    ? ((DlangSdkType) sdk.getSdkType()).getDmdPath(sdk)
+                    : null;
+            });
+
+            if (compilerPath != null) {
+                final DubConfigurationParser dubParser =
+                    new DubConfigurationParser(project, ToolKey.DUB_KEY.getPath(), true);
+                if (dubParser.canUseDub()) {
+                    dubParser.getDubProject().ifPresent(dubProject -> {
+                        final DubPackage rootPackage = dubProject.getRootPackage();
+                        flags.addAll(CompileCheck.dubFlags(rootPackage.getVersions(), rootPackage.getDebugVersions(),
+                            rootPackage.getDflags()));
+                        final List<DubPackage> packages = new ArrayList<>();
+                        packages.add(rootPackage);
+                        packages.addAll(dubProject.getPackages());
+                        for (final DubPackage pkg : packages) {
+                            for (final String srcDir : pkg.getSourcesDirs()) {
+                                importPaths.add(String.format("%s%s", pkg.getPath(), srcDir));
+                            }
+                            for (final String resource : pkg.getResources()) {
+                                stringImportPaths.add(String.format("%s%s", pkg.getPath(), resource));
+                            }
+                        }
+                    });
+                }
+            }
+
+            return CachedValueProvider.Result.create(new BuildState(compilerPath,
+                    Collections.unmodifiableList(new ArrayList<>(importPaths)),
+                    Collections.unmodifiableList(new ArrayList<>(stringImportPaths)),
+                    Collections.unmodifiableList(flags)),
+                ProjectRootModificationTracker.getInstance(project), dubFiles);
+        }, false);
+    }
+
+    private boolean isDubFile(@NotNull final String path) {
+        final String basePath = project.getBasePath();
+        if (basePath == null) return false;
+        for (final String name : DUB_FILES) {
+            if (FileUtil.pathsEqual(path, basePath + "/" + name)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * A 64 bits FNV-1a hash of {@code text}.
+     */
+    static long hash(@NotNull final CharSequence text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    @Override
+    public void dispose() {
+        synchronized (this) {
+            for (final Pending queued : pending.values()) {
+                queued.indicator.cancel();
+            }
+        }
+        executor.shutdownNow();
+    }
+}
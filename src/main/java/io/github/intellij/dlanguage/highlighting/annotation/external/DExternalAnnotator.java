@@ -2,12 +2,14 @@ package io.github.intellij.dlanguage.highlighting.annotation.external;
 
 import com.intellij.lang.annotation.AnnotationHolder;
 import com.intellij.lang.annotation.ExternalAnnotator;
-import com.intellij.openapi.application.Application;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
-import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.psi.PsiDocumentManager;
 import com.intellij.psi.PsiFile;
 import io.github.intellij.dlanguage.highlighting.annotation.DAnnotationHolder;
 import io.github.intellij.dlanguage.highlighting.annotation.DProblem;
@@ -15,52 +17,89 @@ import io.github.intellij.dlanguage.highlighting.annotation.Problems;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 
 /**
  * Single annotator that calls all external tools used for annotations.
+ *
+ * The tools run concurrently on the content of the file as it is being edited, nothing is saved: dscanner lints a
+ * copy of the document while the compiler's last report about this content is looked up (see {@link CompileCheckQueue}).
  */
-public class DExternalAnnotator extends ExternalAnnotator<PsiFile, DExternalAnnotator.State> {
+public class DExternalAnnotator extends ExternalAnnotator<DExternalAnnotator.Info, DExternalAnnotator.State> {
     @SuppressWarnings("UnusedDeclaration")
     private static final Logger LOG = Logger.getInstance(DExternalAnnotator.class);
 
+    private static final long CANCELLATION_CHECK_MILLIS = 50;
+
     /**
      * The default implementation here is to not annotate files that have lexer/parser errors.  This is kind
      * of lame since the error may be invalid.
      */
     @Nullable
     @Override
-    public PsiFile collectInformation(@NotNull final PsiFile file, @NotNull final Editor editor, final boolean hasErrors) {
-        return collectInformation(file);
+    public Info collectInformation(@NotNull final PsiFile file, @NotNull final Editor editor, final boolean hasErrors) {
+        return collectInformation(file, editor.getDocument());
     }
 
-    @NotNull
+    @Nullable
     @Override
-    public PsiFile collectInformation(@NotNull final PsiFile file) {
-        return file;
+    public Info collectInformation(@NotNull final PsiFile file) {
+        return collectInformation(file, PsiDocumentManager.getInstance(file.getProject()).getDocument(file));
+    }
+
+    @Nullable
+    private static Info collectInformation(@NotNull final PsiFile file, @Nullable final Document document) {
+        if (file.getVirtualFile() == null) return null;
+        if (document == null) {
+            return new Info(file, file.getViewProvider().getContents());
+        }
+        return new Info(file, document.getImmutableCharSequence());
     }
 
     @Nullable
     @Override
-    public State doAnnotate(@NotNull final PsiFile file) {
-        // Force all files to save to ensure annotations are in sync with the file system.
-        final FileDocumentManager fileDocumentManager = FileDocumentManager.getInstance();
-        final Application application = ApplicationManager.getApplication();
-
-        if (fileDocumentManager.getUnsavedDocuments().length > 0) {
-            try {
-                application.invokeAndWait(
-                    fileDocumentManager::saveAllDocuments,
-                    application.getDefaultModalityState()
-                );
-            } catch (final ProcessCanceledException e) {
-                LOG.warn("problem saving files", e);
-            }
+    public State doAnnotate(@NotNull final Info info) {
+        // dscanner runs on another thread, it is stopped with this annotation pass
+        final ProgressIndicator indicator = ProgressManager.getGlobalProgressIndicator();
+        final Future<Problems> dScannerProblems = ApplicationManager.getApplication()
+            .executeOnPooledThread(() -> new DScanner().checkFileSyntax(info.file, info.text, indicator));
+        final Problems compileProblems;
+        try {
+            compileProblems = new CompileCheck().checkFileSyntax(info.file, info.text);
+        } catch (final ProcessCanceledException e) {
+            dScannerProblems.cancel(true);
+            throw e;
         }
+        return new State(await(dScannerProblems), compileProblems);
+    }
 
-        return new State(
-            new DScanner().checkFileSyntax(file),
-            new CompileCheck().checkFileSyntax(file)
-        );
+    @NotNull
+    private static Problems await(@NotNull final Future<Problems> problems) {
+        try {
+            while (true) {
+                try {
+                    return problems.get(CANCELLATION_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (final TimeoutException e) {
+                    ProgressManager.checkCanceled();
+                }
+            }
+        } catch (final ProcessCanceledException e) {
+            problems.cancel(true);
+            throw e;
+        } catch (final InterruptedException e) {
+            problems.cancel(true);
+            Thread.currentThread().interrupt();
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof ProcessCanceledException) {
+                throw (ProcessCanceledException) e.getCause();
+            }
+            LOG.warn("There was a problem running DScanner", e.getCause());
+        }
+        return new Problems();
     }
 
     /**
@@ -68,6 +107,7 @@ public class DExternalAnnotator extends ExternalAnnotator<PsiFile, DExternalAnno
      */
     @Override
     public void apply(@NotNull final PsiFile file, final State state, @NotNull final AnnotationHolder holder) {
+        if (state == null) return;
         apply(file, state, new DAnnotationHolder(holder));
     }
 
@@ -84,6 +124,21 @@ public class DExternalAnnotator extends ExternalAnnotator<PsiFile, DExternalAnno
         }
     }
 
+    /**
+     * What the tools work on: the file and a snapshot of its content taken in the read action.
+     */
+    public static class Info {
+        @NotNull
+        private final PsiFile file;
+        @NotNull
+        private final CharSequence text;
+
+        Info(@NotNull final PsiFile file, @NotNull final CharSequence text) {
+            this.file = file;
+            this.text = text;
+        }
+    }
+
     public static class State {
         private final Problems syntaxProblems;
         private final Problems dScannerProblems;
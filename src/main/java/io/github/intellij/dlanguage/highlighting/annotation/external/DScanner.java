@@ -3,33 +3,34 @@ package io.github.intellij.dlanguage.highlighting.annotation.external;
 import com.intellij.execution.ExecutionException;
 import com.intellij.execution.configurations.GeneralCommandLine;
 import com.intellij.execution.configurations.ParametersList;
-import com.intellij.execution.process.OSProcessHandler;
-import com.intellij.execution.process.ProcessAdapter;
-import com.intellij.execution.process.ProcessEvent;
-import com.intellij.execution.process.ProcessOutputTypes;
+import com.intellij.execution.process.ProcessOutput;
 import com.intellij.notification.Notification;
 import com.intellij.notification.NotificationType;
 import com.intellij.notification.Notifications;
-import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.diagnostic.Logger;
-import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.module.Module;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
 import com.intellij.openapi.projectRoots.Sdk;
 import com.intellij.openapi.roots.ModuleRootManager;
 import com.intellij.openapi.roots.OrderRootType;
 import com.intellij.openapi.roots.ProjectRootManager;
-import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.psi.PsiDocumentManager;
 import com.intellij.psi.PsiFile;
-import com.intellij.util.ThrowableRunnable;
+import com.intellij.util.execution.ParametersListUtil;
 import io.github.intellij.dlanguage.DlangSdkType;
 import io.github.intellij.dlanguage.highlighting.annotation.DAnnotationHolder;
 import io.github.intellij.dlanguage.highlighting.annotation.DProblem;
 import io.github.intellij.dlanguage.highlighting.annotation.Problems;
 import io.github.intellij.dlanguage.settings.ToolKey;
+import io.github.intellij.dlanguage.tools.ToolProcesses;
+import io.github.intellij.dlanguage.tools.ToolProcesses.Priority;
+import io.github.intellij.dlanguage.tools.ToolProcesses.Tool;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -43,112 +44,155 @@ public class DScanner {
 
     private static final Logger LOG = Logger.getInstance(DScanner.class);
 
-    private static int getDocumentLineCount(final Document document) {
-        try {
-            final int lineCount = document.getLineCount();
-            return lineCount == 0 ? 1 : lineCount;
-        } catch (final Exception e) {
-            return 1;
-        }
-    }
-
-    Problems checkFileSyntax(@NotNull final PsiFile file) {
+    // hello.d(1:7)[error]: Expected identifier instead of ;
+    private static final Pattern PROBLEM = Pattern.compile("\\w+\\.d\\((\\d+):(\\d+)\\)\\[(\\w+)\\]:(.+)");
+
+    /**
+     * Lints {@code text}, the content of {@code file} as it is being edited: it goes to dscanner through a temporary
+     * copy of the file so that nothing has to be saved first. Content dscanner has already seen with the same binary,
+     * configuration and arguments is answered from {@link DScannerCache}.
+     *
+     * @param indicator the indicator of the annotation pass, cancelling it stops dscanner
+     */
+    Problems checkFileSyntax(@NotNull final PsiFile file, @NotNull final CharSequence text,
+                             @Nullable final ProgressIndicator indicator) {
         final String dscannerPath = ToolKey.DSCANNER_KEY.getPath();
         if (StringUtil.isEmpty(dscannerPath)) return new Problems();
 
-        final Problems problems = new Problems();
-        problems.addAllNotNull(processFile(file, dscannerPath));
-        return problems;
-    }
-
-    private static int getOffsetStart(final PsiFile file, final int startLine, final int startColumn) {
-        final int[] retVal = {-1};
-
-        final ThrowableRunnable<RuntimeException> getOffset = () -> {
-            final Document document = PsiDocumentManager.getInstance(file.getProject())
-                .getDocument(file);
-            final int line = getValidLineNumber(startLine, document);
-            final int offset = StringUtil
-                .lineColToOffset(file.getText(), line, startColumn - 1);
-            retVal[0] = Math.max(offset, 1);
-        };
+        final String workingDirectory = file.getProject().getBasePath();
+        final List<String> arguments = getArguments(file.getProject(), file.getVirtualFile());
+        final byte[] content = content(file.getVirtualFile(), text);
+
+        final DScannerCache cache = DScannerCache.getInstance();
+        final String key = cache.key(dscannerPath, workingDirectory, arguments, content);
+        List<String> output = key == null ? null : cache.get(key);
+        if (output == null) {
+            output = processFile(file, content, workingDirectory, arguments, dscannerPath, indicator);
+            if (output != null && key != null) {
+                cache.put(key, output);
+            }
+        }
 
-        ReadAction.run(getOffset);
-        return retVal[0];
+        return output == null ? new Problems() : parseReport(output, text);
     }
 
-    private static int getLineEndOffset(final Document document, final int line) {
-        try {
-            return document.getLineEndOffset(line);
-        } catch (final Exception e) {
-            return 1;
+    /**
+     * The problems of a dscanner report on {@code text}.
+     */
+    @NotNull
+    static Problems parseReport(@NotNull final List<String> output, @NotNull final CharSequence text) {
+        final Problems problems = new Problems();
+        if (output.isEmpty()) {
+            return problems;
         }
+        final LineStarts lines = new LineStarts(text);
+        for (final String line : output) {
+            parseProblem(line, lines).ifPresent(problems::add);
+        }
+        return problems;
     }
 
-    private List<Problem> processFile(final PsiFile file, final String dscannerPath) {
-        final String filePath = file.getVirtualFile().getCanonicalPath();
-        final String workingDirectory = file.getProject().getBasePath();
-
-        final GeneralCommandLine cmd = new GeneralCommandLine()
-            .withWorkDirectory(workingDirectory)
-            .withExePath(dscannerPath);
+    /**
+     * What dscanner lints and what the cache is keyed by: {@code text}, with the line separators of a document and
+     * no BOM, in the charset of {@code file}. The editor and the project analysis must agree on it so that they share
+     * the cached reports.
+     */
+    @NotNull
+    static byte[] content(@NotNull final VirtualFile file, @NotNull final CharSequence text) {
+        return text.toString().getBytes(file.getCharset());
+    }
 
-        final ParametersList args = cmd.getParametersList();
-        args.addParametersString("-S");
-        args.addParametersString(filePath);
+    /**
+     * The arguments given to dscanner besides the files to lint.
+     */
+    static List<String> getArguments(final Project project, final VirtualFile file) {
+        final List<String> arguments = new ArrayList<>();
 
         final String flags = ToolKey.DSCANNER_KEY.getFlags();
 
         if (DUtil.isNotNullOrEmpty(flags)) {
-            args.addAll(flags);
+            // the flags are one string in the settings, dscanner wants them as separate arguments
+            arguments.addAll(ParametersListUtil.parse(flags));
         }
 
         // try to auto add the compiler sources
-        final List<String> compilerSources = getCompilerSourcePaths(file);
+        final List<String> compilerSources = getCompilerSourcePaths(project, file);
         for (final String s : compilerSources) {
-            args.addParametersString("-I");
-            args.addParametersString(s);
+            arguments.add("-I");
+            arguments.add(s);
         }
+        return arguments;
+    }
 
-        final List<Problem> problems = new ArrayList<>();
-
+    /**
+     * The lines dscanner writes to stdout, or null when it couldn't lint the file.
+     */
+    @Nullable
+    private List<String> processFile(final PsiFile file, final byte[] content, final String workingDirectory,
+                                     final List<String> arguments, final String dscannerPath,
+                                     @Nullable final ProgressIndicator indicator) {
+        File directory = null;
         try {
+            directory = FileUtil.createTempDirectory("dscanner", null, true);
+            // dscanner reports problems against the file name, keep it
+            final File source = new File(directory, file.getName());
+            FileUtil.writeToFile(source, content);
+
+            final GeneralCommandLine cmd = new GeneralCommandLine()
+                .withWorkDirectory(workingDirectory)
+                .withExePath(dscannerPath);
+
+            final ParametersList args = cmd.getParametersList();
+            args.addParametersString("-S");
+            args.addParametersString(source.getPath());
+            args.addAll(arguments);
+
             LOG.debug("Starting DScanner process");
 
-            final OSProcessHandler process = new OSProcessHandler(cmd.createProcess(), cmd.getCommandLineString());
-            process.addProcessListener(new ProcessAdapter() {
-                @Override
-                public void onTextAvailable(@NotNull final ProcessEvent event, @NotNull final Key outputType) {
-                    // we don't care about "system" or "stderr"
-                    if(ProcessOutputTypes.STDOUT.equals(outputType)) {
-                        parseProblem(event.getText(), file)
-                            .ifPresent(problems::add);
-                    } else if(ProcessOutputTypes.STDERR.equals(outputType)) {
-                        LOG.warn(event.getText());
-                        final Notification notification = new Notification("DScanner Error", "DScanner Error", event.getText(), NotificationType.ERROR);
-                        Notifications.Bus.notify(notification, file.getProject());
-                    }
-                }
-            });
+            final ProcessOutput processOutput = ToolProcesses.getInstance(file.getProject())
+                .run(Tool.DSCANNER, Priority.INTERACTIVE, cmd, indicator);
+            if (processOutput.isTimeout()) {
+                return null;
+            }
 
-            process.startNotify();
-            process.waitFor();
+            final String errors = processOutput.getStderr();
+            if (!errors.trim().isEmpty()) {
+                LOG.warn(errors);
+                final Notification notification = new Notification("DScanner Error", "DScanner Error", errors, NotificationType.ERROR);
+                Notifications.Bus.notify(notification, file.getProject());
+            }
 
-            final Integer exitCode = process.getExitCode(); // 0 or 1 depending on whether DScanner found problems
+            final int exitCode = processOutput.getExitCode(); // 0 or 1 depending on whether DScanner found problems
 
-            if(Integer.valueOf(1).equals(exitCode)) {
+            if (exitCode == 1) {
                 LOG.debug("DScanner found lint problems");
+            } else if (exitCode != 0) {
+                return null;
             }
+
+            final List<String> output = new ArrayList<>();
+            for (final String line : processOutput.getStdoutLines()) {
+                if (!line.trim().isEmpty()) {
+                    output.add(line.trim());
+                }
+            }
+            return output;
+        } catch (final IOException e) {
+            LOG.warn("Could not write the content of " + file.getName() + " for DScanner", e);
         } catch (final ExecutionException e) {
             LOG.error("There was a problem running DScanner", e);
+        } finally {
+            if (directory != null) {
+                FileUtil.delete(directory);
+            }
         }
-        return problems;
+        return null;
     }
 
-    private List<String> getCompilerSourcePaths(final PsiFile file) {
-        @Nullable final Module module = ProjectRootManager.getInstance(file.getProject())
+    private static List<String> getCompilerSourcePaths(final Project project, final VirtualFile file) {
+        @Nullable final Module module = ProjectRootManager.getInstance(project)
                                                             .getFileIndex()
-                                                            .getModuleForFile(file.getVirtualFile());
+                                                            .getModuleForFile(file);
 
         final ArrayList<String> compilerSourcePaths = new ArrayList<>();
 
@@ -167,55 +211,19 @@ public class DScanner {
         return compilerSourcePaths;
     }
 
-    private static int getValidLineNumber(int line, final Document document) {
-        final int lineCount = getDocumentLineCount(document);
-        line = line - 1;
-        if (line <= 0) {
-            line = 1;
-        } else if (line >= lineCount) {
-            line = lineCount - 1;
-        }
-        return line;
-    }
-
-    private static int getOffsetEndFallback(final PsiFile file, int line) {
-        final Document document = PsiDocumentManager.getInstance(file.getProject()).getDocument(file);
-        line = getValidLineNumber(line, document);
-        return getLineEndOffset(document, line);
-    }
-
-    private static int getOffsetEnd(final PsiFile file, final int offsetStart, final int line) {
-        try {
-            final String fileText = file.getText();
-            int width = 0;
-            while (offsetStart + width < fileText.length()) {
-                final char c = fileText.charAt(offsetStart + width);
-                if (StringUtil.isLineBreak(c)) {
-                    break;
-                }
-                ++width;
-            }
-            return offsetStart + width;
-        } catch (final Exception e) {
-            return getOffsetEndFallback(file, line);
-        }
-    }
-
-    private static TextRange calculateTextRange(final PsiFile file, final int line, final int column) {
-        final int startOffset = getOffsetStart(file, line, column);
-        final int endOffset = getOffsetEnd(file, startOffset, line);
+    private static TextRange calculateTextRange(final LineStarts lines, final int line, final int column) {
+        final int startOffset = lines.getOffset(line - 1, column - 1);
+        final int endOffset = lines.getLineEndOffset(line - 1);
         return new TextRange(startOffset, endOffset);
     }
 
-    // hello.d(1:7)[error]: Expected identifier instead of ;
-    private Optional<Problem> parseProblem(final String lint, final PsiFile file) {
-        final Pattern p = Pattern.compile("\\w+\\.d\\((\\d+):(\\d+)\\)\\[(\\w+)\\]:(.+)");
-        final Matcher m = p.matcher(lint);
+    private static Optional<Problem> parseProblem(final String lint, final LineStarts lines) {
+        final Matcher m = PROBLEM.matcher(lint);
 
         if (m.find()) {
-            final int line = Integer.valueOf(m.group(1));
-            final int column = Integer.valueOf(m.group(2));
-            final TextRange range = calculateTextRange(file, line, column);
+            final int line = Integer.parseInt(m.group(1));
+            final int column = Integer.parseInt(m.group(2));
+            final TextRange range = calculateTextRange(lines, line, column);
             final String severity = m.group(3);
             final String message = StringUtil.trim(m.group(4));
 
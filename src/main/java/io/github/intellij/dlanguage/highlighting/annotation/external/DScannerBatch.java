@@ -0,0 +1,207 @@
+package io.github.intellij.dlanguage.highlighting.annotation.external;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.configurations.GeneralCommandLine;
+import com.intellij.execution.process.ProcessAdapter;
+import com.intellij.execution.process.ProcessEvent;
+import com.intellij.execution.process.ProcessOutput;
+import com.intellij.execution.process.ProcessOutputTypes;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.text.StringUtil;
+import io.github.intellij.dlanguage.tools.ToolProcesses;
+import io.github.intellij.dlanguage.tools.ToolProcesses.Priority;
+import io.github.intellij.dlanguage.tools.ToolProcesses.Tool;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Lints many files with few dscanner processes: dscanner takes any number of paths, so the files are handed over
+ * in chunks of at most {@value #MAX_FILES_PER_PROCESS} (and a command line short enough for every platform). The
+ * report is parsed line by line while dscanner writes it. The processes run in the background through
+ * {@link ToolProcesses}.
+ */
+public final class DScannerBatch {
+
+    private static final Logger LOG = Logger.getInstance(DScannerBatch.class);
+
+    static final int MAX_FILES_PER_PROCESS = 256;
+    /** Windows limits command lines to 32767 characters */
+    static final int MAX_COMMAND_LENGTH = 30_000;
+    /** how much longer than for a single file a process may take for each other file of its chunk */
+    static final int TIMEOUT_MILLIS_PER_FILE = 2_000;
+
+    // /home/me/project/source/app.d(1:7)[warn]: Public declaration 'main' is undocumented.
+    private static final Pattern REPORT_LINE = Pattern.compile("^(.+\\.di?)\\((\\d+):(\\d+)\\)\\[(\\w+)\\]:(.+)$");
+
+    public interface Listener {
+        /**
+         * A problem dscanner reported for one of the linted {@code path}s, as soon as it is read.
+         */
+        void problem(@NotNull String path, int line, int column, @NotNull String severity, @NotNull String message,
+                     @NotNull String report);
+
+        /**
+         * The report lines of every file of a chunk, once its dscanner process completed normally. Files without
+         * problems have no line.
+         */
+        void linted(@NotNull Map<String, List<String>> reports);
+
+        /**
+         * The files of a chunk whose dscanner process timed out, failed or couldn't be started: {@code reason} says
+         * which. Problems already reported for them may be incomplete.
+         */
+        void failed(@NotNull List<String> paths, @NotNull String reason);
+    }
+
+    @NotNull
+    private final Project project;
+    @NotNull
+    private final String dscannerPath;
+    @Nullable
+    private final String workingDirectory;
+    @NotNull
+    private final List<String> arguments;
+
+    public DScannerBatch(@NotNull final Project project, @NotNull final String dscannerPath,
+                         @Nullable final String workingDirectory, @NotNull final List<String> arguments) {
+        this.project = project;
+        this.dscannerPath = dscannerPath;
+        this.workingDirectory = workingDirectory;
+        this.arguments = arguments;
+    }
+
+    /**
+     * Lints {@code paths}, reporting the progress in files to {@code indicator}. Cancelling it stops the running
+     * dscanner.
+     */
+    public void run(@NotNull final List<String> paths, @NotNull final ProgressIndicator indicator,
+                    @NotNull final Listener listener) {
+        final List<List<String>> chunks = chunks(paths, commandLength(dscannerPath, arguments));
+        int linted = 0;
+        for (final List<String> chunk : chunks) {
+            indicator.checkCanceled();
+            if (!paths.isEmpty()) {
+                indicator.setFraction((double) linted / paths.size());
+            }
+            indicator.setText2(chunk.size() == 1 ? chunk.get(0) : chunk.size() + " files");
+            lint(chunk, indicator, listener);
+            linted += chunk.size();
+        }
+        indicator.checkCanceled();
+    }
+
+    private void lint(@NotNull final List<String> chunk, @NotNull final ProgressIndicator indicator,
+                      @NotNull final Listener listener) {
+        final GeneralCommandLine cmd = new GeneralCommandLine()
+            .withWorkDirectory(workingDirectory)
+            .withExePath(dscannerPath)
+            .withRedirectErrorStream(true);
+        cmd.addParameter("-S");
+        cmd.addParameters(chunk);
+        cmd.addParameters(arguments);
+
+        final Map<String, List<String>> reports = new LinkedHashMap<>();
+        for (final String path : chunk) {
+            reports.put(path, new ArrayList<>());
+        }
+
+        final ProcessOutput output;
+        try {
+            output = ToolProcesses.getInstance(project).run(Tool.DSCANNER, Priority.BACKGROUND, cmd, null,
+                new ProcessAdapter() {
+                    @Override
+                    public void onTextAvailable(@NotNull final ProcessEvent event, @NotNull final Key outputType) {
+                        if (!ProcessOutputTypes.STDOUT.equals(outputType)) return;
+                        final String line = StringUtil.trimTrailing(event.getText());
+                        final Matcher m = matchReport(line);
+                        if (m == null) {
+                            return;
+                        }
+                        final List<String> report = reports.get(m.group(1));
+                        if (report == null) {
+                            return; // not one of ours
+                        }
+                        report.add(line);
+                        listener.problem(m.group(1), Integer.parseInt(m.group(2)), Integer.parseInt(m.group(3)),
+                            m.group(4), m.group(5).trim(), line);
+                    }
+                }, timeoutMillis(chunk.size()), indicator);
+        } catch (final ExecutionException e) {
+            LOG.warn("There was a problem running DScanner", e);
+            listener.failed(chunk, "DScanner could not be run: " + e.getMessage());
+            return;
+        }
+        if (output.isTimeout()) {
+            LOG.warn("DScanner timed out linting " + chunk.size() + " files");
+            listener.failed(chunk, "DScanner timed out after " + timeoutMillis(chunk.size()) / 1000 + "s");
+            return;
+        }
+        final int exitCode = output.getExitCode(); // 0 or 1 depending on whether DScanner found problems
+        if (exitCode == 0 || exitCode == 1) {
+            listener.linted(reports);
+        } else {
+            LOG.warn("DScanner exited with " + exitCode + " linting " + chunk.size() + " files");
+            listener.failed(chunk, "DScanner exited with " + exitCode);
+        }
+    }
+
+    /**
+     * The time a dscanner process linting {@code files} files may take: what a single file may take, and some more
+     * for each other file.
+     */
+    static int timeoutMillis(final int files) {
+        return Tool.DSCANNER.getTimeoutMillis() + (files - 1) * TIMEOUT_MILLIS_PER_FILE;
+    }
+
+    /**
+     * The path, line, column, severity and message of a report line, or null when {@code line} isn't one.
+     */
+    @Nullable
+    static Matcher matchReport(@NotNull final String line) {
+        final Matcher m = REPORT_LINE.matcher(line);
+        return m.matches() ? m : null;
+    }
+
+    private static int commandLength(@NotNull final String dscannerPath, @NotNull final List<String> arguments) {
+        int length = dscannerPath.length() + " -S".length();
+        for (final String argument : arguments) {
+            length += argument.length() + 3; // a space and maybe quotes
+        }
+        return length;
+    }
+
+    /**
+     * Splits {@code paths} in chunks of at most {@value #MAX_FILES_PER_PROCESS} paths which fit, with
+     * {@code fixedLength} characters of command, in {@value #MAX_COMMAND_LENGTH} characters.
+     */
+    @NotNull
+    static List<List<String>> chunks(@NotNull final List<String> paths, final int fixedLength) {
+        final List<List<String>> chunks = new ArrayList<>();
+        List<String> chunk = new ArrayList<>();
+        int length = fixedLength;
+        for (final String path : paths) {
+            final int pathLength = path.length() + 3;
+            if (!chunk.isEmpty() && (chunk.size() == MAX_FILES_PER_PROCESS || length + pathLength > MAX_COMMAND_LENGTH)) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+                length = fixedLength;
+            }
+            chunk.add(path);
+            length += pathLength;
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,250 @@
+package io.github.intellij.dlanguage.highlighting.annotation.external;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.configurations.GeneralCommandLine;
+import com.intellij.execution.process.CapturingProcessHandler;
+import com.intellij.execution.process.ProcessOutput;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.text.StringUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The output of dscanner, kept on disk (in the IDE's system directory) so that files which didn't change since they
+ * were last linted, in this session or a previous one, are annotated without running dscanner again.
+ *
+ * An output is keyed by a digest of the linted content, the version of the dscanner binary, the content of the
+ * dscanner.ini in use and the arguments. At most {@value #MAX_ENTRIES} outputs are kept, the least recently used
+ * ones are dropped first.
+ */
+final class DScannerCache {
+
+    private static final Logger LOG = Logger.getInstance(DScannerCache.class);
+
+    static final int MAX_ENTRIES = 4096;
+    private static final long VERSION_TIMEOUT_SECONDS = 10;
+    private static final String CONFIG_FILE = "dscanner.ini";
+
+    private static final class Holder {
+        private static final DScannerCache INSTANCE =
+            new DScannerCache(Paths.get(PathManager.getSystemPath(), "dlanguage", "dscanner"), MAX_ENTRIES);
+    }
+
+    private static final class Version {
+        private final long lastModified;
+        private final long length;
+        @NotNull
+        private final String version;
+
+        private Version(final long lastModified, final long length, @NotNull final String version) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.version = version;
+        }
+    }
+
+    @NotNull
+    private final Path directory;
+    private final int maxEntries;
+    private final Map<String, Version> versions = new ConcurrentHashMap<>();
+    // guarded by this, -1 until the directory is listed
+    private int entries = -1;
+
+    DScannerCache(@NotNull final Path directory, final int maxEntries) {
+        this.directory = directory;
+        this.maxEntries = maxEntries;
+    }
+
+    @NotNull
+    static DScannerCache getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * The key of the output of linting {@code content} or null when the version of dscanner can't be told, the output
+     * then isn't cached.
+     */
+    @Nullable
+    String key(@NotNull final String dscannerPath, @Nullable final String workingDirectory,
+               @NotNull final List<String> arguments, @NotNull final byte[] content) {
+        final String version = version(dscannerPath);
+        if (version == null) {
+            return null;
+        }
+        final MessageDigest digest = sha256();
+        update(digest, version);
+        update(digest, configHash(workingDirectory, arguments));
+        for (final String argument : arguments) {
+            update(digest, argument);
+        }
+        digest.update(content);
+        return StringUtil.toHexString(digest.digest());
+    }
+
+    @Nullable
+    List<String> get(@NotNull final String key) {
+        final Path entry = directory.resolve(key);
+        try {
+            final List<String> output = Files.readAllLines(entry, StandardCharsets.UTF_8);
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            return output;
+        } catch (final NoSuchFileException e) {
+            return null;
+        } catch (final IOException e) {
+            LOG.debug("Could not read the cached DScanner output " + entry, e);
+            return null;
+        }
+    }
+
+    void put(@NotNull final String key, @NotNull final List<String> output) {
+        try {
+            Files.createDirectories(directory);
+            final Path entry = directory.resolve(key);
+            final boolean added = !Files.exists(entry);
+            // written aside then moved, other threads and IDE instances never read half an entry
+            final Path written = Files.createTempFile(directory, key, ".tmp");
+            Files.write(written, output, StandardCharsets.UTF_8);
+            Files.move(written, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (added) {
+                added();
+            }
+        } catch (final IOException e) {
+            LOG.debug("Could not cache the DScanner output " + key, e);
+        }
+    }
+
+    private synchronized void added() throws IOException {
+        if (entries < 0) {
+            entries = entries().size();
+        } else {
+            entries++;
+        }
+        if (entries <= maxEntries) {
+            return;
+        }
+        // drop a quarter at once rather than listing the directory on every new entry
+        final List<Path> lru = entries().stream()
+            .sorted(Comparator.comparingLong(DScannerCache::lastModified))
+            .collect(Collectors.toList());
+        final int dropped = lru.size() - maxEntries * 3 / 4;
+        for (int i = 0; i < dropped; i++) {
+            Files.deleteIfExists(lru.get(i));
+        }
+        entries = lru.size() - Math.max(dropped, 0);
+    }
+
+    @NotNull
+    private List<Path> entries() throws IOException {
+        try (final Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> !file.getFileName().toString().endsWith(".tmp")).collect(Collectors.toList());
+        }
+    }
+
+    private static long lastModified(@NotNull final Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (final IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * The output of {@code dscanner --version}, run again only when the binary changes.
+     */
+    @Nullable
+    String version(@NotNull final String dscannerPath) {
+        final File binary = new File(dscannerPath);
+        final long lastModified = binary.lastModified();
+        final long length = binary.length();
+        final Version known = versions.get(dscannerPath);
+        if (known != null && known.lastModified == lastModified && known.length == length) {
+            return known.version;
+        }
+        final GeneralCommandLine cmd = new GeneralCommandLine(dscannerPath, "--version").withRedirectErrorStream(true);
+        try {
+            // a dscanner which hangs is destroyed rather than waited for
+            final ProcessOutput output = new CapturingProcessHandler(cmd)
+                .runProcess((int) TimeUnit.SECONDS.toMillis(VERSION_TIMEOUT_SECONDS), true);
+            if (output.isTimeout() || output.getExitCode() != 0) {
+                return null;
+            }
+            final String version = output.getStdout().trim();
+            versions.put(dscannerPath, new Version(lastModified, length, version));
+            return version;
+        } catch (final ExecutionException e) {
+            LOG.debug("Could not tell the version of " + dscannerPath, e);
+            return null;
+        }
+    }
+
+    /**
+     * A digest of the configuration dscanner reads: the one given with --config, or else dscanner.ini in the working
+     * directory, or else the one of the user.
+     */
+    @NotNull
+    static String configHash(@Nullable final String workingDirectory, @NotNull final List<String> arguments) {
+        final int config = arguments.indexOf("--config");
+        final Path configFile;
+        if (config >= 0 && config + 1 < arguments.size()) {
+            final Path given = Paths.get(arguments.get(config + 1));
+            configFile = workingDirectory == null ? given : Paths.get(workingDirectory).resolve(given);
+        } else {
+            configFile = Stream.of(
+                workingDirectory == null ? null : Paths.get(workingDirectory, CONFIG_FILE),
+                userConfigFile()
+            ).filter(file -> file != null && Files.isRegularFile(file)).findFirst().orElse(null);
+        }
+        if (configFile == null) {
+            return "";
+        }
+        try {
+            return StringUtil.toHexString(sha256().digest(Files.readAllBytes(configFile)));
+        } catch (final IOException e) {
+            return "";
+        }
+    }
+
+    @Nullable
+    private static Path userConfigFile() {
+        final String configHome = System.getenv("XDG_CONFIG_HOME");
+        if (StringUtil.isNotEmpty(configHome)) {
+            return Paths.get(configHome, "dscanner", CONFIG_FILE);
+        }
+        final String home = System.getProperty("user.home");
+        return home == null ? null : Paths.get(home, ".config", "dscanner", CONFIG_FILE);
+    }
+
+    private static void update(@NotNull final MessageDigest digest, @NotNull final String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    @NotNull
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM has SHA-256
+        }
+    }
+}
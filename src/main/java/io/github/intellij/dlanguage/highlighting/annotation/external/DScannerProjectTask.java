@@ -0,0 +1,175 @@
+package io.github.intellij.dlanguage.highlighting.annotation.external;
+
+import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
+import com.intellij.ide.errorTreeView.NewErrorTreeViewPanel;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.fileEditor.impl.LoadTextUtil;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.wm.ToolWindow;
+import com.intellij.openapi.wm.ToolWindowId;
+import com.intellij.openapi.wm.ToolWindowManager;
+import com.intellij.psi.search.FileTypeIndex;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.ui.content.Content;
+import com.intellij.ui.content.ContentFactory;
+import com.intellij.ui.content.MessageView;
+import com.intellij.util.ui.MessageCategory;
+import io.github.intellij.dlanguage.DlangFileType;
+import io.github.intellij.dlanguage.settings.ToolKey;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+
+/**
+ * Lints every D file of the project with dscanner, a few processes for the whole project (see {@link DScannerBatch}).
+ *
+ * Problems are listed in the Messages tool window as they are reported, and the reports go to {@link DScannerCache}
+ * so that opening any of the files afterwards doesn't run dscanner again. Files the cache already knows aren't linted.
+ */
+public class DScannerProjectTask extends Task.Backgroundable {
+
+    private static final String TITLE = "DScanner";
+
+    @NotNull
+    private final Project project;
+    private final NewErrorTreeViewPanel view;
+
+    /**
+     * Files to lint with the same arguments, and the cache key of their content.
+     */
+    private static final class Group {
+        private final Map<String, VirtualFile> files = new LinkedHashMap<>();
+        private final Map<String, String> keys = new HashMap<>();
+    }
+
+    public DScannerProjectTask(@NotNull final Project project) {
+        super(project, "Analyzing with DScanner", true);
+        this.project = project;
+        view = new NewErrorTreeViewPanel(project, null);
+    }
+
+    @Override
+    public void run(@NotNull final ProgressIndicator indicator) {
+        final String dscannerPath = ToolKey.DSCANNER_KEY.getPath();
+        if (dscannerPath == null || dscannerPath.isEmpty()) return;
+        final String workingDirectory = project.getBasePath();
+        final DScannerCache cache = DScannerCache.getInstance();
+
+        indicator.setIndeterminate(false);
+        indicator.setText("Collecting D files");
+        // the action is available while indexing, the files are listed once the index is ready
+        final Collection<VirtualFile> files = DumbService.getInstance(project).runReadActionInSmartMode(() ->
+            FileTypeIndex.getFiles(DlangFileType.INSTANCE, GlobalSearchScope.projectScope(project)));
+
+        final Map<List<String>, Group> groups = new LinkedHashMap<>();
+        for (final VirtualFile file : files) {
+            indicator.checkCanceled();
+            final List<String> arguments = ReadAction.compute(() -> DScanner.getArguments(project, file));
+            // the text as the editor has it, so that files with CRLF line separators or a BOM share their key
+            final String key = cache.key(dscannerPath, workingDirectory, arguments,
+                DScanner.content(file, LoadTextUtil.loadText(file)));
+            final List<String> cached = key == null ? null : cache.get(key);
+            if (cached != null) {
+                for (final String report : cached) {
+                    final Matcher m = DScannerBatch.matchReport(report);
+                    if (m != null) {
+                        addMessage(file, Integer.parseInt(m.group(2)), Integer.parseInt(m.group(3)), m.group(4), m.group(5).trim());
+                    }
+                }
+                continue;
+            }
+            final Group group = groups.computeIfAbsent(arguments, a -> new Group());
+            group.files.put(file.getPath(), file);
+            if (key != null) {
+                group.keys.put(file.getPath(), key);
+            }
+        }
+
+        indicator.setText("Analyzing with DScanner");
+        for (final Map.Entry<List<String>, Group> entry : groups.entrySet()) {
+            final Group group = entry.getValue();
+            new DScannerBatch(project, dscannerPath, workingDirectory, entry.getKey())
+                .run(new ArrayList<>(group.files.keySet()), indicator, new DScannerBatch.Listener() {
+                    @Override
+                    public void problem(@NotNull final String path, final int line, final int column,
+                                        @NotNull final String severity, @NotNull final String message,
+                                        @NotNull final String report) {
+                        addMessage(group.files.get(path), line, column, severity, message);
+                    }
+
+                    @Override
+                    public void linted(@NotNull final Map<String, List<String>> reports) {
+                        for (final Map.Entry<String, List<String>> linted : reports.entrySet()) {
+                            final String key = group.keys.get(linted.getKey());
+                            if (key != null) {
+                                cache.put(key, linted.getValue());
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void failed(@NotNull final List<String> paths, @NotNull final String reason) {
+                        for (final String path : paths) {
+                            addMessage(MessageCategory.ERROR, group.files.get(path), 1, 1, reason + ", not analyzed");
+                        }
+                    }
+                });
+        }
+    }
+
+    private void addMessage(@Nullable final VirtualFile file, final int line, final int column,
+                            @NotNull final String severity, @NotNull final String message) {
+        final int category;
+        if ("error".equals(severity)) {
+            category = MessageCategory.ERROR;
+        } else if (message.contains("undocumented")) {
+            category = MessageCategory.INFORMATION;
+        } else {
+            category = MessageCategory.WARNING;
+        }
+        addMessage(category, file, line, column, message);
+    }
+
+    private void addMessage(final int category, @Nullable final VirtualFile file, final int line, final int column,
+                            @NotNull final String message) {
+        ApplicationManager.getApplication().invokeLater(() ->
+            view.addMessage(category, new String[]{message}, file, line - 1, column - 1, null));
+    }
+
+    /**
+     * Shows the (empty) results and starts linting.
+     */
+    public void start() {
+        final MessageView messageView = MessageView.SERVICE.getInstance(project);
+        messageView.runWhenInitialized(() -> {
+            final Content content = ContentFactory.SERVICE.getInstance().createContent(view, TITLE, true);
+            Disposer.register(content, view);
+            messageView.getContentManager().addContent(content);
+            messageView.getContentManager().setSelectedContent(content);
+            final ToolWindow toolWindow = ToolWindowManager.getInstance(project).getToolWindow(ToolWindowId.MESSAGES_WINDOW);
+            if (toolWindow != null) {
+                toolWindow.activate(null);
+            }
+        });
+        queue();
+    }
+
+    @Override
+    public void onFinished() {
+        // open files pick the cached reports up
+        DaemonCodeAnalyzer.getInstance(project).restart();
+    }
+}
@@ -0,0 +1,79 @@
+package io.github.intellij.dlanguage.highlighting.annotation.external;
+
+import com.intellij.openapi.util.text.StringUtil;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The line start table of a snapshot of a document, like {@link com.intellij.openapi.editor.Document} keeps one:
+ * built in one pass over the text, so that placing the problems of a report doesn't scan the text for each of them.
+ * The document itself can't be used, it may change while the tools run.
+ */
+final class LineStarts {
+
+    @NotNull
+    private final CharSequence text;
+    @NotNull
+    private final int[] starts;
+    private final int lineCount;
+
+    LineStarts(@NotNull final CharSequence text) {
+        this.text = text;
+        int[] starts = new int[16];
+        int lineCount = 1;
+        final int length = text.length();
+        for (int i = 0; i < length; i++) {
+            final char c = text.charAt(i);
+            if (c == '\n' || c == '\r') {
+                if (c == '\r' && i + 1 < length && text.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                if (lineCount == starts.length) {
+                    final int[] grown = new int[starts.length * 2];
+                    System.arraycopy(starts, 0, grown, 0, starts.length);
+                    starts = grown;
+                }
+                starts[lineCount++] = i + 1;
+            }
+        }
+        this.starts = starts;
+        this.lineCount = lineCount;
+    }
+
+    int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * The 0-based {@code line} brought in the text.
+     */
+    int getValidLine(final int line) {
+        return Math.max(0, Math.min(line, lineCount - 1));
+    }
+
+    int getLineStartOffset(final int line) {
+        return starts[getValidLine(line)];
+    }
+
+    /**
+     * The offset of the end of {@code line}, before its line break.
+     */
+    int getLineEndOffset(final int line) {
+        final int valid = getValidLine(line);
+        if (valid == lineCount - 1) {
+            return text.length();
+        }
+        int end = starts[valid + 1];
+        while (end > starts[valid] && StringUtil.isLineBreak(text.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * The offset of the 0-based {@code column} of the 0-based {@code line}, kept within the line.
+     */
+    int getOffset(final int line, final int column) {
+        final int start = getLineStartOffset(line);
+        return Math.min(start + Math.max(column, 0), getLineEndOffset(line));
+    }
+}
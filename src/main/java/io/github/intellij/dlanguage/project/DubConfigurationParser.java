@@ -2,7 +2,7 @@ package io.github.intellij.dlanguage.project;
 
 import com.intellij.execution.ExecutionException;
 import com.intellij.execution.configurations.GeneralCommandLine;
-import com.intellij.execution.process.OSProcessHandler;
+import com.intellij.execution.process.ProcessOutput;
 import com.intellij.notification.Notification;
 import com.intellij.notification.NotificationType;
 import com.intellij.notification.Notifications;
@@ -16,6 +16,9 @@ import com.intellij.openapi.vfs.VirtualFile;
 import io.github.intellij.dlanguage.tools.dub.DescribeParser;
 import io.github.intellij.dlanguage.tools.dub.DescribeParserException;
 import io.github.intellij.dlanguage.tools.dub.DescribeParserImpl;
+import io.github.intellij.dlanguage.tools.ToolProcesses;
+import io.github.intellij.dlanguage.tools.ToolProcesses.Priority;
+import io.github.intellij.dlanguage.tools.ToolProcesses.Tool;
 import io.github.intellij.dlanguage.tools.dub.DubProcessListener;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -72,6 +75,11 @@ public class DubConfigurationParser {
      */
     public Optional<DubProject> getDubProject() {
         if (canUseDub()) {
+            if (!ApplicationManager.getApplication().isDispatchThread()) {
+                return parseDubConfiguration(this.silentMode);
+            }
+
+            // don't freeze the UI any longer than this
             final Future<Optional<DubProject>> optionalFuture = ApplicationManager.getApplication()
                 .executeOnPooledThread(() -> parseDubConfiguration(this.silentMode));
 
@@ -163,12 +171,10 @@ public class DubConfigurationParser {
             final String dubCommand = cmd.getCommandLineString();
             final DubProcessListener listener = new DubProcessListener();
 
-            final OSProcessHandler process = new OSProcessHandler(cmd.createProcess(), dubCommand);
-            process.addProcessListener(listener);
-            process.startNotify();
-            process.waitFor();
+            final ProcessOutput output = ToolProcesses.getInstance(project)
+                .run(Tool.DUB, Priority.BACKGROUND, cmd, null, listener, null);
 
-            final Integer exitCode = process.getExitCode();
+            final Integer exitCode = output.isTimeout() ? null : output.getExitCode();
 
             final List<String> errors = listener.getErrors();
 
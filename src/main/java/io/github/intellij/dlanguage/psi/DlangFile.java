@@ -2,31 +2,37 @@ package io.github.intellij.dlanguage.psi;
 
 import com.intellij.extapi.psi.PsiFileBase;
 import com.intellij.openapi.fileTypes.FileType;
+import com.intellij.openapi.util.Key;
 import com.intellij.psi.FileViewProvider;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.ResolveState;
 import com.intellij.psi.scope.PsiScopeProcessor;
+import com.intellij.psi.stubs.StubElement;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
 import com.intellij.util.IncorrectOperationException;
 import io.github.intellij.dlanguage.DLanguage;
 import io.github.intellij.dlanguage.DlangFileType;
+import io.github.intellij.dlanguage.psi.named.DlangIdentifier;
 import io.github.intellij.dlanguage.psi.named.DLanguageModuleDeclaration;
 import io.github.intellij.dlanguage.resolve.ScopeProcessorImplUtil;
+import io.github.intellij.dlanguage.resolve.ScopeSymbolTable;
 import io.github.intellij.dlanguage.stubs.DlangFileStub;
-import org.apache.commons.collections.CollectionUtils;
+import io.github.intellij.dlanguage.stubs.DlangModuleDeclarationStub;
 import org.apache.commons.lang3.StringUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
-import java.util.Collection;
 import java.util.Optional;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import static org.apache.commons.lang3.StringUtils.removeEnd;
 
 public class DlangFile extends PsiFileBase {
 
+    private static final Key<CachedValue<String>> MODULE_NAME_KEY = Key.create("d.module.name");
+
     public DlangFile(@NotNull final FileViewProvider viewProvider) {
         super(viewProvider, DLanguage.INSTANCE);
     }
@@ -52,14 +58,35 @@ public class DlangFile extends PsiFileBase {
      */
     @Nullable
     public String getFullyQualifiedModuleName() {
-        return Optional.ofNullable(findChildByClass(DLanguageModuleDeclaration.class))
-                       .map(DLanguageModuleDeclaration::getIdentifierChain)
-                       .map(DLanguageIdentifierChain::getIdentifiers)
-                       .filter(CollectionUtils::isNotEmpty)
-                       .map(Collection::stream)
-                       .orElse(Stream.empty())
-                       .map(PsiElement::getText)
-                       .collect(Collectors.joining("."));
+        return CachedValuesManager.getCachedValue(this, MODULE_NAME_KEY,
+            () -> CachedValueProvider.Result.create(computeFullyQualifiedModuleName(), this));
+    }
+
+    @NotNull
+    private String computeFullyQualifiedModuleName() {
+        final DlangFileStub stub = getStub();
+        if (stub != null) {
+            // the file isn't loaded, don't parse it just for its module declaration
+            for (final StubElement<?> child : stub.getChildrenStubs()) {
+                if (child instanceof DlangModuleDeclarationStub) {
+                    final String name = ((DlangModuleDeclarationStub) child).getName();
+                    return name == null ? "" : StringUtils.deleteWhitespace(name);
+                }
+            }
+            return "";
+        }
+        final DLanguageModuleDeclaration module = findChildByClass(DLanguageModuleDeclaration.class);
+        if (module == null || module.getIdentifierChain() == null) {
+            return "";
+        }
+        final StringBuilder name = new StringBuilder();
+        for (final DlangIdentifier identifier : module.getIdentifierChain().getIdentifiers()) {
+            if (name.length() > 0) {
+                name.append('.');
+            }
+            name.append(identifier.getText());
+        }
+        return name.toString();
     }
 
     /**
@@ -70,13 +97,11 @@ public class DlangFile extends PsiFileBase {
      */
     @NotNull
     public String getModuleName() {
-        return Optional.ofNullable(findChildByClass(DLanguageModuleDeclaration.class))
-                       .map(DLanguageModuleDeclaration::getIdentifierChain)
-                       .map(DLanguageIdentifierChain::getIdentifiers)
-                       .filter(list -> !list.isEmpty())
-                       .map(identifiers -> identifiers.get(identifiers.size() - 1))
-                       .map(PsiElement::getText)
-                       .orElseGet(() -> StringUtils.removeEnd(this.getName(), ".d"));
+        final String fullyQualifiedName = getFullyQualifiedModuleName();
+        if (StringUtils.isEmpty(fullyQualifiedName)) {
+            return StringUtils.removeEnd(this.getName(), ".d");
+        }
+        return fullyQualifiedName.substring(fullyQualifiedName.lastIndexOf('.') + 1);
     }
 
     /**
@@ -99,6 +124,16 @@ public class DlangFile extends PsiFileBase {
 
     @Override
     public boolean processDeclarations(@NotNull final PsiScopeProcessor processor, @NotNull final ResolveState state, final PsiElement lastParent, @NotNull final PsiElement place) {
+        return ScopeSymbolTable.Companion.processDeclarations(this, processor, state,
+            () -> processTopLevelDeclarations(processor, state, lastParent, place));
+    }
+
+    private boolean processTopLevelDeclarations(@NotNull final PsiScopeProcessor processor, @NotNull final ResolveState state, final PsiElement lastParent, @NotNull final PsiElement place) {
+        final DlangFileStub stub = getStub();
+        if (stub != null) {
+            // getChildren() would load the AST, the stubs list the same top level declarations
+            return ScopeProcessorImplUtil.INSTANCE.processStubDeclarations(stub, processor, state);
+        }
         boolean toContinue = true;
         for (final PsiElement element : getChildren()) {
             if (element instanceof DLanguageDeclaration) {
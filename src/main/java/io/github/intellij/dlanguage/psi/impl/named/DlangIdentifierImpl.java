@@ -2,21 +2,20 @@ package io.github.intellij.dlanguage.psi.impl.named;
 
 import com.intellij.lang.ASTNode;
 import com.intellij.navigation.ItemPresentation;
-import com.intellij.openapi.util.Condition;
+import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiElementVisitor;
+import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiNamedElement;
 import com.intellij.psi.PsiReference;
 import com.intellij.psi.stubs.IStubElementType;
-import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
 import io.github.intellij.dlanguage.psi.*;
-import io.github.intellij.dlanguage.psi.named.DlangAliasInitializer;
-import io.github.intellij.dlanguage.psi.named.DlangAutoDeclarationPart;
 import io.github.intellij.dlanguage.psi.named.DlangCatch;
-import io.github.intellij.dlanguage.psi.named.DlangConstructor;
-import io.github.intellij.dlanguage.psi.named.DlangDeclarator;
 import io.github.intellij.dlanguage.psi.named.DlangEnumDeclaration;
 import io.github.intellij.dlanguage.psi.named.DlangEnumMember;
 import io.github.intellij.dlanguage.psi.named.DlangForeachType;
@@ -32,13 +31,21 @@ import io.github.intellij.dlanguage.psi.impl.DNamedStubbedPsiElementBase;
 import io.github.intellij.dlanguage.psi.references.DReference;
 import io.github.intellij.dlanguage.resolve.DResolveUtil;
 import io.github.intellij.dlanguage.stubs.DlangIdentifierStub;
-import io.github.intellij.dlanguage.utils.DUtil;
 import java.util.Set;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 public class DlangIdentifierImpl extends DNamedStubbedPsiElementBase<DlangIdentifierStub> implements DlangIdentifier {
 
+    private static final Key<CachedValue<ItemPresentation>> PRESENTATION_KEY = Key.create("d.identifier.presentation");
+
+    /**
+     * The reference is kept for the lifetime of the element so that {@link com.intellij.psi.impl.source.resolve.ResolveCache}
+     * (which is keyed by reference) can serve repeated resolves of the same identifier. Its range is computed from
+     * the element (see {@link DReference#getRangeInElement()}), so it stays right when the name changes in place.
+     */
+    private volatile DReference reference;
+
     public DlangIdentifierImpl(final DlangIdentifierStub stub, final IStubElementType type) {
         super(stub, type);
     }
@@ -70,7 +77,12 @@ public class DlangIdentifierImpl extends DNamedStubbedPsiElementBase<DlangIdenti
 
     @NotNull
     public PsiReference getReference() {
-        return new DReference(this, TextRange.from(0, getName().length()));
+        DReference result = reference;
+        if (result == null) {
+            result = new DReference(this, TextRange.from(0, getName().length()));
+            reference = result;
+        }
+        return result;
     }
 
     @NotNull
@@ -85,135 +97,68 @@ public class DlangIdentifierImpl extends DNamedStubbedPsiElementBase<DlangIdenti
         return this;
     }
 
+    /**
+     * The presentation is computed once per version of the file, popups such as Go to Symbol ask for it for every
+     * item they show.
+     */
     @NotNull
     public ItemPresentation getPresentation() {
-        return new DlangItemPresentation(getContainingFile()) {
-            @NotNull
-            @Override
-            public String getPresentableText() {
-                //todo keep this up to date
-                final PsiNamedElement firstMatch = (PsiNamedElement) PsiTreeUtil.findFirstParent(DlangIdentifierImpl.this, new Condition<PsiElement>() {
-                    @Override
-                    public boolean value(final PsiElement element) {
-                        return element instanceof DlangFunctionDeclaration
-                            || element instanceof DlangInterfaceOrClass
-                            || element instanceof DlangTemplateDeclaration
-                            || element instanceof DlangUnionDeclaration
-                            || element instanceof DlangStructDeclaration
-                            || element instanceof DlangParameter
-                            || element instanceof DLanguageTemplateParameter
-                            || element instanceof DlangEnumDeclaration
-                            || element instanceof DlangEnumMember || element instanceof DlangCatch
-                            || element instanceof DlangForeachType
-                            || element instanceof DLanguageIfCondition;
-                    }
-                });
-                final PsiNamedElement funcDecl = (PsiNamedElement) DUtil
-                    .findParentOfType(DlangIdentifierImpl.this, DlangFunctionDeclaration.class);
-                final PsiNamedElement classDecl;
-                if (DUtil.findParentOfType(DlangIdentifierImpl.this, DLanguageClassDeclaration.class) == null) {
-                    classDecl = null;
-                } else
-                    classDecl = ((DLanguageClassDeclaration) DUtil.findParentOfType(DlangIdentifierImpl.this, DLanguageClassDeclaration.class)).getInterfaceOrClass();
-                final PsiNamedElement templateDecl = (PsiNamedElement) DUtil.findParentOfType(DlangIdentifierImpl.this, DlangTemplateDeclaration.class);
-                final PsiNamedElement unionDecl = (PsiNamedElement) DUtil.findParentOfType(DlangIdentifierImpl.this, DlangUnionDeclaration.class);
-                final PsiNamedElement structDecl = (PsiNamedElement) DUtil.findParentOfType(DlangIdentifierImpl.this, DlangStructDeclaration.class);
-                final PsiNamedElement interfaceDecl;
-                if (DUtil.findParentOfType(DlangIdentifierImpl.this, DLanguageInterfaceDeclaration.class) == null) {
-                    interfaceDecl = null;
-                } else
-                    interfaceDecl = ((DLanguageInterfaceDeclaration) DUtil.findParentOfType(DlangIdentifierImpl.this, DLanguageInterfaceDeclaration.class)).getInterfaceOrClass();
-                final PsiNamedElement parameterDecl = (PsiNamedElement) DUtil
-                    .findParentOfType(DlangIdentifierImpl.this, DlangParameter.class);
-                final PsiNamedElement templateParameterDecl = (PsiNamedElement) DUtil.findParentOfType(DlangIdentifierImpl.this, DLanguageTemplateParameter.class);
-                final PsiNamedElement enumDeclarationDecl = (PsiNamedElement) DUtil.findParentOfType(DlangIdentifierImpl.this, DlangEnumDeclaration.class);
-                final PsiNamedElement enumMemberDecl = (PsiNamedElement) DUtil
-                    .findParentOfType(DlangIdentifierImpl.this, DlangEnumMember.class);
-                final PsiNamedElement catchDecl = (PsiNamedElement) DUtil
-                    .findParentOfType(DlangIdentifierImpl.this, DlangCatch.class);
-
-                final PsiNamedElement autoDeclarationDecl = (PsiNamedElement) DUtil
-                    .findParentOfType(DlangIdentifierImpl.this, DlangAutoDeclarationPart.class);
-                final PsiNamedElement ifConditionDecl = (PsiNamedElement) DUtil.findParentOfType(DlangIdentifierImpl.this, DLanguageIfCondition.class);
-                final PsiNamedElement foreachTypeDecl = (PsiNamedElement) DUtil
-                    .findParentOfType(DlangIdentifierImpl.this, DlangForeachType.class);
-                final PsiNamedElement declaratorDecl = (PsiNamedElement) DUtil
-                    .findParentOfType(DlangIdentifierImpl.this, DlangDeclarator.class);
-                final PsiNamedElement aliasInitializerDecl = (PsiNamedElement) DUtil
-                    .findParentOfType(DlangIdentifierImpl.this, DlangAliasInitializer.class);
-                final PsiNamedElement labeledStatementDecl = (PsiNamedElement) DUtil.findParentOfType(DlangIdentifierImpl.this, DLanguageLabeledStatement.class);
-                final PsiNamedElement constructorDecl = (PsiNamedElement) DUtil
-                    .findParentOfType(DlangIdentifierImpl.this, DlangConstructor.class);
-                final PsiNamedElement eponymousTemplateDeclarationDecl = (PsiNamedElement) DUtil.findParentOfType(DlangIdentifierImpl.this, DLanguageEponymousTemplateDeclaration.class);
-
-
-                String description = "";
-                if (funcDecl != null && funcDecl == firstMatch) {
-                    description = " [Function] (" + funcDecl.getName() + ")";
-                }
-                if (classDecl != null && classDecl == firstMatch) {
-                    description = " [Class] (" + classDecl.getName() + ")";
-                }
-                if (templateDecl != null && templateDecl == firstMatch) {
-                    description = " [Template] (" + templateDecl.getName() + ")";
-                }
-                if (unionDecl != null && unionDecl == firstMatch) {
-                    description = " [Union] (" + unionDecl.getName() + ")";
-                }
-                if (structDecl != null && structDecl == firstMatch) {
-                    description = " [Struct] (" + structDecl.getName() + ")";
-                }
-                if (interfaceDecl != null && interfaceDecl == firstMatch) {
-                    description = " [Interface] (" + interfaceDecl.getName() + ")";
-                }
-                if (parameterDecl != null && parameterDecl == firstMatch) {
-                    description = " [Parameter] (" + parameterDecl.getName() + ")";
-                }
-                if (templateParameterDecl != null && templateParameterDecl == firstMatch) {
-                    description = " [Template Parameter] (" + templateParameterDecl.getName() + ")";
-                }
-                if (enumDeclarationDecl != null && enumDeclarationDecl == firstMatch) {
-                    description = " [Enum Declaration] (" + enumDeclarationDecl.getName() + ")";
-                }
-                if (enumMemberDecl != null && enumMemberDecl == firstMatch) {
-                    description = " [Enum Member] (" + enumMemberDecl.getName() + ")";
-                }
-                if (catchDecl != null && catchDecl == firstMatch) {
-                    description = " [Catch] (" + catchDecl.getName() + ")";
-                }
-                if (autoDeclarationDecl != null && autoDeclarationDecl == firstMatch) {
-                    description = " [Auto Variable] (" + autoDeclarationDecl.getName() + ")";
-                }
-                if (ifConditionDecl != null && ifConditionDecl == firstMatch) {
-                    description = " [If Condition Variable] (" + ifConditionDecl.getName() + ")";
-                }
-                if (foreachTypeDecl != null && foreachTypeDecl == firstMatch) {
-                    description = " [Foreach Variable] (" + foreachTypeDecl.getName() + ")";
-                }
-                if (declaratorDecl != null && declaratorDecl == firstMatch) {
-                    description = " [Variable] (" + declaratorDecl.getName() + ")";
-                }
-                if (aliasInitializerDecl != null && aliasInitializerDecl == firstMatch) {
-                    description = " [Alias Declaration] (" + aliasInitializerDecl.getName() + ")";
-                }
-                if (labeledStatementDecl != null && labeledStatementDecl == firstMatch) {
-                    description = " [Label] (" + labeledStatementDecl.getName() + ")";
-                }
-                if (constructorDecl != null && constructorDecl == firstMatch) {
-                    description = " [Constructor] (" + constructorDecl.getName() + ")";
-                }
-                if (eponymousTemplateDeclarationDecl != null && eponymousTemplateDeclarationDecl == firstMatch) {
-                    description = " [Eponymous Template Declaration] (" + eponymousTemplateDeclarationDecl.getName() + ")";
-                }
-
+        return CachedValuesManager.getCachedValue(this, PRESENTATION_KEY, () -> {
+            final String presentableText = getName() + describeDeclaration();
+            final ItemPresentation presentation = new DlangItemPresentation(getContainingFile()) {
+                @NotNull
+                @Override
+                public String getPresentableText() {
+                    return presentableText;
+                }
+            };
+            return CachedValueProvider.Result.create(presentation, this);
+        });
+    }
 
-                return getName() + description;
+    /**
+     * Describes the closest enclosing declaration of this identifier, found in a single walk up the tree. Identifiers
+     * never have stubs so there is no stub parent to take a shortcut through.
+     */
+    @NotNull
+    private String describeDeclaration() {
+        for (PsiElement parent = getParent(); parent != null && !(parent instanceof PsiFile); parent = parent.getParent()) {
+            final String kind = declarationKind(parent);
+            if (kind != null) {
+                return kind.isEmpty() ? "" : " [" + kind + "] (" + ((PsiNamedElement) parent).getName() + ")";
             }
-        };
+        }
+        return "";
+    }
+
+    /**
+     * @return the kind of declaration shown in the presentation, an empty string for a declaration that is described
+     * without a kind or null if the element isn't one of the declarations the presentation describes
+     */
+    @Nullable
+    private static String declarationKind(@NotNull final PsiElement element) {
+        //todo keep this up to date
+        if (element instanceof DlangFunctionDeclaration) return "Function";
+        if (element instanceof DlangInterfaceOrClass) {
+            if (element.getParent() instanceof DLanguageClassDeclaration) return "Class";
+            if (element.getParent() instanceof DLanguageInterfaceDeclaration) return "Interface";
+            return "";
+        }
+        if (element instanceof DlangTemplateDeclaration) return "Template";
+        if (element instanceof DlangUnionDeclaration) return "Union";
+        if (element instanceof DlangStructDeclaration) return "Struct";
+        if (element instanceof DlangParameter) return "Parameter";
+        if (element instanceof DLanguageTemplateParameter) return "Template Parameter";
+        if (element instanceof DlangEnumDeclaration) return "Enum Declaration";
+        if (element instanceof DlangEnumMember) return "Enum Member";
+        if (element instanceof DlangCatch) return "Catch";
+        if (element instanceof DlangForeachType) return "Foreach Variable";
+        if (element instanceof DLanguageIfCondition) return "If Condition Variable";
+        return null;
     }
 
     public void delete() {
-        final Set<PsiNamedElement> definitionNode = DResolveUtil.Companion.getInstance(getProject()).findDefinitionNode(this, false);
+        final Set<PsiNamedElement> definitionNode = DResolveUtil.Companion.getInstance(getProject()).findDefinitionNode(this);
         if (definitionNode.size() != 1)
             throw new IllegalStateException();
         ((PsiElement) definitionNode.toArray()[0]).delete();
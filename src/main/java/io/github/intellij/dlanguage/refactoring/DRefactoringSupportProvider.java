@@ -17,7 +17,7 @@ public class DRefactoringSupportProvider extends RefactoringSupportProvider {
     public boolean isSafeDeleteAvailable(@NotNull final PsiElement element) {
         if (!(element instanceof DlangIdentifier))
             return false;
-        final Set<PsiNamedElement> resolve = DResolveUtil.Companion.getInstance(element.getProject()).findDefinitionNode((PsiNamedElement) element, false);
+        final Set<PsiNamedElement> resolve = DResolveUtil.Companion.getInstance(element.getProject()).findDefinitionNode((PsiNamedElement) element);
         return resolve.size() == 1;
     }
 
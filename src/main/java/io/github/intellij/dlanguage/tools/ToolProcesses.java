@@ -0,0 +1,394 @@
+package io.github.intellij.dlanguage.tools;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.configurations.GeneralCommandLine;
+import com.intellij.execution.process.CapturingProcessHandler;
+import com.intellij.execution.process.ProcessListener;
+import com.intellij.execution.process.ProcessOutput;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The processes of the external tools of a project: dscanner, dfmt, dfix, dub, the compiler and dcd-client all run
+ * through here rather than each on its own threads, so that opening or indexing a project can't start more of them
+ * than the machine can take.
+ *
+ * Each tool runs at most {@link Tool#concurrency} processes at once, interactive requests (what the user is waiting
+ * for) first. A process is stopped when the {@link ProgressIndicator} of its request is cancelled or when it runs
+ * longer than the timeout of its tool. How many processes ran, how long they waited for their turn and how long they
+ * ran is recorded and dumped by {@link io.github.intellij.dlanguage.actions.DumpToolProcessMetrics}.
+ *
+ * Tools run without a project, like the compiler when an SDK is set up, go through the default project's instance.
+ */
+public final class ToolProcesses {
+
+    private static final Logger LOG = Logger.getInstance(ToolProcesses.class);
+
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+    static final long CANCELLATION_CHECK_MILLIS = 100;
+
+    public enum Tool {
+        DSCANNER("dscanner", Math.max(1, CORES / 2), 120_000),
+        DFORMAT("dfmt", 1, 10_000),
+        DFIX("dfix", 1, 30_000),
+        DUB("dub", 1, 120_000),
+        COMPILER("compiler", Math.max(1, CORES / 2), 60_000),
+        DCD_CLIENT("dcd-client", 4, 3_000);
+
+        @NotNull
+        private final String displayName;
+        final int concurrency;
+        final int timeoutMillis;
+
+        Tool(@NotNull final String displayName, final int concurrency, final int timeoutMillis) {
+            this.displayName = displayName;
+            this.concurrency = concurrency;
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        /**
+         * How long a single process of this tool may run, for one file or request.
+         */
+        public int getTimeoutMillis() {
+            return timeoutMillis;
+        }
+    }
+
+    public enum Priority {
+        /** the user is waiting for the result: completion, formatting, annotating the open editor */
+        INTERACTIVE,
+        /** project wide work: importing the dub project, linting every file */
+        BACKGROUND
+    }
+
+    /**
+     * The processes a tool may still start. Background requests wait as long as an interactive one does.
+     */
+    static final class Slots {
+        private final int limit;
+        // guarded by this
+        private int running;
+        private int waitingInteractive;
+
+        Slots(final int limit) {
+            this.limit = limit;
+        }
+
+        synchronized void acquire(@NotNull final Priority priority, @NotNull final ProgressIndicator indicator) {
+            final boolean interactive = priority == Priority.INTERACTIVE;
+            if (interactive) {
+                waitingInteractive++;
+            }
+            try {
+                while (running >= limit || (!interactive && waitingInteractive > 0)) {
+                    indicator.checkCanceled();
+                    wait(CANCELLATION_CHECK_MILLIS);
+                }
+                indicator.checkCanceled();
+                running++;
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ProcessCanceledException(e);
+            } finally {
+                if (interactive) {
+                    waitingInteractive--;
+                    notifyAll();
+                }
+            }
+        }
+
+        synchronized void release() {
+            running--;
+            notifyAll();
+        }
+    }
+
+    static final class Stats {
+        final AtomicLong processes = new AtomicLong();
+        final AtomicLong timeouts = new AtomicLong();
+        final AtomicLong cancellations = new AtomicLong();
+        final AtomicLong wallNanos = new AtomicLong();
+        final AtomicLong queueNanos = new AtomicLong();
+        final AtomicLong maxQueueNanos = new AtomicLong();
+
+        private void record(final long queued, final long wall) {
+            processes.incrementAndGet();
+            queueNanos.addAndGet(queued);
+            wallNanos.addAndGet(wall);
+            maxQueueNanos.accumulateAndGet(queued, Math::max);
+        }
+
+        private void reset() {
+            processes.set(0);
+            timeouts.set(0);
+            cancellations.set(0);
+            wallNanos.set(0);
+            queueNanos.set(0);
+            maxQueueNanos.set(0);
+        }
+    }
+
+    private final Map<Tool, Slots> slots = new EnumMap<>(Tool.class);
+    private final Map<Tool, Stats> stats = new EnumMap<>(Tool.class);
+
+    public ToolProcesses() {
+        for (final Tool tool : Tool.values()) {
+            slots.put(tool, new Slots(tool.concurrency));
+            stats.put(tool, new Stats());
+        }
+    }
+
+    public static ToolProcesses getInstance(@NotNull final Project project) {
+        return ServiceManager.getService(project, ToolProcesses.class);
+    }
+
+    /**
+     * What is written to the standard input of a process, from a pooled thread while the process runs. The stream is
+     * closed afterwards.
+     */
+    @FunctionalInterface
+    public interface Input {
+        void write(@NotNull OutputStream stdin) throws IOException;
+    }
+
+    /**
+     * Reads the standard output of a process as it is written, on the thread running the request.
+     */
+    @FunctionalInterface
+    public interface Output<T> {
+        T read(@NotNull InputStream stdout) throws IOException;
+    }
+
+    /**
+     * Runs {@code commandLine} and waits for it, see {@link #run(Tool, Priority, GeneralCommandLine, Input, ProcessListener, ProgressIndicator)}.
+     */
+    @NotNull
+    public ProcessOutput run(@NotNull final Tool tool, @NotNull final Priority priority,
+                             @NotNull final GeneralCommandLine commandLine,
+                             @Nullable final ProgressIndicator indicator) throws ExecutionException {
+        return run(tool, priority, commandLine, null, null, indicator);
+    }
+
+    /**
+     * Runs {@code commandLine} once {@code tool} may start another process, and waits for it.
+     *
+     * @param input     written to the standard input of the process
+     * @param listener  told about the output as the process writes it, a line at a time
+     * @param indicator cancels the request, queued or running; the indicator of the current thread if null
+     * @return the output of the process, {@link ProcessOutput#isTimeout()} if it ran out of time
+     * @throws ProcessCanceledException if the indicator was cancelled
+     */
+    @NotNull
+    public ProcessOutput run(@NotNull final Tool tool, @NotNull final Priority priority,
+                             @NotNull final GeneralCommandLine commandLine, @Nullable final Input input,
+                             @Nullable final ProcessListener listener,
+                             @Nullable final ProgressIndicator indicator) throws ExecutionException {
+        return run(tool, priority, commandLine, input, listener, tool.timeoutMillis, indicator);
+    }
+
+    /**
+     * Runs {@code commandLine} like {@link #run(Tool, Priority, GeneralCommandLine, Input, ProcessListener, ProgressIndicator)},
+     * stopping it after {@code timeoutMillis} rather than the timeout of {@code tool}: for requests that are more work
+     * than usual, like linting many files with one process.
+     */
+    @NotNull
+    public ProcessOutput run(@NotNull final Tool tool, @NotNull final Priority priority,
+                             @NotNull final GeneralCommandLine commandLine, @Nullable final Input input,
+                             @Nullable final ProcessListener listener, final int timeoutMillis,
+                             @Nullable final ProgressIndicator indicator) throws ExecutionException {
+        final ProgressIndicator progress = indicator != null ? indicator : currentIndicator();
+        final Slots toolSlots = slots.get(tool);
+        final Stats toolStats = stats.get(tool);
+
+        final long queued = System.nanoTime();
+        toolSlots.acquire(priority, progress);
+        final long started = System.nanoTime();
+        Future<?> writer = null;
+        try {
+            final Process process = commandLine.createProcess();
+            final CapturingProcessHandler handler =
+                new CapturingProcessHandler(process, commandLine.getCharset(), commandLine.getCommandLineString());
+            if (listener != null) {
+                handler.addProcessListener(listener);
+            }
+            // the handler destroys the process when it is cancelled or times out, which ends a blocked write
+            writer = write(tool, process, input);
+            final ProcessOutput output = handler.runProcessWithProgressIndicator(progress, timeoutMillis);
+            if (output.isCancelled()) {
+                toolStats.cancellations.incrementAndGet();
+                throw new ProcessCanceledException();
+            }
+            if (output.isTimeout()) {
+                timedOut(tool, commandLine, timeoutMillis);
+            }
+            return output;
+        } finally {
+            if (writer != null) {
+                writer.cancel(true);
+            }
+            toolSlots.release();
+            toolStats.record(started - queued, System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * Runs {@code commandLine} once {@code tool} may start another process, and hands its standard output to
+     * {@code output} as the process writes it rather than collecting it first. The standard error is discarded.
+     *
+     * @return what {@code output} read
+     * @throws ExecutionException if the process couldn't be started, ran out of time or its output couldn't be read
+     * @throws ProcessCanceledException if the indicator was cancelled
+     */
+    public <T> T read(@NotNull final Tool tool, @NotNull final Priority priority,
+                      @NotNull final GeneralCommandLine commandLine, @Nullable final Input input,
+                      @NotNull final Output<T> output,
+                      @Nullable final ProgressIndicator indicator) throws ExecutionException {
+        final ProgressIndicator progress = indicator != null ? indicator : currentIndicator();
+        final Slots toolSlots = slots.get(tool);
+        final Stats toolStats = stats.get(tool);
+
+        final long queued = System.nanoTime();
+        toolSlots.acquire(priority, progress);
+        final long started = System.nanoTime();
+        try {
+            final Process process = commandLine.createProcess();
+            final AtomicBoolean cancelled = new AtomicBoolean();
+            final AtomicBoolean timeout = new AtomicBoolean();
+            final long deadline = started + TimeUnit.MILLISECONDS.toNanos(tool.timeoutMillis);
+            final ScheduledFuture<?> watchdog = AppExecutorUtil.getAppScheduledExecutorService().scheduleWithFixedDelay(() -> {
+                if (progress.isCanceled()) {
+                    cancelled.set(true);
+                    process.destroy();
+                } else if (System.nanoTime() > deadline) {
+                    timeout.set(true);
+                    process.destroy();
+                }
+            }, CANCELLATION_CHECK_MILLIS, CANCELLATION_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+            final Future<?> writer = write(tool, process, input);
+            final Future<?> errors = AppExecutorUtil.getAppExecutorService().submit(() -> discard(process.getErrorStream()));
+            try {
+                final T result;
+                // closed before waiting so that a process still writing what wasn't read doesn't block
+                try (final InputStream stdout = process.getInputStream()) {
+                    result = output.read(stdout);
+                }
+                process.waitFor();
+                if (!cancelled.get() && !timeout.get()) {
+                    return result;
+                }
+            } catch (final IOException e) {
+                if (!cancelled.get() && !timeout.get()) {
+                    throw new ExecutionException(e);
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancelled.set(true);
+            } finally {
+                watchdog.cancel(false);
+                writer.cancel(true);
+                errors.cancel(true);
+                process.destroy();
+            }
+            if (cancelled.get()) {
+                toolStats.cancellations.incrementAndGet();
+                throw new ProcessCanceledException();
+            }
+            timedOut(tool, commandLine, tool.timeoutMillis);
+            throw new ExecutionException(String.format("%s timed out after %d ms", tool.displayName, tool.timeoutMillis));
+        } finally {
+            toolSlots.release();
+            toolStats.record(started - queued, System.nanoTime() - started);
+        }
+    }
+
+    @NotNull
+    private static Future<?> write(@NotNull final Tool tool, @NotNull final Process process, @Nullable final Input input) {
+        return AppExecutorUtil.getAppExecutorService().submit(() -> {
+            try (final OutputStream stdin = process.getOutputStream()) {
+                if (input != null) {
+                    input.write(stdin);
+                }
+            } catch (final IOException e) {
+                LOG.debug(tool.displayName + " didn't read its input", e);
+            }
+        });
+    }
+
+    private static void discard(@NotNull final InputStream output) {
+        final byte[] buffer = new byte[4096];
+        try (final InputStream in = output) {
+            while (in.read(buffer) != -1) {
+                // nothing to keep
+            }
+        } catch (final IOException e) {
+            // the process was destroyed
+        }
+    }
+
+    private void timedOut(@NotNull final Tool tool, @NotNull final GeneralCommandLine commandLine,
+                          final int timeoutMillis) {
+        stats.get(tool).timeouts.incrementAndGet();
+        LOG.info(String.format("%s timed out after %d ms: %s", tool.displayName, timeoutMillis,
+            commandLine.getCommandLineString()));
+    }
+
+    @NotNull
+    private static ProgressIndicator currentIndicator() {
+        final ProgressIndicator indicator = ProgressManager.getGlobalProgressIndicator();
+        return indicator != null ? indicator : new EmptyProgressIndicator();
+    }
+
+    @NotNull
+    Stats stats(@NotNull final Tool tool) {
+        return stats.get(tool);
+    }
+
+    public void reset() {
+        for (final Stats toolStats : stats.values()) {
+            toolStats.reset();
+        }
+    }
+
+    /**
+     * Human readable summary of everything recorded since the last {@link #reset()}.
+     */
+    @NotNull
+    public String report() {
+        final StringBuilder report = new StringBuilder();
+        for (final Tool tool : Tool.values()) {
+            final Stats toolStats = stats.get(tool);
+            final long processes = toolStats.processes.get();
+            report.append(String.format("%s: %d processes (at most %d at once), %d timed out, %d cancelled%n",
+                tool.displayName, processes, tool.concurrency, toolStats.timeouts.get(),
+                toolStats.cancellations.get()));
+            if (processes > 0) {
+                report.append(String.format("  wall time: average %.1fms, total %.1fs%n",
+                    toolStats.wallNanos.get() / processes / 1_000_000.0,
+                    toolStats.wallNanos.get() / (double) TimeUnit.SECONDS.toNanos(1)));
+                report.append(String.format("  queue time: average %.1fms, max %.1fms%n",
+                    toolStats.queueNanos.get() / processes / 1_000_000.0,
+                    toolStats.maxQueueNanos.get() / 1_000_000.0));
+            }
+        }
+        return report.toString();
+    }
+}
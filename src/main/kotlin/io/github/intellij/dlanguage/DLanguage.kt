@@ -83,7 +83,7 @@ class DLangProjectDmdSetupValidator : ProjectSdkSetupValidator {
 
     private fun cannotFindObjectDotD(project: Project): Boolean {
         val resolveObjectDotD: Computable<Boolean> = Computable({
-            BasicResolve.getInstance(project, profile = false).`object` == null
+            BasicResolve.getInstance(project).`object` == null
         })
         return DumbService.getInstance(project).runReadActionInSmartMode(resolveObjectDotD)
     }
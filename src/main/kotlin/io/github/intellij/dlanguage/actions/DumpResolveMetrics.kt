@@ -0,0 +1,32 @@
+package io.github.intellij.dlanguage.actions
+
+import com.intellij.openapi.actionSystem.AnAction
+import com.intellij.openapi.actionSystem.AnActionEvent
+import com.intellij.openapi.diagnostic.Logger
+import com.intellij.openapi.project.DumbAware
+import com.intellij.openapi.ui.Messages
+import io.github.intellij.dlanguage.resolve.DResolveMetrics
+
+/**
+ * Shows the resolve statistics recorded by [DResolveMetrics] since the last reset (and writes them to the log), then
+ * optionally resets them so the next measurement starts from zero.
+ */
+class DumpResolveMetrics : AnAction(), DumbAware {
+
+    private val log = Logger.getInstance(DumpResolveMetrics::class.java)
+
+    override fun update(e: AnActionEvent) {
+        e.presentation.isEnabled = e.project != null
+    }
+
+    override fun actionPerformed(e: AnActionEvent) {
+        val project = e.project ?: return
+        val metrics = DResolveMetrics.getInstance(project)
+        val report = metrics.report()
+        log.info("D resolve metrics:\n$report")
+        val answer = Messages.showYesNoDialog(project, report, "D Resolve Metrics", "Reset", "Close", Messages.getInformationIcon())
+        if (answer == Messages.YES) {
+            metrics.reset()
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package io.github.intellij.dlanguage.actions
+
+import com.intellij.openapi.actionSystem.AnAction
+import com.intellij.openapi.actionSystem.AnActionEvent
+import com.intellij.openapi.diagnostic.Logger
+import com.intellij.openapi.project.DumbAware
+import com.intellij.openapi.ui.Messages
+import io.github.intellij.dlanguage.tools.ToolProcesses
+
+/**
+ * Shows the tool process statistics recorded by [ToolProcesses] since the last reset (and writes them to the log),
+ * then optionally resets them.
+ */
+class DumpToolProcessMetrics : AnAction(), DumbAware {
+
+    private val log = Logger.getInstance(DumpToolProcessMetrics::class.java)
+
+    override fun update(e: AnActionEvent) {
+        e.presentation.isEnabled = e.project != null
+    }
+
+    override fun actionPerformed(e: AnActionEvent) {
+        val project = e.project ?: return
+        val processes = ToolProcesses.getInstance(project)
+        val report = processes.report()
+        log.info("D tool process metrics:\n$report")
+        val answer = Messages.showYesNoDialog(project, report, "D Tool Process Metrics", "Reset", "Close", Messages.getInformationIcon())
+        if (answer == Messages.YES) {
+            processes.reset()
+        }
+    }
+}
@@ -5,7 +5,7 @@ import com.intellij.lang.annotation.Annotator
 import com.intellij.openapi.util.TextRange
 import com.intellij.psi.PsiElement
 import io.github.intellij.dlanguage.colors.DColor
-import io.github.intellij.dlanguage.resolve.processors.basic.BasicResolve
+import io.github.intellij.dlanguage.resolve.DFileResolver
 import io.github.intellij.dlanguage.utils.*
 
 class DHighlightingAnnotator : Annotator {
@@ -27,10 +27,7 @@ class DHighlightingAnnotator : Annotator {
             else -> null
         } ?: return null
 
-        val basicResolveResult = BasicResolve.getInstance(element.project, false)
-            .findDefinitionNode(identifier)
-
-        val result = basicResolveResult.firstOrNull() ?: return null
+        val result = DFileResolver.resolve(identifier).firstOrNull() ?: return null
 
         val color = colorFor(result) ?: return null
         val part = partToHighlight(element) ?: return null
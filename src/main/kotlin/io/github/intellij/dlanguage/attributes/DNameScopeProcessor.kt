@@ -1,13 +1,16 @@
 package io.github.intellij.dlanguage.attributes
 
 import com.intellij.openapi.diagnostic.Logger
+import com.intellij.openapi.progress.ProgressManager
+import com.intellij.openapi.util.Key
 import com.intellij.psi.PsiElement
 import com.intellij.psi.ResolveState
+import com.intellij.psi.scope.NameHint
 import com.intellij.psi.stubs.NamedStubBase
 import io.github.intellij.dlanguage.psi.interfaces.DNamedElement
 import io.github.intellij.dlanguage.resolve.processors.DResolveProcessor
+import io.github.intellij.dlanguage.resolve.processors.DResolveSession
 import io.github.intellij.dlanguage.stubs.index.DMembersIndex
-import io.github.intellij.dlanguage.stubs.index.DPublicImportIndex
 import io.github.intellij.dlanguage.stubs.index.DTopLevelDeclarationIndex
 import io.github.intellij.dlanguage.utils.Constructor
 import io.github.intellij.dlanguage.utils.Identifier
@@ -16,7 +19,7 @@ import io.github.intellij.dlanguage.utils.SingleImport
 /**
  * Created by francis on 6/15/2017.
  */
-class DNameScopeProcessor(var start: Identifier, val profile: Boolean = false) : DResolveProcessor<DNamedElement, DNamedElement> {
+class DNameScopeProcessor(var start: Identifier) : DResolveProcessor<DNamedElement, DNamedElement> {
     override fun matches(call: DNamedElement, decl: DNamedElement): Boolean {
         return true
     }
@@ -27,9 +30,26 @@ class DNameScopeProcessor(var start: Identifier, val profile: Boolean = false) :
 
     override val result = mutableSetOf<DNamedElement>()
 
+    private val nameHint = object : NameHint {
+        override fun getName(state: ResolveState): String = name
+    }
+
+    /**
+     * Scopes use the name hint to look the name up in their symbol table instead of executing every declaration.
+     */
+    override fun <T : Any?> getHint(hintKey: Key<T>): T? {
+        @Suppress("UNCHECKED_CAST")
+        return if (hintKey == NameHint.KEY) nameHint as T else null
+    }
+
+    /**
+     * Used when the caller didn't put a [DResolveSession] in the [ResolveState].
+     */
+    private val ownSession = DResolveSession()
+
     override fun execute(element: PsiElement, state: ResolveState): Boolean {
+        ProgressManager.checkCanceled()
         var toContinue = true
-        val startTime = System.currentTimeMillis()
         if (element is DNamedElement) {
             if (element.name == name) {
                 if (element !is Constructor) {//todo this class should be renamed because of this
@@ -38,52 +58,55 @@ class DNameScopeProcessor(var start: Identifier, val profile: Boolean = false) :
                 }
             }
             if (element is SingleImport) {
-                return handleImport(element)
+                return handleImport(element, state.get(DResolveSession.KEY) ?: ownSession)
             }
         } else {
             throw IllegalArgumentException()
         }
-        val endTime = System.currentTimeMillis()
-        if ((endTime - startTime) > 30)
-            if (profile)
-                log.info("execute took:" + (endTime - startTime))
         return toContinue
     }
 
-//    val importsDoneKey = Key.create<MutableSet<SingleImport>>("currentlyProcessedImports")
-
-    val currentlyAlreadyDone: MutableSet<SingleImport> = mutableSetOf()
-
     //returns false if results are found, true if more searching is needed b/c nothing was found
-    private fun handleImport(import: SingleImport): Boolean {
-        if (currentlyAlreadyDone.contains(import))
-            return true
+    private fun handleImport(import: SingleImport, session: DResolveSession): Boolean {
         if (import.importedModuleName == "")
             throw IllegalArgumentException()
+        if (!session.visit(import))
+            return true
         val startSize = result.size
-        val imports = DPublicImportIndex.recursivelyGetAllPublicImports(import)
-        if (import.applicableImportBinds.size == 0) {
-            result.addAll(DTopLevelDeclarationIndex.getTopLevelSymbols(start.name, import.importedModuleName, project))
-        } else {
-            //todo this can be done better:
-            val bindDecls = import.applicableImportBinds.flatMap { DTopLevelDeclarationIndex.getTopLevelSymbols(it, import.importedModuleName, project) }
-            if (!bindDecls.filter { it.name == start.name }.isEmpty()) {
-                result.addAll(bindDecls.filter { it.name == start.name })
-                return false
+        if (!processImportedModule(import, session))
+            return false
+        // the public imports are transitively closed already, so every module is handled once from here
+        for (publiclyImported in session.publicImportsOf(import)) {
+            ProgressManager.checkCanceled()
+            if (session.visit(publiclyImported)) {
+                processImportedModule(publiclyImported, session)
             }
-            val bindDeclsMembers = import.applicableImportBinds.flatMap { DMembersIndex.getMemberSymbols(it, import.importedModuleName, project) }
-            if (!bindDeclsMembers.filter { it.name == start.name }.isEmpty()) {
-                result.addAll(bindDeclsMembers.filter { it.name == start.name })
-                return false
-            }
-        }
-        currentlyAlreadyDone.add(import)//needs to be before for imports loop in case of an infinite import loop
-        for (recursivelyImported in imports) {
-            handleImport(recursivelyImported)
         }
         return result.size == startSize
     }
 
+    //returns false if one of the symbols bound by the import matched
+    private fun processImportedModule(import: SingleImport, session: DResolveSession): Boolean {
+        session.indexQuery()
+        if (import.applicableImportBinds.isEmpty()) {
+            result.addAll(DTopLevelDeclarationIndex.getTopLevelSymbols(start.name, import.importedModuleName, project))
+            return true
+        }
+        //todo this can be done better:
+        val bindDecls = import.applicableImportBinds.flatMap { DTopLevelDeclarationIndex.getTopLevelSymbols(it, import.importedModuleName, project) }
+        if (!bindDecls.filter { it.name == start.name }.isEmpty()) {
+            result.addAll(bindDecls.filter { it.name == start.name })
+            return false
+        }
+        session.indexQuery()
+        val bindDeclsMembers = import.applicableImportBinds.flatMap { DMembersIndex.getMemberSymbols(it, import.importedModuleName, project) }
+        if (!bindDeclsMembers.filter { it.name == start.name }.isEmpty()) {
+            result.addAll(bindDeclsMembers.filter { it.name == start.name })
+            return false
+        }
+        return true
+    }
+
     private fun getMembersOfBind(resolveResult: DNamedElement) {
         for (member: NamedStubBase<*> in (resolveResult as io.github.intellij.dlanguage.psi.interfaces.HasMembers<*>).members) {
             if (member.name == start.name) {
@@ -0,0 +1,99 @@
+package io.github.intellij.dlanguage.codeinsight
+
+import com.intellij.codeInsight.completion.CompletionParameters
+import com.intellij.codeInsight.completion.CompletionProvider
+import com.intellij.codeInsight.completion.CompletionResultSet
+import com.intellij.codeInsight.lookup.LookupElement
+import com.intellij.codeInsight.lookup.LookupElementBuilder
+import com.intellij.psi.PsiElement
+import com.intellij.psi.PsiFile
+import com.intellij.psi.util.PsiTreeUtil
+import com.intellij.util.ProcessingContext
+import io.github.intellij.dlanguage.utils.FinalSwitchStatement
+import io.github.intellij.dlanguage.utils.FunctionBody
+import io.github.intellij.dlanguage.utils.ImportDeclaration
+import io.github.intellij.dlanguage.utils.ModuleDeclaration
+import io.github.intellij.dlanguage.utils.Parameters
+import io.github.intellij.dlanguage.utils.StructBody
+import io.github.intellij.dlanguage.utils.SwitchStatement
+import io.github.intellij.dlanguage.utils.TemplateParameters
+
+/**
+ * Keyword completion. The lookup elements are built once per kind of place a keyword can go, and the place being
+ * completed is told from the token before it and the nearest enclosing body, so that `case` is only offered in a
+ * switch and statements aren't offered inside expressions.
+ */
+class DKeywordCompletionProvider : CompletionProvider<CompletionParameters>() {
+
+    enum class Place { NONE, DECLARATION, PARAMETER, STATEMENT, EXPRESSION }
+
+    override fun addCompletions(parameters: CompletionParameters, context: ProcessingContext, result: CompletionResultSet) {
+        val position = parameters.position
+        when (classify(position)) {
+            Place.NONE -> return
+            // only comments may come before the module declaration
+            Place.DECLARATION -> result.addAllElements(if (PsiTreeUtil.prevCodeLeaf(position) == null) FIRST_DECLARATION else DECLARATION)
+            Place.PARAMETER -> result.addAllElements(PARAMETER)
+            Place.STATEMENT -> {
+                result.addAllElements(STATEMENT)
+                if (PsiTreeUtil.getParentOfType(position, SwitchStatement::class.java, FinalSwitchStatement::class.java) != null) {
+                    result.addAllElements(SWITCH)
+                }
+            }
+            Place.EXPRESSION -> result.addAllElements(EXPRESSION)
+        }
+    }
+
+    companion object {
+        private val BASIC_TYPES = listOf("bool", "byte", "ubyte", "short", "ushort", "int", "uint", "long", "ulong",
+            "cent", "ucent", "char", "wchar", "dchar", "float", "double", "real", "ifloat", "idouble", "ireal", "cfloat",
+            "cdouble", "creal", "void")
+        private val TYPE_CONSTRUCTORS = listOf("const", "immutable", "inout", "shared")
+        private val EXPRESSION_KEYWORDS = listOf("null", "true", "false", "this", "super", "new", "cast", "typeof",
+            "typeid", "is", "assert", "delegate", "function", "mixin", "import", "__traits", "__vector", "__FILE__",
+            "__FILE_FULL_PATH__", "__MODULE__", "__LINE__", "__FUNCTION__", "__PRETTY_FUNCTION__")
+        private val STATEMENT_KEYWORDS = listOf("if", "else", "while", "do", "for", "foreach", "foreach_reverse",
+            "switch", "final", "return", "break", "continue", "goto", "with", "synchronized", "try", "catch", "finally",
+            "throw", "scope", "asm", "pragma", "static", "auto", "alias", "enum", "struct", "class", "union",
+            "interface", "version", "debug", "__gshared")
+        private val DECLARATION_KEYWORDS = listOf("import", "alias", "class", "struct", "union", "interface", "enum",
+            "template", "mixin", "static", "public", "private", "protected", "package", "export", "extern", "abstract",
+            "final", "override", "synchronized", "deprecated", "align", "pragma", "version", "debug", "unittest",
+            "invariant", "this", "auto", "scope", "nothrow", "pure", "ref", "__gshared")
+        private val PARAMETER_KEYWORDS = listOf("in", "out", "ref", "lazy", "scope", "return", "auto", "alias")
+
+        private val DECLARATION = lookupElements(DECLARATION_KEYWORDS, TYPE_CONSTRUCTORS, BASIC_TYPES)
+        private val FIRST_DECLARATION = lookupElements(listOf("module"), DECLARATION_KEYWORDS, TYPE_CONSTRUCTORS, BASIC_TYPES)
+        private val PARAMETER = lookupElements(PARAMETER_KEYWORDS, TYPE_CONSTRUCTORS, BASIC_TYPES)
+        private val STATEMENT = lookupElements(STATEMENT_KEYWORDS, EXPRESSION_KEYWORDS, TYPE_CONSTRUCTORS, BASIC_TYPES)
+        private val EXPRESSION = lookupElements(EXPRESSION_KEYWORDS, TYPE_CONSTRUCTORS, BASIC_TYPES)
+        private val SWITCH = lookupElements(listOf("case", "default"))
+
+        /** tokens after which a statement starts */
+        private val STATEMENT_STARTS = setOf("{", "}", ";", ":", ")", "else", "do", "try", "finally")
+
+        private fun lookupElements(vararg keywords: List<String>): List<LookupElement> =
+            keywords.flatMap { it }.distinct().map { LookupElementBuilder.create(it).bold() }
+
+        /**
+         * Tells what can be written at [position] from the token before it and its nearest enclosing body, without
+         * relying on the (often broken) tree of the statement being typed.
+         */
+        fun classify(position: PsiElement): Place {
+            val previous = PsiTreeUtil.prevVisibleLeaf(position)
+            if (previous?.text == ".") return Place.NONE
+            var parent: PsiElement? = position.parent
+            while (parent != null && parent !is PsiFile) {
+                when (parent) {
+                    is ImportDeclaration, is ModuleDeclaration -> return Place.NONE
+                    is Parameters, is TemplateParameters -> return Place.PARAMETER
+                    is StructBody -> return Place.DECLARATION
+                    is FunctionBody ->
+                        return if (previous == null || previous.text in STATEMENT_STARTS) Place.STATEMENT else Place.EXPRESSION
+                }
+                parent = parent.parent
+            }
+            return Place.DECLARATION
+        }
+    }
+}
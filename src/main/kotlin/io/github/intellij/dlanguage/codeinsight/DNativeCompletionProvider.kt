@@ -0,0 +1,68 @@
+package io.github.intellij.dlanguage.codeinsight
+
+import com.intellij.codeInsight.completion.CompletionParameters
+import com.intellij.codeInsight.completion.CompletionProvider
+import com.intellij.codeInsight.completion.CompletionResultSet
+import com.intellij.codeInsight.lookup.LookupElementBuilder
+import com.intellij.ide.util.PropertiesComponent
+import com.intellij.openapi.progress.ProgressManager
+import com.intellij.psi.ResolveState
+import com.intellij.psi.stubs.StubIndex
+import com.intellij.psi.util.PsiTreeUtil
+import com.intellij.util.ProcessingContext
+import io.github.intellij.dlanguage.processors.DCompletionProcessor
+import io.github.intellij.dlanguage.resolve.processors.basic.BasicResolve
+import io.github.intellij.dlanguage.stubs.index.DTopLevelDeclarationsByModule
+import io.github.intellij.dlanguage.utils.Identifier
+import io.github.intellij.dlanguage.utils.IdentifierChain
+import io.github.intellij.dlanguage.utils.ImportDeclaration
+import io.github.intellij.dlanguage.utils.ModuleDeclaration
+
+/**
+ * Native (DCD-less) completion, enabled by the `USE_NATIVE_CODE_COMPLETION` setting.
+ *
+ * Variants are pushed into the result set as they are found, cheapest source first (enclosing scopes and their
+ * imports, object.d, then module names from the index), so the popup fills in while the index is still
+ * being scanned. Only names matching the prefix become lookup elements, and the walk stops as soon as the result set
+ * is stopped or the completion is cancelled.
+ */
+class DNativeCompletionProvider : CompletionProvider<CompletionParameters>() {
+
+    override fun addCompletions(parameters: CompletionParameters, context: ProcessingContext, result: CompletionResultSet) {
+        if (!PropertiesComponent.getInstance().getBoolean("USE_NATIVE_CODE_COMPLETION")) return
+
+        val identifier = PsiTreeUtil.getParentOfType(parameters.position, Identifier::class.java, false) ?: return
+        val matcher = result.prefixMatcher
+        val added = HashSet<String>()
+        val consumer: (String) -> Boolean = { text ->
+            ProgressManager.checkCanceled()
+            if (matcher.prefixMatches(text) && added.add(text)) {
+                result.addElement(LookupElementBuilder.create(text))
+            }
+            !result.isStopped
+        }
+
+        if (PsiTreeUtil.getParentOfType(identifier, ImportDeclaration::class.java, ModuleDeclaration::class.java) != null) {
+            addModuleVariants(identifier, consumer)
+            return
+        }
+        if (!PsiTreeUtil.treeWalkUp(DCompletionProcessor(consumer), identifier, identifier.containingFile, ResolveState.initial()))
+            return
+        val objectSymbols = BasicResolve.getInstance(identifier.project).objectSymbols
+        if (objectSymbols != null && !objectSymbols.names.all(consumer))
+            return
+        StubIndex.getInstance().processAllKeys(DTopLevelDeclarationsByModule.KEY, identifier.project) { consumer(it) }
+    }
+
+    /**
+     * Completes the next part of a module name in an import or module declaration: with `std.algo` typed, the
+     * modules named `std.algo...` are offered as `algo...`.
+     */
+    private fun addModuleVariants(identifier: Identifier, consumer: (String) -> Boolean) {
+        val chain = identifier.parent as? IdentifierChain
+        val qualifier = chain?.identifiers?.takeWhile { it != identifier }?.joinToString("") { it.name + "." } ?: ""
+        StubIndex.getInstance().processAllKeys(DTopLevelDeclarationsByModule.KEY, identifier.project) { module ->
+            !module.startsWith(qualifier) || consumer(module.removePrefix(qualifier))
+        }
+    }
+}
@@ -3,7 +3,6 @@ package io.github.intellij.dlanguage.inspections
 import com.intellij.codeInsight.intention.HighPriorityAction
 import com.intellij.codeInspection.*
 import com.intellij.openapi.application.ApplicationManager
-import com.intellij.openapi.diagnostic.Logger
 import com.intellij.openapi.module.ModuleUtilCore
 import com.intellij.openapi.project.Project
 import com.intellij.openapi.projectRoots.ProjectJdkTable
@@ -16,6 +15,7 @@ import com.intellij.psi.util.PsiTreeUtil
 import io.github.intellij.dlanguage.DlangBundle
 import io.github.intellij.dlanguage.psi.DlangVisitor
 import io.github.intellij.dlanguage.psi.impl.named.DlangIdentifierImpl
+import io.github.intellij.dlanguage.resolve.DFileResolver
 import io.github.intellij.dlanguage.resolve.DResolveUtil
 import io.github.intellij.dlanguage.resolve.SpecialCaseResolve
 import io.github.intellij.dlanguage.utils.Identifier
@@ -38,10 +38,8 @@ fun symbolIsDefinedByDefault(identifier: Identifier): Boolean {
 class PossiblyUndefinedSymbol : LocalInspectionTool() {
     class UndefinedSymbolVisitor(val holder: ProblemsHolder) : DlangVisitor() {
         private val objectDotDContents = setOf("string", "size_t", "ptrdiff_t", "_d_newclass", "rt_finalize", "object", "sizediff_t", "hash_t", "equals_t", "wstring", "dstring", "selector", "Object", "toString", "toHash", "opCmp", "opEquals", "Monitor", "lock", "unlock", "factory", "opEquals", "_d_setSameMutex", "setSameMutex", "Interface", "classinfo", "vtbl", "offset", "OffsetTypeInfo", "ti", "TypeInfo", "getHash", "equals", "compare", "tsize", "swap", "next", "initializer", "init", "flags", "offTi", "destroy", "postblit", "talign", "argTypes", "rtInfo", "TypeInfo_Typedef", "base", "name", "m_init", "TypeInfo_Enum", "TypeInfo_Pointer", "m_next", "TypeInfo_Array", "TypeInfo_StaticArray", "value", "len", "TypeInfo_AssociativeArray", "value", "key", "TypeInfo_Vector", "TypeInfo_Function", "deco", "TypeInfo_Delegate", "TypeInfo_Class", "interfaces", "ClassFlags", "classInvariant", "m_flags", "deallocator", "m_offTi", "defaultConstructor", "m_RTInfo", "find", "create", "ClassInfo", "TypeInfo_Interface", "TypeInfo_Struct", "xtoHash", "xopEquals", "xopCmp", "xtoString", "StructFlags", "hasPointers", "isDynamicType", "m_flags", "xdtor", "xdtorti", "xpostblit", "m_align", "TypeInfo_Tuple", "elements", "TypeInfo_Invariant", "TypeInfo_Const", "TypeInfo_Shared", "TypeInfo_Inout", "MIctorstart", "MIctordone", "MIstandalone", "MItlsctor", "MItlsdtor", "MIctor", "MIdtor", "MIxgetMembers", "MIictor", "MIunitTest", "MIimportedModules", "MIlocalClasses", "MIname", "ModuleInfo", "_flags", "_index", "opAssign", "ctor", "dtor", "ictor", "Throwable", "TraceInfo", "Exception", "Error")//todo this isn't all public symbols in object.d, and this is probably not the best way of detecting if runtime is not configured
-        private val log: Logger = Logger.getInstance(this::class.java)
 
         override fun visitIdentifier(identifier: DlangIdentifierImpl) {
-            val start = System.currentTimeMillis()
             if (DResolveUtil.getInstance(identifier.project).shouldNotResolveToAnything(identifier)) {
                 return
             }
@@ -52,7 +50,7 @@ class PossiblyUndefinedSymbol : LocalInspectionTool() {
 //            } else if (BasicResolve.findDefinitionNode(identifier.project, identifier).isEmpty() && !symbolIsDefinedByDefault(identifier)) {
 //                holder.registerProblem(identifier, "Possibly undefined symbol")
 //            }
-            if (DResolveUtil.getInstance(identifier.project).findDefinitionNode(identifier, false).isEmpty() && !symbolIsDefinedByDefault(identifier)) {
+            if (DFileResolver.resolve(identifier).isEmpty() && !symbolIsDefinedByDefault(identifier)) {
 
                 if (objectDotDContents.contains(identifier.name))
                     holder.registerProblem(identifier, "Possibly undefined symbol - SDK not setup", SetupSDK(identifier.containingFile))
@@ -61,11 +59,6 @@ class PossiblyUndefinedSymbol : LocalInspectionTool() {
                 else
                     holder.registerProblem(identifier, "Possibly undefined symbol")//todo add quick fix
             }
-            val end = System.currentTimeMillis()
-            if (end - start > 50) {
-                log.info("resolve took a while" + (end - start))
-                DResolveUtil.getInstance(identifier.project).findDefinitionNode(identifier, true)
-            }
         }
     }
 
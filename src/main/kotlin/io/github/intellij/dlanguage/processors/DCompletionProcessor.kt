@@ -1,21 +1,25 @@
 package io.github.intellij.dlanguage.processors
 
+import com.intellij.openapi.progress.ProgressManager
 import com.intellij.openapi.util.Key
 import com.intellij.psi.PsiElement
 import com.intellij.psi.ResolveState
 import com.intellij.psi.scope.PsiScopeProcessor
+import com.intellij.psi.search.GlobalSearchScope
+import com.intellij.psi.stubs.StubIndex
 import io.github.intellij.dlanguage.psi.interfaces.DNamedElement
 import io.github.intellij.dlanguage.stubs.index.DTopLevelDeclarationsByModule
 import io.github.intellij.dlanguage.utils.FunctionDeclaration
+import io.github.intellij.dlanguage.utils.ModuleDeclaration
 import io.github.intellij.dlanguage.utils.SingleImport
 
 /**
  * Created by francis on 6/17/2017.
+ *
+ * Hands the completion text of every symbol visible from the place of a tree walk to [consumer] as soon as it is
+ * found, the walk stops when [consumer] returns false.
  */
-
-class DCompletionProcessor : PsiScopeProcessor {
-
-    val completions: MutableSet<String> = mutableSetOf()//todo a list might improve performance
+class DCompletionProcessor(private val consumer: (String) -> Boolean) : PsiScopeProcessor {
 
     override fun handleEvent(event: PsiScopeProcessor.Event, associated: Any?) {
         return
@@ -26,17 +30,24 @@ class DCompletionProcessor : PsiScopeProcessor {
     }
 
     override fun execute(element: PsiElement, state: ResolveState): Boolean {
-        if (element is DNamedElement) {
-            if (element is FunctionDeclaration) {
-                completions.add(element.name + "(" + ")")
-            } else
-                completions.add(element.name)
+        ProgressManager.checkCanceled()
+        if (element is SingleImport) {
+            if (element.applicableImportBinds.isEmpty()) {
+                val project = element.project
+                return StubIndex.getInstance().processElements(DTopLevelDeclarationsByModule.KEY, element.importedModuleName, project,
+                    GlobalSearchScope.allScope(project), DNamedElement::class.java) { consumer(completionText(it)) }
+            }
+            return DTopLevelDeclarationsByModule.getSymbolsFromImport(element).all { consumer(completionText(it)) }
         }
-        if(element is SingleImport){
-            completions.addAll(DTopLevelDeclarationsByModule.getSymbolsFromImport(element).map { if (it is FunctionDeclaration) it.name + "()" else it.name })
+        // module names are completed from the index
+        if (element is DNamedElement && element !is ModuleDeclaration) {
+            return consumer(completionText(element))
         }
         return true
     }
 
-
+    companion object {
+        fun completionText(element: DNamedElement): String =
+            if (element is FunctionDeclaration) element.name + "()" else element.name
+    }
 }
@@ -26,7 +26,11 @@ data class DubPackage(
     val sourcesDirs: List<String>, // importPaths
     val resources: List<String>, // stringImportPaths
     val sourceFiles: List<String>,
-    val stringImportFiles: List<String>
+    val stringImportFiles: List<String>,
+    // build settings of the configuration dub describe was run for
+    val versions: List<String> = emptyList(),
+    val debugVersions: List<String> = emptyList(),
+    val dflags: List<String> = emptyList()
 ) : Dependency {
     override fun getDisplayName(): String = "$name-$version"
 }
@@ -1,23 +1,15 @@
 package io.github.intellij.dlanguage.psi.references
 
-import com.intellij.ide.util.PropertiesComponent
 import com.intellij.openapi.diagnostic.Logger
-import com.intellij.openapi.project.Project
 import com.intellij.openapi.util.TextRange
 import com.intellij.psi.*
-import com.intellij.psi.search.GlobalSearchScope
-import com.intellij.psi.stubs.StubIndex
-import com.intellij.psi.util.PsiTreeUtil
+import com.intellij.psi.impl.source.resolve.ResolveCache
 import com.intellij.util.IncorrectOperationException
-import io.github.intellij.dlanguage.processors.DCompletionProcessor
-import io.github.intellij.dlanguage.psi.DlangFile
-import io.github.intellij.dlanguage.psi.interfaces.DNamedElement
 import io.github.intellij.dlanguage.psi.named.DlangIdentifier
+import io.github.intellij.dlanguage.resolve.DFileResolver
+import io.github.intellij.dlanguage.resolve.DResolveMetrics
 import io.github.intellij.dlanguage.resolve.DResolveUtil
-import io.github.intellij.dlanguage.resolve.processors.basic.BasicResolve
-import io.github.intellij.dlanguage.stubs.index.DTopLevelDeclarationsByModule
-import io.github.intellij.dlanguage.utils.*
-import java.util.*
+import io.github.intellij.dlanguage.utils.Identifier
 
 
 /**
@@ -50,13 +42,9 @@ class DReference(element: PsiNamedElement, textRange: TextRange) : PsiReferenceB
 
 
         val project = myElement.project
-        val namedElements = DResolveUtil.getInstance(project).findDefinitionNode(myElement, false).map { if (it is PsiNameIdentifierOwner && it !is ModuleDeclaration && it !is SingleImport) if (it.nameIdentifier != null) it.nameIdentifier!! else it else it }
-        val results = mutableListOf<PsiElementResolveResult>()
-        for (property in namedElements) {
-            results.add(PsiElementResolveResult(property))
+        return DResolveMetrics.getInstance(project).lookup {
+            ResolveCache.getInstance(project).resolveWithCaching(this, Resolver, true, incompleteCode)
         }
-//        DirectoryIndex.getInstance(project).getDirectoriesByPackageName()
-        return results.toTypedArray()
     }
 
     /**
@@ -70,190 +58,15 @@ class DReference(element: PsiNamedElement, textRange: TextRange) : PsiReferenceB
     val log = Logger.getInstance(this::class.java)
 
     /**
-     * Controls what names that get added to the autocompletion popup available
-     * on ctrl-space.
+     * Completion variants are provided by [io.github.intellij.dlanguage.codeinsight.DNativeCompletionProvider] (and
+     * DCD), which stream them into the result set instead of returning them all at once.
      */
-    override fun getVariants(): Array<Any> {
-
-        if(!PropertiesComponent.getInstance().getBoolean("USE_NATIVE_CODE_COMPLETION")) return EMPTY_ARRAY
-
-        val project = myElement.project
-        val result = Collections.synchronizedList(ArrayList<String>())
-        //todo a lot of these would be best implemented with a completion contributor
-        addSymbolsFromFile(result)
-        addSymbolsFromImports(project, result)
-        addDRuntimeSymbols(project, result)
-        val inImportOrModuleDeclaration: Boolean = PsiTreeUtil.getParentOfType(element, ImportDeclaration::class.java, ModuleDeclaration::class.java) != null
-        if (!inImportOrModuleDeclaration) {
-            addAllModules(result, project)
-        } else {
-            addModuleVariants(result, element)
-        }
-        addKeywords(result)
-        return result.toTypedArray()
-    }
-
-    private fun addModuleVariants(result: MutableList<String>, element: PsiNamedElement) {
-        val moduleSoFar: IdentifierChain
-        if (element is SingleImport) {
-            moduleSoFar = element.identifierChain!!
-        } else {
-            if (element.parent is IdentifierChain)
-                moduleSoFar = element.parent as IdentifierChain
-            else {
-                return
-            }
-        }
-        val moduleNameSoFar: String = moduleSoFar.text.replace(".IntellijIdeaRulezzz", "")
-        val matchingModules = StubIndex.getInstance().getAllKeys(DTopLevelDeclarationsByModule.KEY, element.project).filter { it.startsWith(moduleNameSoFar) }
-        val suggestedCompletions = matchingModules.map { it.removePrefix(moduleNameSoFar + ".") }
-        result += suggestedCompletions
-
-    }
-
-    private fun addSymbolsFromImports(project: Project, result: MutableList<String>) {
-        val decls = StubIndex.getElements(DTopLevelDeclarationsByModule.KEY, (element.containingFile as DlangFile).moduleOrFileName, project, GlobalSearchScope.fileScope(element.containingFile), DNamedElement::class.java)
-        for (decl in decls) {
-            if (decl is FunctionDeclaration) {
-                result.add(decl.name + "(" + ")")
-            } else
-                result.add(decl.name)
-        }
-    }
-
-    private fun addSymbolsFromFile(result: MutableList<String>) {
-        val completionProcessor = DCompletionProcessor()
-        PsiTreeUtil.treeWalkUp(completionProcessor, myElement, myElement.containingFile, ResolveState.initial())
-        val elementsWithModuleNames = completionProcessor.completions
-        elementsWithModuleNames.removeAll(HashSet(StubIndex.getInstance().getAllKeys(DTopLevelDeclarationsByModule.KEY, myElement.project)))//this should be fixed in the index getSymbolsFromImports
-        result.addAll(elementsWithModuleNames)//todo this could be more efficiently implemented
-    }
-
-    private fun addKeywords(result: MutableList<String>) {
-        result.add("abstract")
-        result.add("alias")
-        result.add("align")
-        result.add("asm")
-        result.add("assert")
-        result.add("auto")
-        result.add("body")
-        result.add("bool")
-        result.add("break")
-        result.add("byte")
-        result.add("case")
-        result.add("cast")
-        result.add("catch")
-        result.add("cdouble")
-        result.add("cent")
-        result.add("cfloat")
-        result.add("char")
-        result.add("class")
-        result.add("const")
-        result.add("continue")
-        result.add("creal")
-        result.add("dchar")
-        result.add("debug")
-        result.add("default")
-        result.add("delegate")
-        result.add("delete")
-        result.add("deprecated")
-        result.add("do")
-        result.add("double")
-        result.add("else")
-        result.add("enum")
-        result.add("export")
-        result.add("extern")
-        result.add("false")
-        result.add("final")
-        result.add("finally")
-        result.add("float")
-        result.add("for")
-        result.add("foreach")
-        result.add("foreach_reverse")
-        result.add("function")
-        result.add("goto")
-        result.add("idouble")
-        result.add("if")
-        result.add("ifloat")
-        result.add("immutable")
-        result.add("import")
-        result.add("in")
-        result.add("inout")
-        result.add("int")
-        result.add("interface")
-        result.add("invariant")
-        result.add("ireal")
-        result.add("is")
-        result.add("lazy")
-        result.add("long")
-        result.add("mixin")
-        result.add("module")
-        result.add("new")
-        result.add("nothrow")
-        result.add("null")
-        result.add("out")
-        result.add("override")
-        result.add("package")
-        result.add("pragma")
-        result.add("private")
-        result.add("protected")
-        result.add("public")
-        result.add("pure")
-        result.add("real")
-        result.add("ref")
-        result.add("return")
-        result.add("scope")
-        result.add("shared")
-        result.add("short")
-        result.add("static")
-        result.add("struct")
-        result.add("super")
-        result.add("switch")
-        result.add("synchronized")
-        result.add("template")
-        result.add("this")
-        result.add("throw")
-        result.add("true")
-        result.add("try")
-        result.add("typedef")
-        result.add("typeid")
-        result.add("typeof")
-        result.add("ubyte")
-        result.add("ucent")
-        result.add("uint")
-        result.add("ulong")
-        result.add("union")
-        result.add("unittest")
-        result.add("ushort")
-        result.add("version")
-        result.add("void")
-        result.add("volatile")
-        result.add("wchar")
-        result.add("while")
-        result.add("with")
-        result.add("__FILE__")
-        result.add("__FILE_FULL_PATH__")
-        result.add("__MODULE__")
-        result.add("__LINE__")
-        result.add("__FUNCTION__")
-        result.add("__PRETTY_FUNCTION__")
-        result.add("__gshared")
-        result.add("__traits")
-        result.add("__vector")
-        result.add("__parameters")
-    }
-
-    private fun addDRuntimeSymbols(project: Project, result: MutableList<String>) {
-        val objectDotD = BasicResolve.getInstance(project).`object`
-        if (objectDotD != null) {
-            result.addAll(StubIndex.getElements(DTopLevelDeclarationsByModule.KEY, objectDotD.moduleOrFileName, project, GlobalSearchScope.fileScope(objectDotD), DNamedElement::class.java).map { it.name })
-        }
-    }
-
-    private fun addAllModules(result: MutableList<String>, project: Project) {
-        result.addAll(StubIndex.getInstance().getAllKeys(DTopLevelDeclarationsByModule.KEY, project))
-    }
+    override fun getVariants(): Array<Any> = EMPTY_ARRAY
 
+    /**
+     * The whole element as it is now rather than the range given at creation: identifiers keep their reference while
+     * their text changes.
+     */
     override fun getRangeInElement(): TextRange {
         return TextRange(0, this.element.node.textLength)
     }
@@ -271,6 +84,22 @@ class DReference(element: PsiNamedElement, textRange: TextRange) : PsiReferenceB
         return super.handleElementRename(newName)
     }
 
+    /**
+     * Computes the results cached by [ResolveCache]. The cache is dropped on every PSI change, so every reference is
+     * resolved at most once per modification no matter how many annotators and inspections ask for it. An identifier
+     * of a file [DFileResolver] already resolved as a whole takes the result of that pass.
+     */
+    private object Resolver : ResolveCache.PolyVariantResolver<DReference> {
+        override fun resolve(ref: DReference, incompleteCode: Boolean): Array<ResolveResult> {
+            val element = ref.element
+            val declarations = (element as? Identifier)?.let { DFileResolver.cached(it) }
+                ?: DResolveUtil.getInstance(element.project).findDefinitionNode(element)
+            return declarations
+                .map { DResolveResult(it) }
+                .toTypedArray()
+        }
+    }
+
     companion object {
         val EMPTY_RESOLVE_RESULT = arrayOfNulls<ResolveResult>(0)
         val EMPTY_ARRAY = emptyArray<Any>()
@@ -0,0 +1,29 @@
+package io.github.intellij.dlanguage.psi.references
+
+import com.intellij.psi.PsiElement
+import com.intellij.psi.PsiNameIdentifierOwner
+import com.intellij.psi.PsiNamedElement
+import com.intellij.psi.ResolveResult
+import io.github.intellij.dlanguage.utils.ModuleDeclaration
+import io.github.intellij.dlanguage.utils.SingleImport
+
+/**
+ * Result of resolving a [DReference].
+ *
+ * Keeps the declaration found by the resolver so that callers which only care about the declaration (annotators,
+ * inspections) can use it directly. The name identifier exposed through [getElement] is looked up lazily because doing
+ * so needs the AST of the declaring file.
+ */
+class DResolveResult(val declaration: PsiNamedElement) : ResolveResult {
+
+    private val target: PsiElement by lazy {
+        if (declaration is PsiNameIdentifierOwner && declaration !is ModuleDeclaration && declaration !is SingleImport)
+            declaration.nameIdentifier ?: declaration
+        else
+            declaration
+    }
+
+    override fun getElement(): PsiElement = target
+
+    override fun isValidResult(): Boolean = true
+}
@@ -0,0 +1,69 @@
+package io.github.intellij.dlanguage.resolve
+
+import com.intellij.openapi.progress.ProgressManager
+import com.intellij.openapi.util.Key
+import com.intellij.psi.PsiElement
+import com.intellij.psi.PsiFile
+import com.intellij.psi.PsiNamedElement
+import com.intellij.psi.PsiRecursiveElementWalkingVisitor
+import com.intellij.psi.impl.source.resolve.ResolveCache
+import com.intellij.psi.util.CachedValue
+import com.intellij.psi.util.CachedValueProvider
+import com.intellij.psi.util.CachedValuesManager
+import com.intellij.psi.util.PsiModificationTracker
+import io.github.intellij.dlanguage.psi.references.DReference
+import io.github.intellij.dlanguage.psi.references.DResolveResult
+import io.github.intellij.dlanguage.resolve.processors.DResolveSession
+import io.github.intellij.dlanguage.utils.Identifier
+
+/**
+ * Resolves every identifier of a file in one pass, for the consumers that need all of them anyway (highlighting
+ * annotator, undefined symbol inspection).
+ *
+ * The pass shares the scope symbol tables and the public import closures between identifiers, and its results are
+ * kept on the file until the next PSI change. They are not a cache of their own: [DReference] takes the result of an
+ * identifier from the pass when there is one, so [ResolveCache] holds it like any other resolve and a highlighting
+ * run resolves each identifier once, whoever asks first.
+ */
+object DFileResolver {
+
+    private val RESULTS_KEY: Key<CachedValue<Map<Identifier, Set<PsiNamedElement>>>> = Key.create("d.file.resolve.results")
+
+    fun resolve(identifier: Identifier): Set<PsiNamedElement> {
+        val reference = identifier.reference as? DReference
+            ?: return DResolveUtil.getInstance(identifier.project).findDefinitionNode(identifier)
+        results(identifier.containingFile)
+        return reference.multiResolve(false).mapTo(LinkedHashSet()) { (it as DResolveResult).declaration }
+    }
+
+    fun results(file: PsiFile): Map<Identifier, Set<PsiNamedElement>> =
+        CachedValuesManager.getManager(file.project).getCachedValue(file, RESULTS_KEY, {
+            // other files' declarations are part of the results, so any PSI change invalidates them
+            CachedValueProvider.Result.create(resolveAll(file), PsiModificationTracker.MODIFICATION_COUNT)
+        }, false)
+
+    /**
+     * The result of [identifier] if its file was resolved since the last PSI change, without resolving anything.
+     */
+    internal fun cached(identifier: Identifier): Set<PsiNamedElement>? {
+        val results = identifier.containingFile?.getUserData(RESULTS_KEY) ?: return null
+        return if (results.hasUpToDateValue()) results.value[identifier] else null
+    }
+
+    private fun resolveAll(file: PsiFile): Map<Identifier, Set<PsiNamedElement>> {
+        val resolveUtil = DResolveUtil.getInstance(file.project)
+        val results = HashMap<Identifier, Set<PsiNamedElement>>()
+        val session = DResolveSession()
+        file.accept(object : PsiRecursiveElementWalkingVisitor() {
+            override fun visitElement(element: PsiElement) {
+                ProgressManager.checkCanceled()
+                // declaration names and built in identifiers resolve to nothing without a lookup, no need to keep them
+                if (element is Identifier && !resolveUtil.shouldNotResolveToAnything(element)) {
+                    results[element] = resolveUtil.findDefinitionNode(element, session.next())
+                }
+                super.visitElement(element)
+            }
+        })
+        return results
+    }
+}
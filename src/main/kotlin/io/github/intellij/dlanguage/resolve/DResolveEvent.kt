@@ -0,0 +1,36 @@
+package io.github.intellij.dlanguage.resolve
+
+import jdk.jfr.Category
+import jdk.jfr.Description
+import jdk.jfr.Event
+import jdk.jfr.Label
+import jdk.jfr.Name
+
+/**
+ * Java Flight Recorder event emitted for every resolve computed by [DResolveUtil], see [DResolveMetrics].
+ */
+@Name("io.github.intellij.dlanguage.Resolve")
+@Label("D Resolve")
+@Category("D Language")
+@Description("Resolution of a D identifier to its declarations")
+class DResolveEvent : Event() {
+    @Label("Name")
+    @JvmField
+    var name: String? = null
+
+    @Label("File")
+    @JvmField
+    var file: String? = null
+
+    @Label("Offset")
+    @JvmField
+    var offset: Int = 0
+
+    @Label("Results")
+    @JvmField
+    var results: Int = 0
+
+    @Label("Index Queries")
+    @JvmField
+    var indexQueries: Int = 0
+}
@@ -0,0 +1,139 @@
+package io.github.intellij.dlanguage.resolve
+
+import com.intellij.openapi.components.ServiceManager
+import com.intellij.openapi.project.Project
+import com.intellij.psi.PsiNamedElement
+import java.util.*
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Resolve statistics of a project: how many resolves are requested and how many actually run, how long they take, how
+ * many index queries they make and which references were the slowest.
+ *
+ * Dumped by [io.github.intellij.dlanguage.actions.DumpResolveMetrics]; every resolve is also reported as a
+ * [DResolveEvent] to Java Flight Recorder.
+ */
+class DResolveMetrics {
+
+    companion object {
+        private const val LATENCY_SAMPLES = 4096
+        private const val SLOWEST_KEPT = 20
+
+        fun getInstance(project: Project): DResolveMetrics = ServiceManager.getService(project, DResolveMetrics::class.java)
+
+        // number of resolves computed on the current thread, used to tell cache hits from misses
+        private val computedOnThread = ThreadLocal.withInitial { LongArray(1) }
+    }
+
+    data class SlowResolve(val name: String, val location: String, val millis: Double, val indexQueries: Int)
+
+    private val lookups = AtomicLong()
+    private val hits = AtomicLong()
+    private val resolves = AtomicLong()
+    private val totalNanos = AtomicLong()
+    private val indexQueries = AtomicLong()
+
+    // guarded by this
+    private val latencies = LongArray(LATENCY_SAMPLES)
+    private var latencyCount = 0
+    private val slowest = PriorityQueue<SlowResolve>(compareBy { it.millis })
+    private var since = System.nanoTime()
+
+    /**
+     * Runs a lookup that may be answered from a cache; it counts as a hit if no resolve ran on this thread meanwhile.
+     */
+    fun <T> lookup(block: () -> T): T {
+        val computed = computedOnThread.get()
+        val before = computed[0]
+        val result = block()
+        lookups.incrementAndGet()
+        if (computed[0] == before) {
+            hits.incrementAndGet()
+        }
+        return result
+    }
+
+    /**
+     * Runs and records an actual resolve of [element]. [queries] is read once [block] is done.
+     */
+    fun <T : Collection<*>> resolve(element: PsiNamedElement, queries: () -> Int, block: () -> T): T {
+        val event = DResolveEvent()
+        event.begin()
+        val start = System.nanoTime()
+        val result = block()
+        val nanos = System.nanoTime() - start
+        event.end()
+        computedOnThread.get()[0]++
+
+        val indexQueryCount = queries()
+        record(element, nanos, indexQueryCount)
+        if (event.shouldCommit()) {
+            event.name = element.name
+            event.file = element.containingFile?.virtualFile?.path
+            event.offset = element.textOffset
+            event.results = result.size
+            event.indexQueries = indexQueryCount
+            event.commit()
+        }
+        return result
+    }
+
+    private fun record(element: PsiNamedElement, nanos: Long, queries: Int) {
+        resolves.incrementAndGet()
+        totalNanos.addAndGet(nanos)
+        indexQueries.addAndGet(queries.toLong())
+        val millis = nanos / 1_000_000.0
+        synchronized(this) {
+            latencies[latencyCount % LATENCY_SAMPLES] = nanos
+            latencyCount++
+            if (slowest.size < SLOWEST_KEPT || slowest.peek().millis < millis) {
+                val file = element.containingFile
+                slowest.add(SlowResolve(element.name ?: "", "${file?.name}:${element.textOffset}", millis, queries))
+                if (slowest.size > SLOWEST_KEPT) {
+                    slowest.poll()
+                }
+            }
+        }
+    }
+
+    fun reset() {
+        synchronized(this) {
+            lookups.set(0)
+            hits.set(0)
+            resolves.set(0)
+            totalNanos.set(0)
+            indexQueries.set(0)
+            latencyCount = 0
+            slowest.clear()
+            since = System.nanoTime()
+        }
+    }
+
+    /**
+     * Human readable summary of everything recorded since the last [reset].
+     */
+    fun report(): String {
+        synchronized(this) {
+            val resolveCount = resolves.get()
+            val seconds = (System.nanoTime() - since) / TimeUnit.SECONDS.toNanos(1).toDouble()
+            val lookupCount = lookups.get()
+            val samples = latencies.copyOf(minOf(latencyCount, LATENCY_SAMPLES)).sorted()
+            val p99 = if (samples.isEmpty()) 0L else samples[((samples.size - 1) * 0.99).toInt()]
+            return buildString {
+                line("Resolves: %d (%.2f/s over %.0fs)", resolveCount, resolveCount / maxOf(seconds, 1.0), seconds)
+                line("Lookups: %d, cache hit ratio: %.1f%%", lookupCount, if (lookupCount == 0L) 0.0 else hits.get() * 100.0 / lookupCount)
+                line("Latency: average %.2fms, p99 %.2fms", if (resolveCount == 0L) 0.0 else totalNanos.get() / resolveCount / 1_000_000.0, p99 / 1_000_000.0)
+                line("Index queries per resolve: %.2f", if (resolveCount == 0L) 0.0 else indexQueries.get().toDouble() / resolveCount)
+                line("Slowest references:")
+                for (slow in slowest.sortedByDescending { it.millis }) {
+                    line("  %s at %s: %.2fms, %d index queries", slow.name, slow.location, slow.millis, slow.indexQueries)
+                }
+            }
+        }
+    }
+
+    /** The same report whatever the default locale, so that it can be compared and parsed. */
+    private fun StringBuilder.line(format: String, vararg args: Any): StringBuilder =
+        append(String.format(Locale.ROOT, format, *args)).append('\n')
+}
@@ -1,31 +1,29 @@
 package io.github.intellij.dlanguage.resolve
 
+import com.intellij.openapi.components.ServiceManager
 import com.intellij.openapi.project.Project
 import com.intellij.psi.PsiElement
 import com.intellij.psi.PsiNamedElement
 import io.github.intellij.dlanguage.psi.DlangTypes.*
+import io.github.intellij.dlanguage.resolve.processors.DResolveSession
 import io.github.intellij.dlanguage.resolve.processors.basic.BasicResolve
 import io.github.intellij.dlanguage.utils.*
 
 /**
  * Created by francis on 5/12/17.
+ *
+ * Project service. Resolve results are cached per reference by [com.intellij.psi.impl.source.resolve.ResolveCache]
+ * (see [io.github.intellij.dlanguage.psi.references.DReference]), so nothing here is kept between calls.
  */
-
-
-class DResolveUtil private constructor(val project: Project) {
-    //also should use a weak  reference or psi file gist
-    //also this won't invalidate if a external file is editted but should
+class DResolveUtil(val project: Project) {
     companion object {
-        private val resolveUtils: MutableMap<Project, DResolveUtil> = mutableMapOf()
-        //
-        fun getInstance(project: Project): DResolveUtil {
-            return resolveUtils.getOrPut(project, { DResolveUtil(project) })
-        }
+        fun getInstance(project: Project): DResolveUtil = ServiceManager.getService(project, DResolveUtil::class.java)
     }
 
 //    private val resolveCache: MutableMap<PsiFile, Pair<Long, MutableMap<PsiNamedElement, Set<PsiNamedElement>>>> = mutableMapOf()
 
-    fun findDefinitionNode(e: PsiNamedElement, profile: Boolean): Set<PsiNamedElement> {
+    @JvmOverloads
+    fun findDefinitionNode(e: PsiNamedElement, session: DResolveSession = DResolveSession()): Set<PsiNamedElement> {
 //        fun invalidateCache(file: PsiFile) {
 //            resolveCache.remove(file)
 //        }
@@ -34,12 +32,12 @@ class DResolveUtil private constructor(val project: Project) {
 //        val oldFileStamp = fileResolveCache.first
 //        if (oldFileStamp != e.containingFile.modificationStamp) {
 //            invalidateCache(e.containingFile)
-        return findDefinitionNodeImpl(e, profile)
+        return DResolveMetrics.getInstance(project).resolve(e, { session.indexQueries }) { findDefinitionNodeImpl(e, session) }
 //        }
-//        return fileResolveCache.second.getOrPut(e, { findDefinitionNodeImpl(e, profile) })
+//        return fileResolveCache.second.getOrPut(e, { findDefinitionNodeImpl(e) })
     }
 
-    fun findDefinitionNodeImpl(e: PsiNamedElement, profile: Boolean): Set<PsiNamedElement> {
+    fun findDefinitionNodeImpl(e: PsiNamedElement, session: DResolveSession = DResolveSession()): Set<PsiNamedElement> {
         if (e !is Identifier) {
             return emptySet()
         }
@@ -48,11 +46,12 @@ class DResolveUtil private constructor(val project: Project) {
             return emptySet()
         }
 
-        if (SpecialCaseResolve.isApplicable(e)) {
-            return SpecialCaseResolve.findDefinitionNode(e)
+        val specialCase = SpecialCaseResolve.resolve(e)
+        if (specialCase != null) {
+            return specialCase
         }
 
-        var basicResolveResult = BasicResolve.getInstance(project, profile).findDefinitionNode(e)
+        var basicResolveResult = BasicResolve.getInstance(project).findDefinitionNode(e, session)
         if(resolvingConstructor(e) == null){
             basicResolveResult = basicResolveResult.filter { it !is Constructor }.toSet()
         } else {
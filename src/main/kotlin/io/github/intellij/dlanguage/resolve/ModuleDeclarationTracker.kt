@@ -0,0 +1,54 @@
+package io.github.intellij.dlanguage.resolve
+
+import com.intellij.openapi.Disposable
+import com.intellij.openapi.components.ServiceManager
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.util.ModificationTracker
+import com.intellij.openapi.util.SimpleModificationTracker
+import com.intellij.psi.PsiElement
+import com.intellij.psi.PsiFile
+import com.intellij.psi.PsiManager
+import com.intellij.psi.PsiTreeChangeAdapter
+import com.intellij.psi.PsiTreeChangeEvent
+import com.intellij.psi.util.PsiTreeUtil
+import io.github.intellij.dlanguage.utils.ModuleDeclaration
+
+/**
+ * Changes when a module declaration of the project changes, is added or is removed, and not on other edits: what
+ * depends on which file declares which module is kept across the edits of the bodies of modules. Files added, removed,
+ * moved or renamed are changes of [com.intellij.openapi.vfs.VirtualFileManager.VFS_STRUCTURE_MODIFICATIONS].
+ */
+class ModuleDeclarationTracker(project: Project) : ModificationTracker, Disposable {
+
+    companion object {
+        fun getInstance(project: Project): ModuleDeclarationTracker =
+            ServiceManager.getService(project, ModuleDeclarationTracker::class.java)
+    }
+
+    private val tracker = SimpleModificationTracker()
+
+    init {
+        PsiManager.getInstance(project).addPsiTreeChangeListener(object : PsiTreeChangeAdapter() {
+            override fun childAdded(event: PsiTreeChangeEvent) = changed(event.parent, event.child)
+
+            override fun childRemoved(event: PsiTreeChangeEvent) = changed(event.parent, event.child)
+
+            override fun childReplaced(event: PsiTreeChangeEvent) = changed(event.parent, event.oldChild, event.newChild)
+
+            override fun childMoved(event: PsiTreeChangeEvent) = changed(event.newParent, event.child)
+        }, this)
+    }
+
+    private fun changed(parent: PsiElement?, vararg children: PsiElement?) {
+        // a module declaration is a child of its file, other children of the file come and go with edits
+        if (children.any { it is ModuleDeclaration || it is PsiFile } ||
+            PsiTreeUtil.getParentOfType(parent, ModuleDeclaration::class.java, false) != null) {
+            tracker.incModificationCount()
+        }
+    }
+
+    override fun getModificationCount(): Long = tracker.modificationCount
+
+    override fun dispose() {
+    }
+}
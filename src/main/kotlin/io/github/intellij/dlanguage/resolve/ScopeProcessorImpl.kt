@@ -42,7 +42,9 @@ object ScopeProcessorImpl {
                             state: ResolveState,
                             lastParent: PsiElement?,
                             place: PsiElement): Boolean {
-        return element.declarations.none { !processDeclaration(it, processor, state, lastParent, place) }
+        return ScopeSymbolTable.processDeclarations(element, processor, state) {
+            element.declarations.none { !processDeclaration(it, processor, state, lastParent, place) }
+        }
     }
 
 
@@ -128,20 +130,22 @@ object ScopeProcessorImpl {
                             state: ResolveState,
                             lastParent: PsiElement,
                             place: PsiElement): Boolean {
-        var toContinue = true
-        if (element.templateParameters != null) {
-            if (!processTemplateParameters(element.templateParameters!!, processor, state, lastParent, place)) {
-                toContinue = false
-            }
-        }
-        if (element.structBody?.declarations != null) {
-            for (declaration in element.structBody?.declarations!!) {
-                if (!processDeclaration(declaration, processor, state, lastParent, place)) {
+        return ScopeSymbolTable.processDeclarations(element, processor, state) {
+            var toContinue = true
+            if (element.templateParameters != null) {
+                if (!processTemplateParameters(element.templateParameters!!, processor, state, lastParent, place)) {
                     toContinue = false
                 }
             }
+            if (element.structBody?.declarations != null) {
+                for (declaration in element.structBody?.declarations!!) {
+                    if (!processDeclaration(declaration, processor, state, lastParent, place)) {
+                        toContinue = false
+                    }
+                }
+            }
+            toContinue
         }
-        return toContinue
     }
 
     @Suppress("UNUSED_PARAMETER")
@@ -150,20 +154,22 @@ object ScopeProcessorImpl {
                             state: ResolveState,
                             lastParent: PsiElement,
                             place: PsiElement): Boolean {
-        var toContinue = true
-        if (element.templateParameters != null) {
-            if (!processTemplateParameters(element.templateParameters!!, processor, state, lastParent, place)) {
-                toContinue = false
-            }
-        }
-        if (element.structBody?.declarations != null) {
-            for (declaration in element.structBody?.declarations!!) {
-                if (!processDeclaration(declaration, processor, state, lastParent, place)) {
+        return ScopeSymbolTable.processDeclarations(element, processor, state) {
+            var toContinue = true
+            if (element.templateParameters != null) {
+                if (!processTemplateParameters(element.templateParameters!!, processor, state, lastParent, place)) {
                     toContinue = false
                 }
             }
+            if (element.structBody?.declarations != null) {
+                for (declaration in element.structBody?.declarations!!) {
+                    if (!processDeclaration(declaration, processor, state, lastParent, place)) {
+                        toContinue = false
+                    }
+                }
+            }
+            toContinue
         }
-        return toContinue
     }
 
     @Suppress("UNUSED_PARAMETER")
@@ -214,18 +220,20 @@ object ScopeProcessorImpl {
                             state: ResolveState,
                             lastParent: PsiElement,
                             place: PsiElement): Boolean {
-        var toContinue = true
-        if (element.templateParameters != null) {
-            if (!processTemplateParameters(element.templateParameters!!, processor, state, lastParent, place)) {
-                toContinue = false
+        return ScopeSymbolTable.processDeclarations(element, processor, state) {
+            var toContinue = true
+            if (element.templateParameters != null) {
+                if (!processTemplateParameters(element.templateParameters!!, processor, state, lastParent, place)) {
+                    toContinue = false
+                }
             }
-        }
-        for (declaration in element.declarations) {
-            if (!processDeclaration(declaration, processor, state, lastParent, place)) {
-                toContinue = false
+            for (declaration in element.declarations) {
+                if (!processDeclaration(declaration, processor, state, lastParent, place)) {
+                    toContinue = false
+                }
             }
+            toContinue
         }
-        return toContinue
     }
 
     @Suppress("UNUSED_PARAMETER")
@@ -234,20 +242,22 @@ object ScopeProcessorImpl {
                             state: ResolveState,
                             lastParent: PsiElement,
                             place: PsiElement): Boolean {
-        var toContinue = true
-        if (element.templateParameters != null) {
-            if (!processTemplateParameters(element.templateParameters!!, processor, state, lastParent, place)) {
-                toContinue = false
-            }
-        }
-        if (element.structBody?.declarations != null) {
-            for (declaration in element.structBody?.declarations!!) {
-                if (!processDeclaration(declaration, processor, state, lastParent, place)) {
+        return ScopeSymbolTable.processDeclarations(element, processor, state) {
+            var toContinue = true
+            if (element.templateParameters != null) {
+                if (!processTemplateParameters(element.templateParameters!!, processor, state, lastParent, place)) {
                     toContinue = false
                 }
             }
+            if (element.structBody?.declarations != null) {
+                for (declaration in element.structBody?.declarations!!) {
+                    if (!processDeclaration(declaration, processor, state, lastParent, place)) {
+                        toContinue = false
+                    }
+                }
+            }
+            toContinue
         }
-        return toContinue
     }
 
     @Suppress("UNUSED_PARAMETER")
@@ -518,9 +528,9 @@ object ScopeProcessorImpl {
                             state: ResolveState,
                             lastParent: PsiElement,
                             place: PsiElement): Boolean {
-        if (!ScopeProcessorImplUtil.processDeclarationsOrStatements(element.declarationOrStatements, processor, state, lastParent, place))
-            return false
-        return true
+        return ScopeSymbolTable.processDeclarations(element, processor, state) {
+            ScopeProcessorImplUtil.processDeclarationsOrStatements(element.declarationOrStatements, processor, state, lastParent, place)
+        }
     }
 
 
@@ -3,6 +3,8 @@ package io.github.intellij.dlanguage.resolve
 import com.intellij.psi.PsiElement
 import com.intellij.psi.ResolveState
 import com.intellij.psi.scope.PsiScopeProcessor
+import com.intellij.psi.stubs.StubElement
+import io.github.intellij.dlanguage.stubs.*
 import io.github.intellij.dlanguage.utils.*
 
 /**
@@ -277,4 +279,48 @@ object ScopeProcessorImplUtil {
         return toContinue
     }
 
+    /**
+     * Stub counterpart of [processDeclaration] for the declarations of a whole file. Used when the AST of the file
+     * isn't loaded, so that looking names up in a file that isn't open doesn't parse it.
+     *
+     * Reports the same declarations: members of aggregates, templates and enums are descended into, function bodies,
+     * unittests, static constructors/destructors and parameters are not.
+     */
+    fun processStubDeclarations(stub: StubElement<*>,
+                                processor: PsiScopeProcessor,
+                                state: ResolveState): Boolean {
+        var toContinue = true
+        for (child in stub.childrenStubs) {
+            when (child) {
+                is DlangInterfaceOrClassStub,
+                is DlangStructDeclarationStub,
+                is DlangUnionDeclarationStub,
+                is DlangTemplateDeclarationStub,
+                is DlangEnumDeclarationStub -> {
+                    if (!processStubDeclarations(child, processor, state)) {
+                        toContinue = false
+                    }
+                    if (!processor.execute(child.psi, state)) {
+                        toContinue = false
+                    }
+                }
+                is DlangFunctionDeclarationStub,
+                is DlangConstructorStub,
+                is DlangEnumMemberStub,
+                is DlangAliasInitializerStub,
+                is DlangDeclaratorStub,
+                is DlangAutoDeclarationPartStub,
+                is DlangSingleImportStub,
+                is DlangEponymousTemplateDeclarationStub,
+                is VersionSpecificationStub,
+                is DlangModuleDeclarationStub -> {
+                    if (!processor.execute(child.psi, state)) {
+                        toContinue = false
+                    }
+                }
+            }
+        }
+        return toContinue
+    }
+
 }
@@ -0,0 +1,90 @@
+package io.github.intellij.dlanguage.resolve
+
+import com.intellij.openapi.util.Key
+import com.intellij.psi.PsiElement
+import com.intellij.psi.PsiNamedElement
+import com.intellij.psi.ResolveState
+import com.intellij.psi.scope.NameHint
+import com.intellij.psi.scope.PsiScopeProcessor
+import com.intellij.psi.util.CachedValue
+import com.intellij.psi.util.CachedValueProvider
+import com.intellij.psi.util.CachedValuesManager
+import io.github.intellij.dlanguage.utils.SingleImport
+
+/**
+ * Name to declarations table of a single scope (module, aggregate body, block or template).
+ *
+ * The table is built by running the scope's own `processDeclarations` once and recording everything it reports, so
+ * a lookup only has to execute the declarations with the requested name plus the imports of the scope instead of
+ * walking every declaration again on each step of a tree walk.
+ */
+class ScopeSymbolTable private constructor(
+    private val declarations: Map<String, List<PsiNamedElement>>,
+    val imports: List<SingleImport>
+) {
+
+    val names: Set<String>
+        get() = declarations.keys
+
+    fun declarations(name: String): List<PsiNamedElement> = declarations[name].orEmpty()
+
+    /**
+     * Executes [processor] on the declarations named [name], then on the imports of the scope.
+     *
+     * @return false if the processor asked to stop
+     */
+    fun process(name: String, processor: PsiScopeProcessor, state: ResolveState): Boolean {
+        for (declaration in declarations(name)) {
+            if (!processor.execute(declaration, state))
+                return false
+        }
+        for (import in imports) {
+            if (!processor.execute(import, state))
+                return false
+        }
+        return true
+    }
+
+    private class Collector : PsiScopeProcessor {
+        val declarations = mutableMapOf<String, MutableList<PsiNamedElement>>()
+        val imports = mutableListOf<SingleImport>()
+
+        override fun execute(element: PsiElement, state: ResolveState): Boolean {
+            if (element is SingleImport) {
+                imports.add(element)
+            } else if (element is PsiNamedElement) {
+                val name = element.name ?: return true
+                declarations.getOrPut(name) { mutableListOf() }.add(element)
+            }
+            return true
+        }
+    }
+
+    companion object {
+        private val TABLE_KEY: Key<CachedValue<ScopeSymbolTable>> = Key.create("d.scope.symbol.table")
+
+        /**
+         * Table of the declarations [scope] contributes, built lazily and rebuilt whenever the containing file changes.
+         */
+        fun of(scope: PsiElement): ScopeSymbolTable = CachedValuesManager.getCachedValue(scope, TABLE_KEY) {
+            CachedValueProvider.Result.create(build(scope), scope)
+        }
+
+        /**
+         * Entry point for the `processDeclarations` implementations of scopes. Processors that tell which name they are
+         * looking for (via [NameHint]) are answered from the scope's table, every other processor gets the linear walk.
+         */
+        fun processDeclarations(scope: PsiElement, processor: PsiScopeProcessor, state: ResolveState, linear: () -> Boolean): Boolean {
+            val name = processor.getHint(NameHint.KEY)?.getName(state) ?: return linear()
+            return of(scope).process(name, processor, state)
+        }
+
+        private fun build(scope: PsiElement): ScopeSymbolTable {
+            val collector = Collector()
+            // the collector doesn't give a name hint, so this runs the linear walk of the scope (from the stubs for an
+            // unloaded file, see DlangFile.processDeclarations)
+            scope.processDeclarations(collector, ResolveState.initial(), scope, scope)
+            return ScopeSymbolTable(collector.declarations, collector.imports)
+        }
+    }
+}
@@ -2,19 +2,61 @@ package io.github.intellij.dlanguage.resolve
 
 import com.google.common.collect.Sets.newHashSet
 import com.intellij.openapi.project.Project
+import com.intellij.openapi.roots.ProjectRootModificationTracker
 import com.intellij.openapi.roots.impl.DirectoryIndex
+import com.intellij.openapi.util.Key
+import com.intellij.openapi.vfs.VirtualFileManager
 import com.intellij.psi.PsiDirectory
+import com.intellij.psi.PsiFile
 import com.intellij.psi.PsiNamedElement
 import com.intellij.psi.impl.file.PsiDirectoryFactory
 import com.intellij.psi.search.GlobalSearchScope
+import com.intellij.psi.util.CachedValue
+import com.intellij.psi.util.CachedValueProvider
+import com.intellij.psi.util.CachedValuesManager
 import com.intellij.psi.util.PsiTreeUtil
 import io.github.intellij.dlanguage.index.DModuleIndex
 import io.github.intellij.dlanguage.psi.named.DlangIdentifier
 import io.github.intellij.dlanguage.stubs.index.DPublicImportIndex
 import io.github.intellij.dlanguage.stubs.index.DTopLevelDeclarationIndex
 import io.github.intellij.dlanguage.utils.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
 
 object SpecialCaseResolve {
+    private val PACKAGE_DIRECTORIES_KEY: Key<CachedValue<ConcurrentMap<String, Set<PsiDirectory>>>> = Key.create("d.package.directories")
+    private val MODULE_FILES_KEY: Key<CachedValue<ConcurrentMap<String, Set<PsiNamedElement>>>> = Key.create("d.module.files")
+    private val LABELS_KEY: Key<CachedValue<Map<String, List<LabeledStatement>>>> = Key.create("d.function.labels")
+
+    /**
+     * The ancestors of an identifier that make it a special case, found in a single walk up to the file. Like
+     * [PsiTreeUtil.getTopmostParentOfType], each one is the topmost ancestor of its type.
+     */
+    private class Context(identifier: Identifier) {
+        var moduleDeclaration: ModuleDeclaration? = null
+        var singleImport: SingleImport? = null
+        var importBindings: ImportBindings? = null
+        var attribute: Attribute? = null
+        var function: FunctionDeclaration? = null
+
+        init {
+            var parent = identifier.parent
+            while (parent != null && parent !is PsiFile) {
+                when (parent) {
+                    is ModuleDeclaration -> moduleDeclaration = parent
+                    is SingleImport -> singleImport = parent
+                    is ImportBindings -> importBindings = parent
+                    is Attribute -> attribute = parent
+                    is FunctionDeclaration -> function = parent
+                }
+                parent = parent.parent
+            }
+        }
+
+        val inPackageAttribute: Boolean
+            get() = attribute?.kW_PACKAGE != null
+    }
+
     /**
      * couple possibilities:
      * in an import
@@ -27,57 +69,74 @@ object SpecialCaseResolve {
      * in a version condition
      * need to resolve a label
      */
-    fun findDefinitionNode(e: Identifier): Set<PsiNamedElement> {
+    fun findDefinitionNode(e: Identifier): Set<PsiNamedElement> = resolve(e) ?: emptySet()
 
-        if (inModuleDeclaration(e) != null) {
-            val identifiers = inModuleDeclaration(e)!!.identifierChain!!.identifiers
-            if (identifiers.last() == e) {
-                return resolveModule(inModuleDeclaration(e)!!.identifierChain!!)
-            }
-            return resolvePackage(identifiers.subList(0, identifiers.indexOf(e) + 1))
-        }
-        if (inSingleImport(e) != null) {
-            val identifiers = inSingleImport(e)!!.identifierChain!!.identifiers
-            if (identifiers.last() == e) {
-                return resolveModule(inSingleImport(e)!!.identifierChain!!)
-            }
-            return resolvePackage(identifiers.subList(0, identifiers.indexOf(e) + 1))
+    fun isApplicable(e: PsiNamedElement): Boolean {
+        if (e !is Identifier) {
+            return false
         }
-        if (inImportBind(e) != null) {
-            return (inImportBind(e)!!.parent as ImportDeclaration).singleImports.flatMap { resolveScopedSymbol(it, e.name, e.project) }.toSet()
+        val context = Context(e)
+        return context.moduleDeclaration != null || context.singleImport != null || context.importBindings != null || resolvingLabel(e) || context.inPackageAttribute
+    }
 
+    /**
+     * Resolves [e] if it is a special case, see [findDefinitionNode].
+     *
+     * @return null if [e] isn't a special case and has to be resolved normally
+     */
+    fun resolve(e: PsiNamedElement): Set<PsiNamedElement>? {
+        if (e !is Identifier) {
+            return null
+        }
+        val context = Context(e)
+        val moduleDeclaration = context.moduleDeclaration
+        if (moduleDeclaration != null) {
+            return resolveInChain(e, moduleDeclaration.identifierChain!!)
+        }
+        val singleImport = context.singleImport
+        if (singleImport != null) {
+            return resolveInChain(e, singleImport.identifierChain!!)
+        }
+        val importBindings = context.importBindings
+        if (importBindings != null) {
+            return (importBindings.parent as ImportDeclaration).singleImports.flatMap { resolveScopedSymbol(it, e.name, e.project) }.toSet()
         }
 //        if(inVersionCondition(e) != null){
 //            return resolveVersion(e)
 //        }
-        if (inPackageAttribute(e)) {
-            val chain = e.parent as IdentifierChain
-            val identifiers = chain.identifiers
-            if (identifiers.last() == e) {
-                return resolveModule(chain)
-            }
-            return resolvePackage(identifiers.subList(0, identifiers.indexOf(e) + 1))
+        if (context.inPackageAttribute) {
+            return resolveInChain(e, e.parent as IdentifierChain)
         }
         if (resolvingLabel(e)) {
-            return resolveLabel(e)
+            return resolveLabel(e, context.function)
         }
-        return emptySet()
+        return null
+    }
+
+    private fun resolveInChain(e: Identifier, chain: IdentifierChain): Set<PsiNamedElement> {
+        val identifiers = chain.identifiers
+        if (identifiers.last() == e) {
+            return resolveModule(chain)
+        }
+        return resolvePackage(identifiers.subList(0, identifiers.indexOf(e) + 1))
     }
 
 //    private fun inVersionCondition(identifier: Identifier): VersionCondition? {
 //        return PsiTreeUtil.getTopmostParentOfType(identifier, VersionCondition::class.java)
 //    }
 
-    private fun resolveLabel(e: Identifier): Set<PsiNamedElement> {
-        val functionDeclaration = PsiTreeUtil.getTopmostParentOfType(e, FunctionDeclaration::class.java)
+    private fun resolveLabel(e: Identifier, functionDeclaration: FunctionDeclaration?): Set<PsiNamedElement> {
         if (functionDeclaration == null)
             return emptySet()
-        val out = mutableSetOf<LabeledStatement>()
-        for (labeledStatement in PsiTreeUtil.findChildrenOfType(functionDeclaration, LabeledStatement::class.java)) {
-            if (labeledStatement.name.equals(e.name))
-                out.add(labeledStatement)
-        }
-        return out
+        return labels(functionDeclaration)[e.name].orEmpty().toSet()
+    }
+
+    /**
+     * Labels of [function] by name, collected once per version of the file instead of on every `goto`/`break`.
+     */
+    private fun labels(function: FunctionDeclaration): Map<String, List<LabeledStatement>> = CachedValuesManager.getCachedValue(function, LABELS_KEY) {
+        val labels = PsiTreeUtil.findChildrenOfType(function, LabeledStatement::class.java).groupBy { it.name }
+        CachedValueProvider.Result.create(labels, function)
     }
 
     private fun resolvePackage(parents: MutableList<DlangIdentifier>): Set<PsiNamedElement> {
@@ -96,17 +155,38 @@ object SpecialCaseResolve {
         return resolvePackageFromName(project, name)
     }
 
+    /**
+     * Directories of the package [name] in the project and its libraries. Cached per project until the file system or
+     * the project roots change.
+     */
     private fun resolvePackageFromName(project: Project, name: String): Set<PsiDirectory> {
-        return DirectoryIndex.getInstance(project)
-            .getDirectoriesByPackageName(name, true)
-            .findAll()
-            .map { PsiDirectoryFactory.getInstance(project).createDirectory(it) }
-            .toSet()
+        val cache = CachedValuesManager.getManager(project).getCachedValue(project, PACKAGE_DIRECTORIES_KEY, {
+            CachedValueProvider.Result.create<ConcurrentMap<String, Set<PsiDirectory>>>(ConcurrentHashMap(),
+                ProjectRootModificationTracker.getInstance(project), VirtualFileManager.VFS_STRUCTURE_MODIFICATIONS)
+        }, false)
+        return cache.getOrPut(name) {
+            DirectoryIndex.getInstance(project)
+                .getDirectoriesByPackageName(name, true)
+                .findAll()
+                .map { PsiDirectoryFactory.getInstance(project).createDirectory(it) }
+                .toSet()
+        }
     }
 
-
+    /**
+     * Files declaring the module [path]. Cached per project until a module declaration, the file system or the
+     * project roots change; edits elsewhere in a module keep it.
+     */
     private fun resolveModule(path: IdentifierChain): Set<PsiNamedElement> {
-        return newHashSet(DModuleIndex.getFilesByModuleName(path.project, path.text, GlobalSearchScope.allScope(path.project)))
+        val project = path.project
+        val cache = CachedValuesManager.getManager(project).getCachedValue(project, MODULE_FILES_KEY, {
+            CachedValueProvider.Result.create<ConcurrentMap<String, Set<PsiNamedElement>>>(ConcurrentHashMap(),
+                ModuleDeclarationTracker.getInstance(project), ProjectRootModificationTracker.getInstance(project),
+                VirtualFileManager.VFS_STRUCTURE_MODIFICATIONS)
+        }, false)
+        return cache.getOrPut(path.text) {
+            newHashSet<PsiNamedElement>(DModuleIndex.getFilesByModuleName(project, path.text, GlobalSearchScope.allScope(project)))
+        }
     }
 
     private fun resolveScopedSymbol(import: SingleImport, scope: String, project: Project): Set<PsiNamedElement> {
@@ -117,28 +197,6 @@ object SpecialCaseResolve {
         return res
     }
 
-    fun inModuleDeclaration(e: io.github.intellij.dlanguage.psi.interfaces.DNamedElement): ModuleDeclaration? {
-        return PsiTreeUtil.getTopmostParentOfType(e, ModuleDeclaration::class.java)
-    }
-
-    fun inSingleImport(identifier: Identifier): SingleImport? {
-        return PsiTreeUtil.getTopmostParentOfType(identifier, SingleImport::class.java)
-    }
-
-
-    fun isApplicable(e: PsiNamedElement): Boolean {
-        if (e !is Identifier) {
-            return false
-        }
-        return inModuleDeclaration(e) != null || inSingleImport(e) != null || inImportBind(e) != null || resolvingLabel(e) || inPackageAttribute(e)
-    }
-
-    private fun inPackageAttribute(identifier: Identifier): Boolean {
-        val attribute = PsiTreeUtil.getTopmostParentOfType(identifier, Attribute::class.java)
-        return attribute != null
-            && attribute.kW_PACKAGE != null
-    }
-
     private fun resolvingLabel(e: Identifier): Boolean {
         if (e.parent is GotoStatement) {
             return true
@@ -149,10 +207,6 @@ object SpecialCaseResolve {
         return false
     }
 
-    private fun inImportBind(identifier: Identifier): ImportBindings? {
-        return PsiTreeUtil.getTopmostParentOfType(identifier, ImportBindings::class.java)
-    }
-
     fun tryPackageResolve(e: Identifier): Set<PsiNamedElement> {
         fun inIdentifierOrTemplateChain(identifier: Identifier): IdentifierOrTemplateChain? {
             return PsiTreeUtil.getTopmostParentOfType(identifier, IdentifierOrTemplateChain::class.java)
@@ -162,8 +216,9 @@ object SpecialCaseResolve {
             return PsiTreeUtil.getTopmostParentOfType(identifier, IdentifierOrTemplateInstance::class.java)
         }
 
-        if (inIdentifierOrTemplateChain(e) != null) {
-            val instances = inIdentifierOrTemplateChain(e)!!.identifierOrTemplateInstances
+        val chain = inIdentifierOrTemplateChain(e)
+        if (chain != null) {
+            val instances = chain.identifierOrTemplateInstances
             val endIndex = instances.indexOf(inIdentifierOrTemplateInstance(e))
             val parents = instances.subList(0, endIndex + 1)
             if (parents.size == 0) {
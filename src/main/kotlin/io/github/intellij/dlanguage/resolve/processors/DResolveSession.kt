@@ -0,0 +1,56 @@
+package io.github.intellij.dlanguage.resolve.processors
+
+import com.intellij.openapi.util.Key
+import io.github.intellij.dlanguage.stubs.index.DPublicImportIndex
+import io.github.intellij.dlanguage.utils.SingleImport
+
+/**
+ * State of a single resolve, shared through [com.intellij.psi.ResolveState] by every processor taking part in it so
+ * that the import graph is explored once per resolve, however many scopes import the same module.
+ *
+ * A session belongs to one resolve running on one thread and is not thread safe.
+ */
+class DResolveSession(private val publicImports: MutableMap<String, Set<SingleImport>> = HashMap()) {
+
+    private data class VisitedImport(val module: String, val binds: Set<String>)
+
+    private val visitedImports = mutableSetOf<VisitedImport>()
+
+    /**
+     * Number of index queries made during this resolve, reported by [io.github.intellij.dlanguage.resolve.DResolveMetrics].
+     */
+    var indexQueries: Int = 0
+        private set
+
+    fun indexQuery() {
+        indexQueries++
+    }
+
+    /**
+     * Transitive public imports of the module imported by [import] (without [import] itself), see
+     * [DPublicImportIndex.recursivelyGetAllPublicImports].
+     */
+    fun publicImportsOf(import: SingleImport): Set<SingleImport> =
+        publicImports.getOrPut(import.importedModuleName) {
+            indexQuery()
+            DPublicImportIndex.recursivelyGetAllPublicImports(import) - import
+        }
+
+    /**
+     * Session for the next resolve of a batch: nothing is visited yet, but the import closures computed so far are
+     * reused.
+     */
+    fun next(): DResolveSession = DResolveSession(publicImports)
+
+    /**
+     * Marks the module imported by [import] (with its binds, an import restricted to some symbols doesn't make the
+     * rest of the module visible) as explored.
+     *
+     * @return false if it had already been explored during this resolve
+     */
+    fun visit(import: SingleImport): Boolean = visitedImports.add(VisitedImport(import.importedModuleName, import.applicableImportBinds))
+
+    companion object {
+        val KEY: Key<DResolveSession> = Key.create("d.resolve.session")
+    }
+}
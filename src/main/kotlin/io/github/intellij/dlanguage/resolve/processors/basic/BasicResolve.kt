@@ -1,52 +1,69 @@
 package io.github.intellij.dlanguage.resolve.processors.basic
 
-import com.intellij.openapi.diagnostic.Logger
+import com.intellij.openapi.components.ServiceManager
 import com.intellij.openapi.project.Project
+import com.intellij.openapi.roots.ProjectRootModificationTracker
+import com.intellij.openapi.util.Key
+import com.intellij.openapi.vfs.VirtualFileManager
 import com.intellij.psi.PsiNamedElement
 import com.intellij.psi.ResolveState
 import com.intellij.psi.search.GlobalSearchScope.allScope
-import com.intellij.psi.search.GlobalSearchScope.projectScope
+import com.intellij.psi.util.CachedValue
+import com.intellij.psi.util.CachedValueProvider
+import com.intellij.psi.util.CachedValuesManager
 import com.intellij.psi.util.PsiTreeUtil
 import io.github.intellij.dlanguage.attributes.DNameScopeProcessor
 import io.github.intellij.dlanguage.index.DModuleIndex.*
 import io.github.intellij.dlanguage.psi.DlangFile
+import io.github.intellij.dlanguage.resolve.ScopeSymbolTable
+import io.github.intellij.dlanguage.resolve.processors.DResolveSession
 import io.github.intellij.dlanguage.utils.Identifier
 
 
 /**
  * Created by francis on 7/24/2017.
+ *
+ * Project service, it is disposed together with its project and keeps no per-resolve state so it can be used from
+ * several threads at once.
  */
-class BasicResolve private constructor(val project: Project, val profile: Boolean = false) {
+class BasicResolve(val project: Project) {
 
     companion object {
-        private val basicResolves: MutableMap<Project, BasicResolve> = mutableMapOf()
-        //
-        fun getInstance(project: Project, profile: Boolean = false): BasicResolve {
-            return basicResolves.getOrPut(project, { BasicResolve(project, profile) })
-        }
-    }
+        private val OBJECT_FILE_KEY: Key<CachedValue<DlangFile?>> = Key.create("d.object.file")
 
-    val log: Logger = Logger.getInstance(this::class.java)
+        fun getInstance(project: Project): BasicResolve = ServiceManager.getService(project, BasicResolve::class.java)
+    }
 
+    /**
+     * The druntime `object` module. Looking it up hits the module index, so the file is cached until the project
+     * roots (the SDK included) or the file system structure change.
+     */
     val `object`: DlangFile?
-        get() = getFilesByModuleName(project, "object", allScope(project)).toSet().firstOrNull()?.containingFile as DlangFile?
+        get() {
+            val file = CachedValuesManager.getManager(project).getCachedValue(project, OBJECT_FILE_KEY, {
+                val file = getFilesByModuleName(project, "object", allScope(project)).firstOrNull()?.containingFile as DlangFile?
+                CachedValueProvider.Result.create(file, ProjectRootModificationTracker.getInstance(project), VirtualFileManager.VFS_STRUCTURE_MODIFICATIONS)
+            }, false)
+            return if (file?.isValid == true) file else null
+        }
 
-    fun findDefinitionNode(e: PsiNamedElement): Set<PsiNamedElement> {
+    /**
+     * Top level symbols of `object`, which are implicitly visible from every module.
+     */
+    val objectSymbols: ScopeSymbolTable?
+        get() = `object`?.let { ScopeSymbolTable.of(it) }
+
+    fun findDefinitionNode(e: PsiNamedElement, session: DResolveSession = DResolveSession()): Set<PsiNamedElement> {
         //todo fix templated functions return type bug
         if (e !is Identifier) {
             return emptySet()
         }
 
-        val startTime = System.currentTimeMillis()
-        val nameProcessor = DNameScopeProcessor(e, profile)
-        PsiTreeUtil.treeWalkUp(nameProcessor, e, e.containingFile, ResolveState.initial())
-        if (`object` != null) {
-            PsiTreeUtil.treeWalkUp(nameProcessor, `object`!!, `object`, ResolveState.initial())
-        }
-        val end = System.currentTimeMillis()
-        if (profile) {
-            log.info("Scope processor took:" + (end - startTime))
-        }
+        val nameProcessor = DNameScopeProcessor(e)
+        // one session for both walks, modules already imported by the file aren't explored again for object.d
+        val state = ResolveState.initial().put(DResolveSession.KEY, session)
+        PsiTreeUtil.treeWalkUp(nameProcessor, e, e.containingFile, state)
+        objectSymbols?.process(e.name, nameProcessor, state)
         return nameProcessor.result
     }
 
@@ -86,7 +86,10 @@ class DescribeParserImpl : DescribeParser {
             sourcesDirs = json.asStringArray("importPaths"), // importPaths, eg: "source",
             resources = json.asStringArray("stringImportPaths"), // stringImportPaths, eg: "views",
             sourceFiles = json.asStringArray("sourceFiles"),
-            stringImportFiles = json.asStringArray("stringImportFiles"))
+            stringImportFiles = json.asStringArray("stringImportFiles"),
+            versions = json.asStringArray("versions"), // eg: "VibeDefaultMain", "Have_vibe_d_core"
+            debugVersions = json.asStringArray("debugVersions"),
+            dflags = json.asStringArray("dflags"))
     }
 }
 
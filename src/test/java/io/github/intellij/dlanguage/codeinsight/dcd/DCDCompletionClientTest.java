@@ -32,7 +32,7 @@ public class DCDCompletionClientTest extends LightDlangTestCase {
 
         assertNotNull(commandLine);
         assertEquals(Paths.get(sourceFile.getProject().getBasePath()).toString(), commandLine.getWorkDirectory().getPath());
-        assertEquals("dcd-client -c 33", commandLine.getCommandLineString());
+        assertEquals("dcd-client --tcp -c 33", commandLine.getCommandLineString());
     }
 
     public void testBuildDcdCommandWithDcdParams() {
@@ -43,7 +43,7 @@ public class DCDCompletionClientTest extends LightDlangTestCase {
 
         assertNotNull(commandLine);
         assertEquals(Paths.get(sourceFile.getProject().getBasePath()).toString(), commandLine.getWorkDirectory().getPath());
-        assertEquals("dcd-client -c 0 -I one -I \"\\test directory\\fileTwo\"", commandLine.getCommandLineString());
+        assertEquals("dcd-client --tcp -c 0 -I one -I \"\\test directory\\fileTwo\"", commandLine.getCommandLineString());
     }
 
     public void testProcessDcdOutput_EmptyString() {
@@ -83,4 +83,18 @@ public class DCDCompletionClientTest extends LightDlangTestCase {
         final List<Completion> completions = dcdClient.processDcdOutput(output);
         assertEquals(9, completions.size());
     }
+
+    public void testProcessDcdOutput_SkipsBlankLines() {
+        final List<Completion> completions = dcdClient.processDcdOutput("identifiers\nwriteln\tf\n\nlength\tk\n");
+
+        assertEquals(2, completions.size());
+        assertEquals("writeln()", completions.get(0).completionText());
+        assertEquals("Function", completions.get(0).completionType());
+        assertEquals("length", completions.get(1).completionText());
+        assertEquals("Keyword", completions.get(1).completionType());
+    }
+
+    public void testProcessDcdOutput_Calltips() {
+        assertEquals(0, dcdClient.processDcdOutput("calltips\nvoid writeln(T...)(T args)").size());
+    }
 }
@@ -0,0 +1,145 @@
+package io.github.intellij.dlanguage.codeinsight.dcd;
+
+import com.intellij.openapi.progress.ProcessCanceledException;
+import io.github.intellij.dlanguage.codeinsight.dcd.completions.Completion;
+import io.github.intellij.dlanguage.codeinsight.dcd.completions.TextCompletion;
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+public class DCDCompletionRequestsTest extends TestCase {
+
+    private static final List<Completion> PHOBOS = Arrays.asList(
+        new TextCompletion("Function", "write()"),
+        new TextCompletion("Function", "writef()"),
+        new TextCompletion("Function", "writeln()"),
+        new TextCompletion("Function", "wrap()"));
+
+    private ExecutorService executor;
+    private DCDCompletionRequests requests;
+    private final AtomicInteger backendCalls = new AtomicInteger();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        executor = Executors.newCachedThreadPool();
+        requests = new DCDCompletionRequests(executor);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            executor.shutdownNow();
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    private List<Completion> fakeDcd() {
+        backendCalls.incrementAndGet();
+        return PHOBOS;
+    }
+
+    private List<String> typeAndComplete(final String before, final String typed, final String after) throws Exception {
+        final String text = before + typed + after;
+        return requests.complete("app.d", text, before.length() + typed.length(), this::fakeDcd, null).stream()
+            .map(Completion::completionText)
+            .collect(Collectors.toList());
+    }
+
+    public void testTypingAnIdentifierAsksDcdOnce() throws Exception {
+        final String identifier = "writeln";
+        for (int i = 1; i <= identifier.length(); i++) {
+            final List<String> completions = typeAndComplete("void main() { ", identifier.substring(0, i), "; }");
+            assertFalse(completions.isEmpty());
+        }
+
+        assertEquals("requests per typed identifier", 1, backendCalls.get());
+        assertEquals(Arrays.asList("writeln()"), typeAndComplete("void main() { ", "writel", "; }"));
+        assertEquals(Arrays.asList("write()", "writef()", "writeln()"), typeAndComplete("void main() { ", "writ", "; }"));
+    }
+
+    public void testChangeElsewhereAsksDcdAgain() throws Exception {
+        typeAndComplete("void main() { ", "wr", "; }");
+        typeAndComplete("void main() { int x; ", "wr", "; }");
+
+        assertEquals(2, backendCalls.get());
+    }
+
+    public void testShorterPrefixAsksDcdAgain() throws Exception {
+        typeAndComplete("void main() { ", "wri", "; }");
+        typeAndComplete("void main() { ", "w", "; }");
+
+        assertEquals(2, backendCalls.get());
+    }
+
+    public void testChangeWithTheSameHashAsksDcdAgain() throws Exception {
+        assertEquals(DCDCompletionRequests.contentHash("Aa.w", 3, 4), DCDCompletionRequests.contentHash("BB.w", 3, 4));
+
+        typeAndComplete("Aa.", "w", "");
+        typeAndComplete("BB.", "w", "");
+
+        assertEquals(2, backendCalls.get());
+    }
+
+    public void testNewRequestSupersedesTheOneInFlight() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            final Future<List<Completion>> stale = caller.submit(() -> requests.complete("app.d", "void main() { a", 15, () -> {
+                started.countDown();
+                release.await();
+                return PHOBOS;
+            }, null));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            final List<String> fresh = typeAndComplete("void main() { int y; ", "w", "");
+            assertEquals(4, fresh.size());
+
+            try {
+                stale.get(5, TimeUnit.SECONDS);
+                fail("the first request should have been superseded");
+            } catch (final ExecutionException e) {
+                assertTrue(e.getCause() instanceof ProcessCanceledException);
+            }
+        } finally {
+            release.countDown();
+            caller.shutdownNow();
+        }
+    }
+
+    public void testConcurrentIdenticalRequestsAreCoalesced() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final DCDCompletionRequests.Backend slowDcd = () -> {
+            backendCalls.incrementAndGet();
+            started.countDown();
+            release.await();
+            return PHOBOS;
+        };
+        final ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            final Future<List<Completion>> first = callers.submit(() -> requests.complete("app.d", "x.w", 3, slowDcd, null));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            // typed while the first request is still running
+            final Future<List<Completion>> second = callers.submit(() -> requests.complete("app.d", "x.wr", 4, slowDcd, null));
+            release.countDown();
+
+            assertEquals(4, first.get(5, TimeUnit.SECONDS).size());
+            assertEquals(3, second.get(5, TimeUnit.SECONDS).size());
+            assertEquals(1, backendCalls.get());
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+}
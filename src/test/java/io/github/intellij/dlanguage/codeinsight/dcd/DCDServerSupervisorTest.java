@@ -0,0 +1,201 @@
+package io.github.intellij.dlanguage.codeinsight.dcd;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class DCDServerSupervisorTest extends TestCase {
+
+    private static final List<String> PHOBOS = Collections.singletonList("/usr/include/dmd/phobos");
+    private static final List<String> LDC = Collections.singletonList("/usr/include/ldc");
+
+    private final BlockingQueue<FakeProcess> launched = new LinkedBlockingQueue<>();
+    private ScheduledExecutorService scheduler;
+    private DCDServerSupervisor supervisor;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        supervisor = supervisor(2, Long.MAX_VALUE);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            supervisor.shutdown();
+            scheduler.shutdownNow();
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    private DCDServerSupervisor supervisor(final int maxServers, final long maxResidentBytes) {
+        final DCDServerSupervisor supervisor = new DCDServerSupervisor(commandLine -> {
+            final FakeProcess process = new FakeProcess();
+            launched.add(process);
+            return process;
+        }, scheduler, maxServers, maxResidentBytes, 10, e -> fail(e.getMessage()));
+        supervisor.configure("dcd-server", "");
+        return supervisor;
+    }
+
+    public void testModulesWithTheSameImportPathsShareAServer() {
+        final DCDCompletionServer first = supervisor.server("/project", PHOBOS);
+        final DCDCompletionServer second = supervisor.server("/project", Arrays.asList("/usr/include/dmd/phobos"));
+        final DCDCompletionServer other = supervisor.server("/project", LDC);
+
+        assertSame(first, second);
+        assertNotSame(first, other);
+        assertTrue(first.getPort() != other.getPort());
+        assertEquals(2, launched.size());
+    }
+
+    public void testCommandLineListensOnTheServersPortAndImportsItsPaths() {
+        final DCDCompletionServer server = new DCDCompletionServer("/project", Arrays.asList("/src", "/usr/include/dmd/phobos"));
+
+        assertEquals("dcd-server --tcp --port 9170 -I /src -I /usr/include/dmd/phobos",
+            server.commandLine("dcd-server", "", 9170).getCommandLineString());
+        assertEquals("dcd-server --tcp --logLevel info --port 9170 -I /src -I /usr/include/dmd/phobos",
+            server.commandLine("dcd-server", "--tcp --logLevel info", 9170).getCommandLineString());
+    }
+
+    public void testTheLeastRecentlyUsedServerIsStoppedBeyondTheLimit() throws Exception {
+        supervisor.server("/project", PHOBOS);
+        supervisor.server("/project", LDC);
+        supervisor.server("/project", PHOBOS);
+        final FakeProcess phobos = launched.take();
+        final FakeProcess ldc = launched.take();
+
+        supervisor.server("/project", Collections.singletonList("/usr/include/gdc"));
+
+        assertEquals(2, supervisor.size());
+        assertTrue(phobos.isAlive());
+        assertFalse(ldc.isAlive());
+        assertTrue(launched.take().isAlive());
+    }
+
+    public void testCrashedServerIsRestartedInTheBackground() throws Exception {
+        final DCDCompletionServer server = supervisor.server("/project", PHOBOS);
+        final FakeProcess crashed = launched.take();
+
+        crashed.exit(139);
+
+        assertFalse(server.isAlive());
+        assertSame("callers get the server while it restarts", server, supervisor.server("/project", PHOBOS));
+        final FakeProcess restarted = launched.poll(5, TimeUnit.SECONDS);
+        assertNotNull("the server wasn't restarted", restarted);
+        assertEquals(1, supervisor.size()); // waits for the restart to finish
+        assertTrue(server.isAlive());
+        assertTrue(server.isCurrent(restarted));
+    }
+
+    public void testStoppedServersAreNotRestarted() throws Exception {
+        supervisor.server("/project", PHOBOS);
+        final FakeProcess process = launched.take();
+
+        supervisor.configure("/opt/dcd/dcd-server", "");
+
+        assertFalse(process.isAlive());
+        assertEquals(0, supervisor.size());
+        assertNull(launched.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    public void testRestartsBackOff() {
+        assertEquals(1000, DCDServerSupervisor.backoffMillis(1000, 0));
+        assertEquals(2000, DCDServerSupervisor.backoffMillis(1000, 1));
+        assertEquals(8000, DCDServerSupervisor.backoffMillis(1000, 3));
+        assertEquals(DCDServerSupervisor.MAX_BACKOFF_MILLIS, DCDServerSupervisor.backoffMillis(1000, 10));
+        assertEquals(DCDServerSupervisor.MAX_BACKOFF_MILLIS, DCDServerSupervisor.backoffMillis(1000, 1000));
+    }
+
+    public void testServerUsingTooMuchMemoryIsRestarted() throws Exception {
+        if (!Files.isReadable(Paths.get("/proc/self/status"))) {
+            return; // resident memory is only known on Linux
+        }
+        supervisor.shutdown();
+        supervisor = supervisor(2, 1); // the fake processes report the memory of this JVM
+        final DCDCompletionServer server = supervisor.server("/project", PHOBOS);
+        final FakeProcess bloated = launched.take();
+
+        supervisor.checkHealth();
+
+        assertFalse(bloated.isAlive());
+        final FakeProcess restarted = launched.poll(5, TimeUnit.SECONDS);
+        assertNotNull("the server wasn't restarted", restarted);
+        assertEquals(1, supervisor.size()); // waits for the restart to finish
+        assertTrue(server.isCurrent(restarted));
+    }
+
+    private static final class FakeProcess extends Process {
+        private final CompletableFuture<Process> exit = new CompletableFuture<>();
+        private volatile int exitValue = -1;
+
+        void exit(final int code) {
+            exitValue = code;
+            exit.complete(this);
+        }
+
+        @Override
+        public CompletableFuture<Process> onExit() {
+            return exit;
+        }
+
+        @Override
+        public boolean isAlive() {
+            return !exit.isDone();
+        }
+
+        @Override
+        public long pid() {
+            return ProcessHandle.current().pid();
+        }
+
+        @Override
+        public void destroy() {
+            exit(143);
+        }
+
+        @Override
+        public int waitFor() {
+            return exit.join().exitValue();
+        }
+
+        @Override
+        public int exitValue() {
+            if (isAlive()) {
+                throw new IllegalThreadStateException("running");
+            }
+            return exitValue;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return new ByteArrayOutputStream();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+    }
+}
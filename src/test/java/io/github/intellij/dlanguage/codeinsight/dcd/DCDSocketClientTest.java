@@ -0,0 +1,107 @@
+package io.github.intellij.dlanguage.codeinsight.dcd;
+
+import io.github.intellij.dlanguage.codeinsight.dcd.completions.Completion;
+import junit.framework.TestCase;
+
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class DCDSocketClientTest extends TestCase {
+
+    private FakeDcdServer server;
+    private DCDSocketClient client;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        server = new FakeDcdServer();
+        client = new DCDSocketClient(server.getPort());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            server.close();
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    public void testRequestIsEncodedLikeDcdClient() throws Exception {
+        server.respond(FakeDcdServer.identifiers());
+        // 'é' takes two bytes, the cursor after "x" must be sent as a byte offset
+        final byte[] source = "auto é = x".getBytes(StandardCharsets.UTF_8);
+
+        client.autoComplete("/src/app.d", source, source.length, source.length, Arrays.asList("/usr/include/dmd/phobos", "/src"));
+
+        assertEquals(1, server.getRequests().size());
+        final List<?> request = server.getRequests().get(0);
+        assertEquals(6, request.size());
+        assertEquals("/src/app.d", request.get(0));
+        assertEquals(1L, request.get(1));
+        assertEquals(Arrays.asList("/usr/include/dmd/phobos", "/src"), request.get(2));
+        assertTrue(Arrays.equals(source, (byte[]) request.get(3)));
+        assertEquals(11L, request.get(4));
+        assertEquals("", request.get(5));
+    }
+
+    public void testIdentifiersAreConvertedToCompletions() throws Exception {
+        server.respond(FakeDcdServer.identifiers("length", 'k', "writeln", 'f', "Appender", 's'));
+        final byte[] source = "void main() { }".getBytes(StandardCharsets.UTF_8);
+
+        final List<Completion> completions = client.autoComplete("app.d", source, source.length, 14, Collections.emptyList());
+
+        assertEquals(3, completions.size());
+        assertEquals("length", completions.get(0).completionText());
+        assertEquals("Keyword", completions.get(0).completionType());
+        assertEquals("writeln()", completions.get(1).completionText());
+        assertEquals("Function", completions.get(1).completionType());
+        assertEquals("Appender", completions.get(2).completionText());
+        assertEquals("Struct", completions.get(2).completionType());
+    }
+
+    public void testOnlyTheGivenLengthOfTheBufferIsSent() throws Exception {
+        server.respond(FakeDcdServer.identifiers());
+        final byte[] buffer = new byte[64];
+        final byte[] source = "int x;".getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(source, 0, buffer, 0, source.length);
+
+        client.autoComplete("app.d", buffer, source.length, 0, Collections.emptyList());
+
+        assertTrue(Arrays.equals(source, (byte[]) server.getRequests().get(0).get(3)));
+    }
+
+    public void testRepeatedRequestsDontStartProcesses() throws Exception {
+        server.respond(FakeDcdServer.identifiers("writeln", 'f'));
+        final byte[] source = new byte[100_000];
+        Arrays.fill(source, (byte) ' ');
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            assertEquals(1, client.autoComplete("app.d", source, source.length, i, Collections.emptyList()).size());
+        }
+        final long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(100, server.getRequests().size());
+        // a dcd-client process alone takes tens of milliseconds to start
+        assertTrue("100 requests took " + millis + "ms", millis < 5000);
+    }
+
+    public void testNoServerIsReportedAsConnectException() throws Exception {
+        final int port;
+        try (final ServerSocket unused = new ServerSocket(0)) {
+            port = unused.getLocalPort();
+        }
+        try {
+            new DCDSocketClient(port).autoComplete("app.d", new byte[0], 0, 0, Collections.emptyList());
+            fail("no server listens on " + port);
+        } catch (final ConnectException expected) {
+            // DCDCompletionClient falls back to dcd-client
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package io.github.intellij.dlanguage.codeinsight.dcd;
+
+import junit.framework.TestCase;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class DCDSourceBuffersTest extends TestCase {
+
+    private static final String SOURCE = "module app;\n// naïve € 😀 \uD800\nvoid main() { writeln(\"é\"); }\n";
+
+    public void testEncodingMatchesUtf8() {
+        assertTrue(Arrays.equals(SOURCE.getBytes(StandardCharsets.UTF_8), DCDSourceBuffers.encode(SOURCE)));
+        assertEquals(0, DCDSourceBuffers.encode("").length);
+    }
+
+    public void testByteOffsetOfACharacterPosition() {
+        for (int position = 0; position <= SOURCE.length(); position++) {
+            if (position > 0 && Character.isHighSurrogate(SOURCE.charAt(position - 1))
+                && position < SOURCE.length() && Character.isLowSurrogate(SOURCE.charAt(position))) {
+                continue; // no caret between the two halves of a character
+            }
+            assertEquals("at " + position, SOURCE.substring(0, position).getBytes(StandardCharsets.UTF_8).length,
+                DCDSourceBuffers.byteOffset(SOURCE, position));
+        }
+    }
+
+    public void testUnchangedContentIsEncodedOnce() {
+        final DCDSourceBuffers buffers = new DCDSourceBuffers();
+
+        final DCDSourceBuffers.Source first = buffers.encode("/src/app.d", SOURCE);
+        final DCDSourceBuffers.Source again = buffers.encode("/src/app.d", new StringBuilder(SOURCE));
+        final DCDSourceBuffers.Source changed = buffers.encode("/src/app.d", SOURCE + "int x;");
+
+        assertSame(first, again);
+        assertNotSame(first, changed);
+        assertEquals(SOURCE.getBytes(StandardCharsets.UTF_8).length + 6, changed.length());
+        assertSame(changed, buffers.encode("/src/app.d", SOURCE + "int x;"));
+    }
+
+    public void testContentWithTheSameHashIsEncodedAgain() {
+        final DCDSourceBuffers buffers = new DCDSourceBuffers();
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+
+        final DCDSourceBuffers.Source first = buffers.encode("/src/app.d", "Aa");
+        final DCDSourceBuffers.Source colliding = buffers.encode("/src/app.d", "BB");
+
+        assertNotSame(first, colliding);
+        assertTrue(Arrays.equals("BB".getBytes(StandardCharsets.UTF_8), colliding.bytes));
+    }
+}
@@ -0,0 +1,107 @@
+package io.github.intellij.dlanguage.codeinsight.dcd;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Stands in for dcd-server in tests: decodes the requests it receives and replays the queued responses, one request
+ * per connection like the real server. Once the queue is empty the last response is replayed.
+ */
+final class FakeDcdServer implements Closeable {
+
+    private final ServerSocket serverSocket;
+    private final Thread acceptor;
+    private final BlockingQueue<byte[]> responses = new LinkedBlockingQueue<>();
+    private final List<List<?>> requests = new CopyOnWriteArrayList<>();
+    private volatile byte[] lastResponse = new byte[0];
+
+    FakeDcdServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        acceptor = new Thread(this::serve, "fake dcd-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Decoded requests received so far, each one the list of {@code AutocompleteRequest} fields.
+     */
+    List<List<?>> getRequests() {
+        return requests;
+    }
+
+    void respond(final byte[] response) {
+        responses.add(response);
+    }
+
+    /**
+     * An {@code AutocompleteResponse} listing identifiers, {@code completions} alternates identifiers and kinds.
+     */
+    static byte[] identifiers(final Object... completions) {
+        final DCDMessagePack.Packer packer = new DCDMessagePack.Packer(256)
+            .arrayHeader(5)
+            .string("identifiers")
+            .string("")
+            .uint(0)
+            .arrayHeader(completions.length / 2);
+        for (int i = 0; i < completions.length; i += 2) {
+            packer.arrayHeader(6)
+                .string((String) completions[i])
+                .uint((Character) completions[i + 1])
+                .string("")
+                .string("")
+                .uint(0)
+                .string("");
+        }
+        return packer.arrayHeader(0).toByteArray();
+    }
+
+    private void serve() {
+        while (!serverSocket.isClosed()) {
+            try (final Socket socket = serverSocket.accept()) {
+                final DataInputStream in = new DataInputStream(socket.getInputStream());
+                final byte[] size = new byte[8];
+                in.readFully(size);
+                long length = 0;
+                for (int i = 7; i >= 0; i--) {
+                    length = (length << 8) | (size[i] & 0xff);
+                }
+                final byte[] message = new byte[(int) length];
+                in.readFully(message);
+                requests.add((List<?>) new DCDMessagePack.Unpacker(message, 0, message.length).next());
+
+                final byte[] next = responses.poll();
+                if (next != null) {
+                    lastResponse = next;
+                }
+                final OutputStream out = socket.getOutputStream();
+                out.write(lastResponse);
+                out.flush();
+            } catch (final IOException e) {
+                // closed, or a broken request: the client sees the connection drop
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        try {
+            acceptor.join(1000);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
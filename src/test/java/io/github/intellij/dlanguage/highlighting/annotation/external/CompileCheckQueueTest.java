@@ -0,0 +1,100 @@
+package io.github.intellij.dlanguage.highlighting.annotation.external;
+
+import com.intellij.openapi.util.Disposer;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import io.github.intellij.dlanguage.LightDlangTestCase;
+import io.github.intellij.dlanguage.tools.FakeTool;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class CompileCheckQueueTest extends LightDlangTestCase {
+
+    private FakeTool compiler;
+    private CompileCheckQueue queue;
+    private PsiFile file;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // reports an error on the first line of the checked module, after a while for modules containing 'slow'
+        compiler = new FakeTool("dmd",
+            "for source; do :; done\n" +
+            "if grep -q slow \"$source\"; then exec sleep 30; fi\n" +
+            "echo \"$source(1,1): Error: $(head -n 1 \"$source\")\" >&2\n" +
+            "exit 1\n");
+
+        final CompileCheckQueue.BuildState state = new CompileCheckQueue.BuildState(compiler.getPath(),
+            Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+        queue = new CompileCheckQueue(getProject(), module -> state);
+        file = PsiManager.getInstance(getProject()).findFile(addFileToModuleSource("app.d", "module app;"));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            Disposer.dispose(queue);
+            compiler.delete();
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    private List<String> awaitReport(final String text) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            final List<String> report = queue.report(file, text);
+            if (report != null) {
+                return report;
+            }
+            Thread.sleep(50);
+        }
+        fail("'" + text + "' wasn't checked");
+        return null;
+    }
+
+    private static String message(final List<String> report) {
+        assertEquals(1, report.size());
+        return report.get(0).substring(report.get(0).indexOf("Error: ") + "Error: ".length());
+    }
+
+    public void testEditsWhileWaitingAreCheckedOnce() throws Exception {
+        assertNull(queue.report(file, "module a;"));
+        assertNull(queue.report(file, "module ap;"));
+        assertNull(queue.report(file, "module app;"));
+
+        assertEquals("module app;", message(awaitReport("module app;")));
+        assertEquals(1, compiler.runs());
+    }
+
+    public void testALaterEditCancelsTheRunningCheck() throws Exception {
+        final long start = System.nanoTime();
+
+        assertNull(queue.report(file, "module slow;"));
+        while (compiler.runs() == 0 && System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10)) {
+            Thread.sleep(50);
+        }
+        assertEquals(1, compiler.runs());
+        assertNull(queue.report(file, "module app;"));
+
+        assertEquals("module app;", message(awaitReport("module app;")));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+        assertEquals(2, compiler.runs());
+    }
+
+    public void testAContentCheckedBeforeIsNotCheckedAgain() throws Exception {
+        awaitReport("module app;");
+        awaitReport("module app; void main() {}");
+        assertEquals(2, compiler.runs());
+
+        // undo
+        final List<String> report = queue.report(file, "module app;");
+
+        assertNotNull(report);
+        assertEquals("module app;", message(report));
+        Thread.sleep(CompileCheckQueue.DEBOUNCE_MILLIS * 2);
+        assertEquals(2, compiler.runs());
+    }
+}
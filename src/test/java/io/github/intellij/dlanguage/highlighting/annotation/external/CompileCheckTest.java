@@ -0,0 +1,83 @@
+package io.github.intellij.dlanguage.highlighting.annotation.external;
+
+import io.github.intellij.dlanguage.highlighting.annotation.Problems;
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class CompileCheckTest extends TestCase {
+
+    private static final String TEXT = "module app;\n" +
+        "\n" +
+        "void main() {\n" +
+        "    int x = \"text\";\n" +
+        "}\n";
+
+    private static String problem(final Problems problems, final int index) {
+        final CompileCheck.Problem problem = (CompileCheck.Problem) problems.get(index);
+        return problem.severity + " " + problem.range + problem.message;
+    }
+
+    public void testOnlyTheLinesAboutTheCheckedFileAreKept() {
+        final String output = "/tmp/compile-check/app.d(4,13): Error: cannot implicitly convert expression `\"text\"` of type `string` to `int`\n" +
+            "/home/me/project/source/lib.d(2,5): Deprecation: `foo` is deprecated\n" +
+            "       instantiated from here: `bar!int`\n";
+
+        final List<String> lines = CompileCheck.linesAbout(output, "/tmp/compile-check/app.d");
+
+        assertEquals(Collections.singletonList(
+            "/tmp/compile-check/app.d(4,13): Error: cannot implicitly convert expression `\"text\"` of type `string` to `int`"), lines);
+    }
+
+    public void testWindowsPathsAreAboutTheSameFile() {
+        final List<String> lines = CompileCheck.linesAbout("C:\\Temp\\compile-check\\app.d(1,1): Error: oops\n",
+            "C:\\Temp\\compile-check\\app.d");
+
+        assertEquals(1, lines.size());
+    }
+
+    public void testProblemsArePlacedOnTheirLine() {
+        final Problems problems = CompileCheck.findProblems(Arrays.asList(
+            "/tmp/compile-check/app.d(1,1): Warning: module name",
+            "/tmp/compile-check/app.d(4,13): Error: cannot implicitly convert"
+        ), TEXT);
+
+        assertEquals(2, problems.size());
+        assertEquals("Warning (0,11) module name", problem(problems, 0));
+        assertEquals("Error (39,46) cannot implicitly convert", problem(problems, 1));
+    }
+
+    public void testPositionsOutsideOfTheTextAreKeptInIt() {
+        final Problems problems = CompileCheck.findProblems(Collections.singletonList(
+            "app.d(40,1): Error: unexpected end of file"), TEXT);
+
+        assertEquals("Error (49,49) unexpected end of file", problem(problems, 0));
+    }
+
+    public void testTheCommandOnlyChecksTheModule() {
+        assertEquals(Arrays.asList("-o-", "-vcolumns", "-I/project/source", "-I/dub/packages/vibe-d/source",
+                "-J/project/views", "/tmp/compile-check/app.d"),
+            CompileCheck.commandLine("/usr/bin/dmd", "/project",
+                Arrays.asList("/project/source", "/dub/packages/vibe-d/source"),
+                Collections.singletonList("/project/views"), Collections.emptyList(), "/tmp/compile-check/app.d")
+                .getParametersList().getList());
+    }
+
+    public void testTheCommandHasTheDubBuildSettings() {
+        final List<String> flags = CompileCheck.dubFlags(Arrays.asList("VibeDefaultMain", "Have_vibe_d_core"),
+            Collections.singletonList("verbose"), Collections.singletonList("-preview=dip1000"));
+
+        assertEquals(Arrays.asList("-o-", "-vcolumns", "-version=VibeDefaultMain", "-version=Have_vibe_d_core",
+                "-debug=verbose", "-preview=dip1000", "-I/project/source", "/tmp/compile-check/app.d"),
+            CompileCheck.commandLine("/usr/bin/dmd", "/project", Collections.singletonList("/project/source"),
+                Collections.emptyList(), flags, "/tmp/compile-check/app.d")
+                .getParametersList().getList());
+    }
+
+    public void testContentHashesDifferWithTheContent() {
+        assertEquals(CompileCheckQueue.hash(TEXT), CompileCheckQueue.hash(new StringBuilder(TEXT)));
+        assertFalse(CompileCheckQueue.hash(TEXT) == CompileCheckQueue.hash(TEXT.replace('x', 'y')));
+    }
+}
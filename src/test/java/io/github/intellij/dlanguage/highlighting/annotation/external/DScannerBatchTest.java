@@ -0,0 +1,149 @@
+package io.github.intellij.dlanguage.highlighting.annotation.external;
+
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import io.github.intellij.dlanguage.LightDlangTestCase;
+import io.github.intellij.dlanguage.tools.FakeTool;
+import io.github.intellij.dlanguage.tools.ToolProcesses;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class DScannerBatchTest extends LightDlangTestCase {
+
+    private FakeTool dscanner;
+
+    private final List<String> problems = Collections.synchronizedList(new ArrayList<>());
+    private final Map<String, List<String>> reports = new HashMap<>();
+    private final Map<String, String> failures = new HashMap<>();
+
+    private final DScannerBatch.Listener listener = new DScannerBatch.Listener() {
+        @Override
+        public void problem(@NotNull final String path, final int line, final int column, @NotNull final String severity,
+                            @NotNull final String message, @NotNull final String report) {
+            problems.add(path + ':' + line + ':' + column + ' ' + severity + ' ' + message);
+        }
+
+        @Override
+        public void linted(@NotNull final Map<String, List<String>> linted) {
+            reports.putAll(linted);
+        }
+
+        @Override
+        public void failed(@NotNull final List<String> paths, @NotNull final String reason) {
+            for (final String path : paths) {
+                failures.put(path, reason);
+            }
+        }
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // reports every file but the ones named clean.d, like dscanner -S does
+        dscanner = new FakeTool("dscanner",
+            "shift\n" +
+            "for f in \"$@\"; do\n" +
+            "  case \"$f\" in\n" +
+            "    */clean.d) ;;\n" +
+            "    *.d) echo \"$f(1:6)[warn]: Public declaration 'main' is undocumented.\" ;;\n" +
+            "  esac\n" +
+            "done\n" +
+            "exit 1\n");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            dscanner.delete();
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    public void testManyFilesAreLintedByFewProcesses() throws IOException {
+        final List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            paths.add("/project/source/module" + i + ".d");
+        }
+
+        new DScannerBatch(getProject(), dscanner.getPath(), dscanner.getDirectory().getPath(),
+            Arrays.asList("-I", "/usr/include/dmd/phobos"))
+            .run(paths, new EmptyProgressIndicator(), listener);
+
+        assertEquals(3, dscanner.runs());
+        assertEquals(600, problems.size());
+        assertEquals("/project/source/module42.d:1:6 warn Public declaration 'main' is undocumented.", problems.get(42));
+        assertEquals(600, reports.size());
+        assertEquals(1, reports.get("/project/source/module599.d").size());
+    }
+
+    public void testFilesWithoutProblemsHaveAnEmptyReport() throws IOException {
+        new DScannerBatch(getProject(), dscanner.getPath(), dscanner.getDirectory().getPath(), Collections.emptyList())
+            .run(Arrays.asList("/project/source/clean.d", "/project/source/app.d"), new EmptyProgressIndicator(), listener);
+
+        assertEquals(1, dscanner.runs());
+        assertEquals(1, problems.size());
+        assertEquals(Collections.emptyList(), reports.get("/project/source/clean.d"));
+    }
+
+    public void testCancellingStopsTheRun() throws IOException {
+        final ProgressIndicator indicator = new EmptyProgressIndicator();
+        indicator.cancel();
+
+        try {
+            new DScannerBatch(getProject(), dscanner.getPath(), dscanner.getDirectory().getPath(), Collections.emptyList())
+                .run(Collections.singletonList("/project/source/app.d"), indicator, listener);
+            fail("the run wasn't cancelled");
+        } catch (final ProcessCanceledException expected) {
+            // expected
+        }
+        assertEquals(0, dscanner.runs());
+        assertTrue(reports.isEmpty());
+    }
+
+    public void testFailedChunksAreReportedNotLinted() throws IOException {
+        dscanner.write("exit 2\n");
+
+        new DScannerBatch(getProject(), dscanner.getPath(), dscanner.getDirectory().getPath(), Collections.emptyList())
+            .run(Arrays.asList("/project/source/app.d", "/project/source/lib.d"), new EmptyProgressIndicator(), listener);
+
+        assertEquals(1, dscanner.runs());
+        assertTrue(reports.isEmpty());
+        assertEquals(2, failures.size());
+        assertEquals("DScanner exited with 2", failures.get("/project/source/lib.d"));
+    }
+
+    public void testBiggerChunksMayRunLonger() {
+        assertEquals(ToolProcesses.Tool.DSCANNER.getTimeoutMillis(), DScannerBatch.timeoutMillis(1));
+        assertTrue(DScannerBatch.timeoutMillis(DScannerBatch.MAX_FILES_PER_PROCESS) > DScannerBatch.timeoutMillis(1));
+    }
+
+    public void testChunksFitTheCommandLine() {
+        final List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            paths.add(String.join("", Collections.nCopies(50, "long/")) + "module" + i + ".d");
+        }
+
+        final List<List<String>> chunks = DScannerBatch.chunks(paths, 1000);
+
+        int chunked = 0;
+        for (final List<String> chunk : chunks) {
+            int length = 1000;
+            for (final String path : chunk) {
+                length += path.length() + 3;
+            }
+            assertTrue(length <= DScannerBatch.MAX_COMMAND_LENGTH);
+            chunked += chunk.size();
+        }
+        assertEquals(100, chunked);
+        assertTrue(chunks.size() > 1);
+    }
+}
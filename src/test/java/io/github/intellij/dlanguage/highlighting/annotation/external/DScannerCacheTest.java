@@ -0,0 +1,141 @@
+package io.github.intellij.dlanguage.highlighting.annotation.external;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.execution.ParametersListUtil;
+import io.github.intellij.dlanguage.tools.FakeTool;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class DScannerCacheTest extends TestCase {
+
+    private static final byte[] CONTENT = "void main() {}\n".getBytes(StandardCharsets.UTF_8);
+    private static final List<String> OUTPUT = Collections.singletonList("/tmp/dscanner/app.d(1:6)[warn]: Public declaration 'main' is undocumented.");
+
+    private File directory;
+    private FakeTool dscanner;
+    private DScannerCache cache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        dscanner = new FakeTool("dscanner", answering("v0.11.0"));
+        directory = dscanner.getDirectory();
+        cache = new DScannerCache(directory.toPath().resolve("cache"), 8);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            dscanner.delete();
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    /**
+     * A dscanner which only answers --version.
+     */
+    private static String answering(final String version) {
+        return "[ \"$1\" = \"--version\" ] && echo " + version + "\n";
+    }
+
+    private String key(final byte[] content, final List<String> arguments) {
+        return cache.key(dscanner.getPath(), directory.getPath(), arguments, content);
+    }
+
+    public void testOutputOfUnchangedContentIsReused() {
+        final String key = key(CONTENT, Collections.emptyList());
+        assertNotNull(key);
+        assertNull(cache.get(key));
+
+        cache.put(key, OUTPUT);
+
+        assertEquals(OUTPUT, cache.get(key(CONTENT, Collections.emptyList())));
+    }
+
+    public void testChangedContentOrArgumentsAreLintedAgain() {
+        final String key = key(CONTENT, Collections.emptyList());
+
+        assertFalse(key.equals(key("void main() { }\n".getBytes(StandardCharsets.UTF_8), Collections.emptyList())));
+        assertFalse(key.equals(key(CONTENT, Arrays.asList("-I", "/usr/include/dmd/phobos"))));
+    }
+
+    public void testTheVersionIsOnlyAskedOnceForAnUnchangedBinary() throws IOException {
+        key(CONTENT, Collections.emptyList());
+        key(CONTENT, Collections.emptyList());
+
+        assertEquals(1, dscanner.runs());
+    }
+
+    public void testANewVersionOfDscannerInvalidatesTheOutput() throws IOException {
+        final String key = key(CONTENT, Collections.emptyList());
+        cache.put(key, OUTPUT);
+
+        dscanner.write(answering("v0.12.0-beta.1"));
+
+        final String upgraded = key(CONTENT, Collections.emptyList());
+        assertFalse(key.equals(upgraded));
+        assertNull(cache.get(upgraded));
+    }
+
+    public void testAChangedConfigurationInvalidatesTheOutput() throws IOException {
+        final String key = key(CONTENT, Collections.emptyList());
+
+        FileUtil.writeToFile(new File(directory, "dscanner.ini"), "[analysis.config.StaticAnalysisConfig]\nstyle_check=\"disabled\"\n");
+
+        assertFalse(key.equals(key(CONTENT, Collections.emptyList())));
+    }
+
+    public void testTheConfigurationGivenInTheFlagsIsHashed() throws IOException {
+        final File config = new File(directory, "lint.ini");
+        FileUtil.writeToFile(config, "[analysis.config.StaticAnalysisConfig]\nstyle_check=\"enabled\"\n");
+        // as the flags are set up in the settings
+        final List<String> arguments = ParametersListUtil.parse("--config " + config.getName() + " --skipTests");
+        final String key = key(CONTENT, arguments);
+        assertEquals(key, key(CONTENT, arguments));
+
+        FileUtil.writeToFile(config, "[analysis.config.StaticAnalysisConfig]\nstyle_check=\"disabled\"\n");
+
+        assertFalse(key.equals(key(CONTENT, arguments)));
+    }
+
+    public void testNoKeyWithoutAWorkingDscanner() {
+        assertNull(cache.key(new File(directory, "missing").getPath(), directory.getPath(), Collections.emptyList(), CONTENT));
+    }
+
+    public void testOutputSurvivesARestart() {
+        final String key = key(CONTENT, Collections.emptyList());
+        cache.put(key, OUTPUT);
+
+        final DScannerCache restarted = new DScannerCache(directory.toPath().resolve("cache"), 8);
+
+        assertEquals(OUTPUT, restarted.get(restarted.key(dscanner.getPath(), directory.getPath(), Collections.emptyList(), CONTENT)));
+    }
+
+    public void testTheLeastRecentlyUsedOutputsAreDropped() throws IOException {
+        final Path entries = directory.toPath().resolve("cache");
+        final String first = key("0".getBytes(StandardCharsets.UTF_8), Collections.emptyList());
+        cache.put(first, OUTPUT);
+        assertTrue(entries.resolve(first).toFile().setLastModified(System.currentTimeMillis() + 60_000)); // used last
+        for (int i = 1; i <= 8; i++) {
+            final String key = key(String.valueOf(i).getBytes(StandardCharsets.UTF_8), Collections.emptyList());
+            cache.put(key, OUTPUT);
+            assertTrue(entries.resolve(key).toFile().setLastModified(1000L * i));
+        }
+
+        try (final Stream<Path> files = Files.list(entries)) {
+            assertTrue(files.count() <= 8);
+        }
+        assertEquals(OUTPUT, cache.get(first));
+        assertNull(cache.get(key("1".getBytes(StandardCharsets.UTF_8), Collections.emptyList())));
+    }
+}
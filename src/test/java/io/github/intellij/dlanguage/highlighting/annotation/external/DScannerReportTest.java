@@ -0,0 +1,77 @@
+package io.github.intellij.dlanguage.highlighting.annotation.external;
+
+import com.intellij.testFramework.PlatformTestUtil;
+import io.github.intellij.dlanguage.LightDlangTestCase;
+import io.github.intellij.dlanguage.highlighting.annotation.Problems;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class DScannerReportTest extends LightDlangTestCase {
+
+    private static final String TEXT = "module app;\n" +
+        "\n" +
+        "void main() {\n" +
+        "    int x;\n" +
+        "}\n";
+
+    private static String problem(final Problems problems, final int index) {
+        return problems.get(index).toString();
+    }
+
+    public void testProblemsArePlacedOnTheirLine() {
+        final Problems problems = DScanner.parseReport(Arrays.asList(
+            "/tmp/dscanner/app.d(1:1)[warn]: Module name doesn't match the file name.",
+            "/tmp/dscanner/app.d(3:6)[warn]: Public declaration 'main' is undocumented.",
+            "/tmp/dscanner/app.d(4:9)[warn]: Variable x is never used."
+        ), TEXT);
+
+        assertEquals(3, problems.size());
+        assertEquals("[warn] (0,11) Module name doesn't match the file name.", problem(problems, 0));
+        assertEquals("[warn] (18,26) Public declaration 'main' is undocumented.", problem(problems, 1));
+        assertEquals("[warn] (35,37) Variable x is never used.", problem(problems, 2));
+    }
+
+    public void testPositionsOutsideOfTheTextAreKeptInIt() {
+        final Problems problems = DScanner.parseReport(Arrays.asList(
+            "app.d(40:1)[error]: Expected '}' instead of EOF",
+            "app.d(1:80)[warn]: Line is longer than 120 characters"
+        ), TEXT);
+
+        assertEquals("[error] (40,40) Expected '}' instead of EOF", problem(problems, 0));
+        assertEquals("[warn] (11,11) Line is longer than 120 characters", problem(problems, 1));
+    }
+
+    public void testWindowsLineBreaks() {
+        final Problems problems = DScanner.parseReport(Collections.singletonList(
+            "app.d(2:1)[warn]: Public declaration 'main' is undocumented."
+        ), "module app;\r\nvoid main() {}\r\n");
+
+        assertEquals("[warn] (13,27) Public declaration 'main' is undocumented.", problem(problems, 0));
+    }
+
+    public void testLinesWhichAreNotProblemsAreIgnored() {
+        assertTrue(DScanner.parseReport(Arrays.asList("", "Could not find dscanner.ini"), TEXT).isEmpty());
+    }
+
+    /**
+     * A report of 5000 problems on a file of 50000 lines.
+     */
+    public void testALargeReportIsParsedWithinBudget() {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 50_000; i++) {
+            text.append("    int variable").append(i).append(" = ").append(i).append(";\n");
+        }
+        final List<String> report = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            report.add("/project/source/app.d(" + (i * 10 + 1) + ":9)[warn]: Variable variable" + i + " is never used.");
+        }
+
+        PlatformTestUtil.startPerformanceTest("parsing a large dscanner report", 100,
+            () -> assertEquals(5_000, DScanner.parseReport(report, text).size()))
+            .attempts(10)
+            .assertTiming();
+    }
+}
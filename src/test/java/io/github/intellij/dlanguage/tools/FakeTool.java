@@ -0,0 +1,65 @@
+package io.github.intellij.dlanguage.tools;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * A shell script standing in for dscanner, dmd or another tool, in a temporary directory of its own, which counts how
+ * often it runs. The tests using it need a POSIX shell, build.gradle leaves them out of Windows runs.
+ */
+public final class FakeTool {
+
+    @NotNull
+    private final File directory;
+    @NotNull
+    private final File runs;
+    @NotNull
+    private final File executable;
+
+    /**
+     * @param script what the tool does, after counting the run
+     */
+    public FakeTool(@NotNull final String name, @NotNull final String script) throws IOException {
+        directory = FileUtil.createTempDirectory("fake-" + name, null);
+        runs = new File(directory, "runs");
+        executable = new File(directory, name);
+        write(script);
+    }
+
+    /**
+     * Replaces what the tool does, as a new version of it would.
+     */
+    public void write(@NotNull final String script) throws IOException {
+        FileUtil.writeToFile(executable, "#!/bin/sh\n" +
+            "echo run >> '" + runs.getPath() + "'\n" +
+            script);
+        if (!executable.setExecutable(true)) {
+            throw new IOException("Could not make " + executable + " executable");
+        }
+    }
+
+    @NotNull
+    public String getPath() {
+        return executable.getPath();
+    }
+
+    /**
+     * The directory of the tool, where tests may put other files too.
+     */
+    @NotNull
+    public File getDirectory() {
+        return directory;
+    }
+
+    public int runs() throws IOException {
+        return runs.exists() ? Files.readAllLines(runs.toPath()).size() : 0;
+    }
+
+    public void delete() {
+        FileUtil.delete(directory);
+    }
+}
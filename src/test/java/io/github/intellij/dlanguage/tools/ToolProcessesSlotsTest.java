@@ -0,0 +1,66 @@
+package io.github.intellij.dlanguage.tools;
+
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import io.github.intellij.dlanguage.LightDlangTestCase;
+import io.github.intellij.dlanguage.tools.ToolProcesses.Priority;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class ToolProcessesSlotsTest extends LightDlangTestCase {
+
+    public void testInteractiveRequestsGoFirst() throws InterruptedException {
+        final ToolProcesses.Slots slots = new ToolProcesses.Slots(1);
+        slots.acquire(Priority.BACKGROUND, new EmptyProgressIndicator());
+
+        final List<Priority> order = Collections.synchronizedList(new ArrayList<>());
+        final Thread background = waiting(slots, Priority.BACKGROUND, order);
+        sleep(200);
+        final Thread interactive = waiting(slots, Priority.INTERACTIVE, order);
+        sleep(200);
+        assertTrue(order.isEmpty());
+
+        slots.release();
+        background.join(5000);
+        interactive.join(5000);
+
+        assertEquals(Arrays.asList(Priority.INTERACTIVE, Priority.BACKGROUND), order);
+    }
+
+    public void testCancellingStopsWaiting() {
+        final ToolProcesses.Slots slots = new ToolProcesses.Slots(1);
+        slots.acquire(Priority.INTERACTIVE, new EmptyProgressIndicator());
+        final ProgressIndicator indicator = new EmptyProgressIndicator();
+        indicator.cancel();
+
+        try {
+            slots.acquire(Priority.INTERACTIVE, indicator);
+            fail("a cancelled request got a slot");
+        } catch (final ProcessCanceledException expected) {
+            // expected
+        }
+    }
+
+    private static Thread waiting(final ToolProcesses.Slots slots, final Priority priority, final List<Priority> order) {
+        final Thread thread = new Thread(() -> {
+            slots.acquire(priority, new EmptyProgressIndicator());
+            order.add(priority);
+            sleep(50);
+            slots.release();
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
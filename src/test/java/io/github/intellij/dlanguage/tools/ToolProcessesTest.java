@@ -0,0 +1,117 @@
+package io.github.intellij.dlanguage.tools;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.configurations.GeneralCommandLine;
+import com.intellij.execution.process.ProcessOutput;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.util.io.StreamUtil;
+import io.github.intellij.dlanguage.LightDlangTestCase;
+import io.github.intellij.dlanguage.tools.ToolProcesses.Priority;
+import io.github.intellij.dlanguage.tools.ToolProcesses.Tool;
+
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs processes through a POSIX shell, build.gradle leaves it out of Windows runs.
+ */
+public class ToolProcessesTest extends LightDlangTestCase {
+
+    private final ToolProcesses processes = new ToolProcesses();
+
+    public void testOutputIsCapturedAndRecorded() throws ExecutionException {
+        final ProcessOutput output = processes.run(Tool.DSCANNER, Priority.INTERACTIVE,
+            new GeneralCommandLine("/bin/sh", "-c", "echo app.d; echo oops >&2; exit 1"), new EmptyProgressIndicator());
+
+        assertEquals("app.d\n", output.getStdout());
+        assertEquals("oops\n", output.getStderr());
+        assertEquals(1, output.getExitCode());
+        final ToolProcesses.Stats stats = processes.stats(Tool.DSCANNER);
+        assertEquals(1, stats.processes.get());
+        assertTrue(stats.wallNanos.get() > 0);
+        assertEquals(0, processes.stats(Tool.DUB).processes.get());
+    }
+
+    public void testInputGoesToTheProcess() throws ExecutionException {
+        final ProcessOutput output = processes.run(Tool.DCD_CLIENT, Priority.INTERACTIVE,
+            new GeneralCommandLine("cat"), stdin -> stdin.write("void main() {}".getBytes(StandardCharsets.UTF_8)),
+            null, new EmptyProgressIndicator());
+
+        assertEquals("void main() {}", output.getStdout());
+    }
+
+    public void testOutputIsReadAsItIsWritten() throws ExecutionException {
+        final byte[] source = "module app; void main() {}".getBytes(StandardCharsets.UTF_8);
+
+        final String read = processes.read(Tool.DCD_CLIENT, Priority.INTERACTIVE, new GeneralCommandLine("cat"),
+            stdin -> stdin.write(source, 0, 11),
+            stdout -> StreamUtil.readText(new InputStreamReader(stdout, StandardCharsets.UTF_8)),
+            new EmptyProgressIndicator());
+
+        assertEquals("module app;", read);
+        assertEquals(1, processes.stats(Tool.DCD_CLIENT).processes.get());
+    }
+
+    public void testInputTheProcessDoesNotReadDoesNotBlock() throws ExecutionException {
+        // more than a pipe holds, to a process that never reads it
+        final byte[] input = new byte[1 << 20];
+
+        final ProcessOutput output = processes.run(Tool.DCD_CLIENT, Priority.INTERACTIVE,
+            new GeneralCommandLine("/bin/sh", "-c", "echo done"), stdin -> stdin.write(input), null,
+            new EmptyProgressIndicator());
+
+        assertEquals("done\n", output.getStdout());
+    }
+
+    public void testCancellingStopsReading() {
+        final ProgressIndicator indicator = new EmptyProgressIndicator();
+        final Thread canceller = new Thread(() -> {
+            sleep(200);
+            indicator.cancel();
+        });
+        canceller.start();
+
+        final long start = System.nanoTime();
+        try {
+            processes.read(Tool.DCD_CLIENT, Priority.INTERACTIVE, new GeneralCommandLine("sleep", "30"), null,
+                stdout -> StreamUtil.readText(new InputStreamReader(stdout, StandardCharsets.UTF_8)), indicator);
+            fail("the process wasn't cancelled");
+        } catch (final ProcessCanceledException expected) {
+            // expected
+        } catch (final ExecutionException e) {
+            fail(e.getMessage());
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+        assertEquals(1, processes.stats(Tool.DCD_CLIENT).cancellations.get());
+    }
+
+    public void testCancellingStopsTheProcess() throws ExecutionException {
+        final ProgressIndicator indicator = new EmptyProgressIndicator();
+        final Thread canceller = new Thread(() -> {
+            sleep(200);
+            indicator.cancel();
+        });
+        canceller.start();
+
+        final long start = System.nanoTime();
+        try {
+            processes.run(Tool.COMPILER, Priority.BACKGROUND, new GeneralCommandLine("sleep", "30"), indicator);
+            fail("the process wasn't cancelled");
+        } catch (final ProcessCanceledException expected) {
+            // expected
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+        assertEquals(1, processes.stats(Tool.COMPILER).cancellations.get());
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
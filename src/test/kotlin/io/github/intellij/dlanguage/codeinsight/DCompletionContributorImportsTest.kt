@@ -0,0 +1,107 @@
+package io.github.intellij.dlanguage.codeinsight
+
+import com.intellij.testFramework.PlatformTestUtil
+import com.intellij.testFramework.fixtures.BasePlatformTestCase
+
+class DCompletionContributorImportsTest : BasePlatformTestCase() {
+
+    fun testAcceptingASymbolOfAnotherModuleImportsIt() {
+        myFixture.addFileToProject("std/stdio.d", """
+            module std.stdio;
+            void writeln() {}
+        """.trimIndent())
+        myFixture.configureByText("app.d", """
+            module app;
+
+            void main() {
+                writel<caret>
+            }
+        """.trimIndent())
+
+        val lookups = myFixture.completeBasic()
+        if (lookups != null) {
+            myFixture.lookup.currentItem = lookups.first { it.lookupString == "writeln()" }
+            myFixture.finishLookup('\n')
+        }
+
+        myFixture.checkResult("""
+            module app;
+
+            import std.stdio;
+
+            void main() {
+                writeln()
+            }
+        """.trimIndent())
+    }
+
+    fun testImportIsAddedAfterTheLastImport() {
+        myFixture.addFileToProject("std/stdio.d", "module std.stdio; void writeln() {}")
+        myFixture.addFileToProject("std/conv.d", "module std.conv; void toChars() {}")
+        myFixture.configureByText("app.d", """
+            import std.stdio;
+
+            void main() {
+                toCh<caret>
+            }
+        """.trimIndent())
+
+        val lookups = myFixture.completeBasic()
+        if (lookups != null) {
+            myFixture.lookup.currentItem = lookups.first { it.lookupString == "toChars()" }
+            myFixture.finishLookup('\n')
+        }
+
+        myFixture.checkResult("""
+            import std.stdio;
+            import std.conv;
+
+            void main() {
+                toChars()
+            }
+        """.trimIndent())
+    }
+
+    fun testSymbolsOfImportedModulesAreNotOffered() {
+        myFixture.addFileToProject("lib.d", "module lib; void fooFromLib() {}")
+        myFixture.configureByText("app.d", """
+            import lib;
+            void main() {
+                fooF<caret>
+            }
+        """.trimIndent())
+
+        val variants = myFixture.completeBasic()?.map { it.lookupString } ?: emptyList()
+
+        assertDoesntContain(variants, "fooFromLib()")
+    }
+
+    fun testResultsAreCapped() {
+        for (i in 0 until 3 * DCompletionContributorImports.MAX_RESULTS) {
+            myFixture.addFileToProject("lib$i.d", "module lib$i; void capped$i() {}")
+        }
+        myFixture.configureByText("app.d", "void main() { capp<caret> }")
+
+        val variants = myFixture.completeBasic()?.map { it.lookupString } ?: emptyList()
+
+        assertEquals(DCompletionContributorImports.MAX_RESULTS, variants.size)
+    }
+
+    /**
+     * A phobos sized index: 200 modules declaring 50 symbols each.
+     */
+    fun testCompletionStaysWithinBudgetOnALargeIndex() {
+        for (module in 0 until 200) {
+            val declarations = (0 until 50).joinToString("\n") { "void symbol${module}x$it() {}" }
+            myFixture.addFileToProject("pkg/mod$module.d", "module pkg.mod$module;\n$declarations")
+        }
+        val text = "void main() { symbol1<caret> }"
+
+        PlatformTestUtil.startPerformanceTest("completion on a large index", 300) {
+            val variants = myFixture.completeBasic()
+            assertEquals(DCompletionContributorImports.MAX_RESULTS, variants.size)
+        }.setup {
+            myFixture.configureByText("app.d", text)
+        }.attempts(10).assertTiming()
+    }
+}
@@ -0,0 +1,64 @@
+package io.github.intellij.dlanguage.codeinsight
+
+import com.intellij.testFramework.fixtures.BasePlatformTestCase
+
+class DKeywordCompletionProviderTest : BasePlatformTestCase() {
+
+    private fun variants(text: String): List<String> {
+        myFixture.configureByText("app.d", text)
+        return myFixture.completeBasic()?.map { it.lookupString } ?: listOf(myFixture.editor.document.text)
+    }
+
+    fun testCaseIsOnlyOfferedInASwitch() {
+        assertContainsElements(variants("void f(int x) { switch (x) { ca<caret> } }"), "case", "cast")
+        assertDoesntContain(variants("void f() { ca<caret> }"), "case")
+    }
+
+    fun testStatementsAreNotOfferedInExpressions() {
+        assertContainsElements(variants("void f() { sc<caret> }"), "scope")
+
+        val inExpression = variants("void f() { int x = s<caret>; }")
+        assertContainsElements(inExpression, "super", "short")
+        assertDoesntContain(inExpression, "scope", "switch", "static", "struct")
+    }
+
+    fun testDeclarationsAreOfferedOutsideOfFunctions() {
+        val variants = variants("""
+            module app;
+            s<caret>
+        """.trimIndent())
+
+        assertContainsElements(variants, "struct", "static", "shared")
+        assertDoesntContain(variants, "switch", "super", "module")
+    }
+
+    fun testModuleIsOfferedAfterLeadingComments() {
+        val variants = variants("""
+            // Copyright the authors
+            /** The application. */
+            m<caret>
+        """.trimIndent())
+
+        assertContainsElements(variants, "module", "mixin")
+    }
+
+    fun testParameterStorageClasses() {
+        val variants = variants("void f(la<caret>) {}")
+
+        assertTrue(variants.toString(), variants.contains("lazy") || variants.single().contains("lazy"))
+    }
+
+    fun testNothingAfterADot() {
+        assertDoesntContain(variants("void f() { x.fo<caret> }"), "for", "foreach")
+    }
+
+    fun testElementsAreBuiltOnce() {
+        myFixture.configureByText("app.d", "void f() { wh<caret> }")
+        val first = myFixture.completeBasic()
+        myFixture.configureByText("app.d", "void f() { wh<caret> }")
+        val second = myFixture.completeBasic()
+
+        // "while" and "with"
+        assertSame(first!!.first { it.lookupString == "while" }, second!!.first { it.lookupString == "while" })
+    }
+}
@@ -0,0 +1,56 @@
+package io.github.intellij.dlanguage.codeinsight
+
+import com.intellij.ide.util.PropertiesComponent
+import com.intellij.testFramework.fixtures.BasePlatformTestCase
+
+class DNativeCompletionProviderTest : BasePlatformTestCase() {
+
+    override fun setUp() {
+        super.setUp()
+        PropertiesComponent.getInstance().setValue("USE_NATIVE_CODE_COMPLETION", true)
+    }
+
+    override fun tearDown() {
+        try {
+            PropertiesComponent.getInstance().setValue("USE_NATIVE_CODE_COMPLETION", false)
+        } finally {
+            super.tearDown()
+        }
+    }
+
+    fun testOnlyVariantsMatchingThePrefixAreOffered() {
+        myFixture.addFileToProject("lib.d", """
+            module lib;
+            void fooFromLib() {}
+            void barFromLib() {}
+        """.trimIndent())
+        myFixture.configureByText("main.d", """
+            import lib;
+            void fooLocal() {}
+            void main() {
+                foo<caret>
+            }
+        """.trimIndent())
+
+        val variants = myFixture.completeBasic()?.map { it.lookupString } ?: emptyList()
+
+        assertContainsElements(variants, "fooFromLib()", "fooLocal()")
+        assertDoesntContain(variants, "barFromLib()", "foreach", "main()")
+    }
+
+    fun testImportCompletesNextPartOfModuleName() {
+        myFixture.addFileToProject("std/algorithm.d", """
+            module std.algorithm;
+            void map() {}
+        """.trimIndent())
+        myFixture.configureByText("main.d", "import std.alg<caret>;")
+
+        val lookups = myFixture.completeBasic()
+        if (lookups == null) {
+            // the only variant was inserted
+            myFixture.checkResult("import std.algorithm;")
+        } else {
+            assertContainsElements(lookups.map { it.lookupString }, "algorithm")
+        }
+    }
+}
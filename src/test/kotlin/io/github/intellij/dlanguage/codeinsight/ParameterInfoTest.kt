@@ -0,0 +1,127 @@
+package io.github.intellij.dlanguage.codeinsight
+
+import com.intellij.openapi.command.WriteCommandAction
+import com.intellij.psi.PsiDocumentManager
+import com.intellij.psi.PsiElement
+import com.intellij.psi.util.PsiTreeUtil
+import com.intellij.testFramework.fixtures.BasePlatformTestCase
+import io.github.intellij.dlanguage.utils.FunctionCallExpression
+import io.github.intellij.dlanguage.utils.NewExpression
+
+class ParameterInfoTest : BasePlatformTestCase() {
+
+    private inline fun <reified T : PsiElement> callAtCaret(): T =
+        PsiTreeUtil.getParentOfType(myFixture.file.findElementAt(myFixture.caretOffset), T::class.java)!!
+
+    fun testFunctionOverloads() {
+        myFixture.configureByText("app.d", """
+            void foo(int a) {}
+            void foo(int a, string b) {}
+            void main() { foo(<caret>); }
+        """.trimIndent())
+
+        val overloads = ParameterInfo.overloads(callAtCaret<FunctionCallExpression>())
+
+        assertSameElements(overloads.toList(), "(int a)", "(int a, string b)")
+    }
+
+    fun testStructConstructorsInConditionalBlocksAreFound() {
+        myFixture.configureByText("app.d", """
+            struct S {
+                this(int x) {}
+                version (Windows) {
+                    this(string s) {}
+                }
+                struct Inner {
+                    this(double d) {}
+                }
+                void method(long l) {}
+            }
+            void main() { S(<caret>); }
+        """.trimIndent())
+
+        val overloads = ParameterInfo.overloads(callAtCaret<FunctionCallExpression>())
+
+        assertSameElements(overloads.toList(), "(int x)", "(string s)")
+    }
+
+    fun testStructConstructorsInAttributeBlocksAreFound() {
+        myFixture.configureByText("app.d", """
+            struct S {
+                private {
+                    this(int x) {}
+                }
+                public:
+                this(string s) {}
+            }
+            void main() { S(<caret>); }
+        """.trimIndent())
+
+        val overloads = ParameterInfo.overloads(callAtCaret<FunctionCallExpression>())
+
+        assertSameElements(overloads.toList(), "(int x)", "(string s)")
+    }
+
+    fun testClassConstructorsOfAnotherFile() {
+        myFixture.addFileToProject("lib.d", """
+            module lib;
+            class C {
+                this() {}
+                this(int a, int b) {}
+            }
+        """.trimIndent())
+        myFixture.configureByText("app.d", """
+            import lib;
+            void main() { auto c = new C(<caret>); }
+        """.trimIndent())
+        val newExpression = callAtCaret<NewExpression>()
+
+        val overloads = ConstructorParameterInfo.overloads(newExpression)
+
+        assertSameElements(overloads.toList(), "", "int a, int b")
+        assertSame("the overloads are kept per call site", overloads, ConstructorParameterInfo.overloads(newExpression))
+    }
+
+    fun testStubbedConstructorsOfNestedScopesAreLeftOut() {
+        myFixture.addFileToProject("lib.d", """
+            module lib;
+            class C {
+                this(int a) {}
+                version (Posix) {
+                    private this(string s) {}
+                }
+                union U {
+                    this(double d) {}
+                }
+                mixin template M() {
+                    this(long l) {}
+                }
+            }
+        """.trimIndent())
+        myFixture.configureByText("app.d", """
+            import lib;
+            void main() { auto c = new C(<caret>); }
+        """.trimIndent())
+
+        val overloads = ConstructorParameterInfo.overloads(callAtCaret<NewExpression>())
+
+        assertSameElements(overloads.toList(), "int a", "string s")
+    }
+
+    fun testOverloadsAreRecomputedAfterAChange() {
+        myFixture.configureByText("app.d", """
+            void foo(int a) {}
+            void main() { foo(<caret>); }
+        """.trimIndent())
+        val before = ParameterInfo.overloads(callAtCaret<FunctionCallExpression>())
+
+        WriteCommandAction.runWriteCommandAction(project) {
+            myFixture.editor.document.insertString(0, "void foo(string s) {}\n")
+            PsiDocumentManager.getInstance(project).commitAllDocuments()
+        }
+        val after = ParameterInfo.overloads(callAtCaret<FunctionCallExpression>())
+
+        assertSameElements(before.toList(), "(int a)")
+        assertSameElements(after.toList(), "(int a)", "(string s)")
+    }
+}
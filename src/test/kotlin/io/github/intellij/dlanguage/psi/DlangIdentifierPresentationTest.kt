@@ -0,0 +1,35 @@
+package io.github.intellij.dlanguage.psi
+
+import com.intellij.psi.util.PsiTreeUtil
+import com.intellij.testFramework.fixtures.BasePlatformTestCase
+import io.github.intellij.dlanguage.utils.Identifier
+
+class DlangIdentifierPresentationTest : BasePlatformTestCase() {
+
+    fun testPresentationDescribesClosestDeclaration() {
+        myFixture.configureByText("main.d", """
+            class Foo {
+                void bar(int param<caret>eter) {}
+            }
+        """.trimIndent())
+
+        assertEquals("parameter [Parameter] (parameter)", identifierAtCaret().presentation!!.presentableText)
+    }
+
+    fun testPresentationOfClassName() {
+        myFixture.configureByText("main.d", "class Fo<caret>o {}")
+
+        assertEquals("Foo [Class] (Foo)", identifierAtCaret().presentation!!.presentableText)
+    }
+
+    fun testPresentationIsCachedUntilFileChanges() {
+        myFixture.configureByText("main.d", "void fo<caret>o() {}")
+        val identifier = identifierAtCaret()
+
+        assertSame(identifier.presentation, identifier.presentation)
+        assertEquals("foo [Function] (foo)", identifier.presentation!!.presentableText)
+    }
+
+    private fun identifierAtCaret(): Identifier =
+        PsiTreeUtil.getParentOfType(myFixture.file.findElementAt(myFixture.caretOffset), Identifier::class.java)!!
+}
@@ -0,0 +1,108 @@
+package io.github.intellij.dlanguage.resolve
+
+import com.intellij.openapi.command.WriteCommandAction
+import com.intellij.openapi.util.TextRange
+import com.intellij.psi.PsiDocumentManager
+import com.intellij.psi.PsiPolyVariantReference
+import com.intellij.psi.util.PsiTreeUtil
+import com.intellij.testFramework.fixtures.BasePlatformTestCase
+import io.github.intellij.dlanguage.psi.references.DResolveResult
+import io.github.intellij.dlanguage.utils.FunctionDeclaration
+import io.github.intellij.dlanguage.utils.Identifier
+
+class DReferenceResolveCacheTest : BasePlatformTestCase() {
+
+    fun testResolveIsCachedUntilPsiChanges() {
+        myFixture.configureByText("main.d", """
+            void foo() {}
+            void main() {
+                fo<caret>o();
+            }
+        """.trimIndent())
+
+        val reference = referenceAtCaret()
+        assertSame(reference, referenceAtCaret())
+
+        val first = reference.multiResolve(false)
+        assertSize(1, first)
+        assertInstanceOf((first[0] as DResolveResult).declaration, FunctionDeclaration::class.java)
+        assertSame(first, reference.multiResolve(false))
+
+        WriteCommandAction.runWriteCommandAction(project) {
+            myFixture.editor.document.insertString(0, "\n")
+            PsiDocumentManager.getInstance(project).commitDocument(myFixture.editor.document)
+        }
+
+        val afterChange = referenceAtCaret().multiResolve(false)
+        assertSize(1, afterChange)
+        assertNotSame(first, afterChange)
+    }
+
+    fun testTheRangeFollowsTheName() {
+        myFixture.configureByText("main.d", """
+            void foobar() {}
+            void main() {
+                fo<caret>o();
+            }
+        """.trimIndent())
+        assertEquals(TextRange(0, 3), referenceAtCaret().rangeInElement)
+
+        WriteCommandAction.runWriteCommandAction(project) {
+            myFixture.editor.document.insertString(myFixture.caretOffset + 1, "bar")
+            PsiDocumentManager.getInstance(project).commitDocument(myFixture.editor.document)
+        }
+
+        val reference = referenceAtCaret()
+        assertEquals(TextRange(0, 6), reference.rangeInElement)
+        assertSize(1, reference.multiResolve(false))
+    }
+
+    fun testReferencesOfAResolvedFileAreNotResolvedAgain() {
+        myFixture.configureByText("main.d", """
+            void foo() {}
+            void main() {
+                fo<caret>o();
+            }
+        """.trimIndent())
+        val metrics = DResolveMetrics.getInstance(project)
+        metrics.reset()
+
+        val batch = DFileResolver.results(myFixture.file)
+        val resolvesOfTheFile = resolves(metrics)
+        val results = referenceAtCaret().multiResolve(false)
+
+        assertEquals(resolvesOfTheFile, resolves(metrics))
+        assertSize(1, results)
+        assertEquals(batch.getValue(identifierAtCaret()), setOf((results[0] as DResolveResult).declaration))
+        assertFalse("declaration names aren't kept", batch.keys.any { it.parent is FunctionDeclaration })
+    }
+
+    fun testCachedResolvesAreCountedAsHits() {
+        myFixture.configureByText("main.d", """
+            void foo() {}
+            void main() {
+                fo<caret>o();
+            }
+        """.trimIndent())
+        val metrics = DResolveMetrics.getInstance(project)
+        metrics.reset()
+
+        val reference = referenceAtCaret()
+        reference.multiResolve(false)
+        reference.multiResolve(false)
+        reference.multiResolve(false)
+
+        val report = metrics.report()
+        assertTrue(report, report.startsWith("Resolves: 1 "))
+        assertTrue(report, report.contains("Lookups: 3, cache hit ratio: 66.7%"))
+        assertTrue(report, report.contains("foo at main.d:"))
+    }
+
+    private fun resolves(metrics: DResolveMetrics): Int =
+        Regex("Resolves: (\\d+)").find(metrics.report())!!.groupValues[1].toInt()
+
+    private fun identifierAtCaret(): Identifier =
+        PsiTreeUtil.getParentOfType(myFixture.file.findElementAt(myFixture.caretOffset), Identifier::class.java)!!
+
+    private fun referenceAtCaret(): PsiPolyVariantReference = identifierAtCaret().reference as PsiPolyVariantReference
+}
@@ -0,0 +1,92 @@
+package io.github.intellij.dlanguage.resolve
+
+import com.intellij.openapi.vfs.VirtualFileFilter
+import com.intellij.psi.PsiNamedElement
+import com.intellij.psi.PsiPolyVariantReference
+import com.intellij.psi.ResolveState
+import com.intellij.psi.impl.PsiManagerEx
+import com.intellij.psi.util.PsiTreeUtil
+import com.intellij.testFramework.fixtures.BasePlatformTestCase
+import io.github.intellij.dlanguage.psi.DlangFile
+import io.github.intellij.dlanguage.psi.references.DResolveResult
+import io.github.intellij.dlanguage.stubs.index.DTopLevelDeclarationIndex
+import io.github.intellij.dlanguage.utils.Identifier
+
+/**
+ * Resolving into a file that isn't open must be answered from its stubs, without loading (parsing) its AST.
+ */
+class DStubResolveTest : BasePlatformTestCase() {
+
+    fun testResolvingImportedSymbolDoesNotLoadTargetAst() {
+        val lib = myFixture.addFileToProject("lib.d", """
+            module lib;
+
+            struct Point {
+                int x;
+                int y;
+            }
+
+            void foo() {}
+        """.trimIndent())
+        myFixture.configureByText("main.d", """
+            import lib;
+
+            void main() {
+                fo<caret>o();
+            }
+        """.trimIndent())
+        // make sure the indexes are built before file loading is forbidden
+        DTopLevelDeclarationIndex.getTopLevelSymbols("foo", "lib", project)
+
+        PsiManagerEx.getInstanceEx(project).setAssertOnFileLoadingFilter(VirtualFileFilter { it == lib.virtualFile }, testRootDisposable)
+
+        val identifier = PsiTreeUtil.getParentOfType(myFixture.file.findElementAt(myFixture.caretOffset), Identifier::class.java)!!
+        val results = (identifier.reference as PsiPolyVariantReference).multiResolve(false)
+
+        assertSize(1, results)
+        val declaration = (results[0] as DResolveResult).declaration
+        assertEquals("foo", declaration.name)
+        assertEquals(lib, declaration.containingFile)
+    }
+
+    fun testModuleSymbolTableOfUnloadedFileIsBuiltFromStubs() {
+        val lib = myFixture.addFileToProject("lib.d", """
+            module lib;
+
+            struct Point {
+                int x;
+            }
+
+            void foo(int parameter) {
+                int local;
+            }
+        """.trimIndent())
+        DTopLevelDeclarationIndex.getTopLevelSymbols("foo", "lib", project)
+
+        PsiManagerEx.getInstanceEx(project).setAssertOnFileLoadingFilter(VirtualFileFilter { it == lib.virtualFile }, testRootDisposable)
+
+        val table = ScopeSymbolTable.of(lib)
+        assertSize(1, table.declarations("Point"))
+        assertSize(1, table.declarations("x"))
+        assertSize(1, table.declarations("foo"))
+        assertEmpty(table.declarations("parameter"))
+        assertEmpty(table.declarations("local"))
+    }
+
+    fun testModuleNameOfUnloadedFileComesFromStubs() {
+        val lib = myFixture.addFileToProject("std/lib.d", """
+            module std.lib;
+
+            void foo() {}
+        """.trimIndent()) as DlangFile
+        DTopLevelDeclarationIndex.getTopLevelSymbols("foo", "std.lib", project)
+
+        PsiManagerEx.getInstanceEx(project).setAssertOnFileLoadingFilter(VirtualFileFilter { it == lib.virtualFile }, testRootDisposable)
+
+        assertEquals("std.lib", lib.fullyQualifiedModuleName)
+        assertEquals("lib", lib.moduleName)
+        val declarations = mutableListOf<String>()
+        lib.processDeclarations({ element, _ -> declarations.add((element as PsiNamedElement).name!!); true }, ResolveState.initial(), null, lib)
+        assertContainsElements(declarations, "foo")
+    }
+}
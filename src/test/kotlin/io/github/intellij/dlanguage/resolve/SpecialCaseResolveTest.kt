@@ -0,0 +1,75 @@
+package io.github.intellij.dlanguage.resolve
+
+import com.intellij.openapi.command.WriteCommandAction
+import com.intellij.psi.PsiDocumentManager
+import com.intellij.psi.util.PsiTreeUtil
+import com.intellij.testFramework.fixtures.BasePlatformTestCase
+import io.github.intellij.dlanguage.utils.Identifier
+import io.github.intellij.dlanguage.utils.LabeledStatement
+
+class SpecialCaseResolveTest : BasePlatformTestCase() {
+
+    fun testGotoResolvesToLabelOfFunction() {
+        myFixture.configureByText("main.d", """
+            void main() {
+                int i;
+            start:
+                i++;
+            end:
+                if (i < 10)
+                    goto sta<caret>rt;
+            }
+        """.trimIndent())
+
+        val results = SpecialCaseResolve.findDefinitionNode(identifierAtCaret())
+
+        assertSize(1, results)
+        val label = results.first()
+        assertInstanceOf(label, LabeledStatement::class.java)
+        assertEquals("start", label.name)
+    }
+
+    fun testImportedModuleResolvesToFile() {
+        val lib = myFixture.addFileToProject("pkg/lib.d", "module pkg.lib;")
+        myFixture.configureByText("main.d", "import pkg.l<caret>ib;")
+
+        val identifier = identifierAtCaret()
+        assertTrue(SpecialCaseResolve.isApplicable(identifier))
+        assertEquals(setOf(lib), SpecialCaseResolve.findDefinitionNode(identifier))
+        // answered from the project cache the second time
+        assertEquals(setOf(lib), SpecialCaseResolve.findDefinitionNode(identifier))
+    }
+
+    fun testOnlyModuleDeclarationChangesInvalidateTheModuleFiles() {
+        val lib = myFixture.addFileToProject("pkg/lib.d", "module pkg.lib;\nvoid foo() {}\n")
+        val document = PsiDocumentManager.getInstance(project).getDocument(lib)!!
+        val tracker = ModuleDeclarationTracker.getInstance(project)
+
+        val beforeBodyEdit = tracker.modificationCount
+        WriteCommandAction.runWriteCommandAction(project) {
+            document.insertString(document.textLength, "void bar() {}\n")
+            PsiDocumentManager.getInstance(project).commitDocument(document)
+        }
+        assertEquals(beforeBodyEdit, tracker.modificationCount)
+
+        WriteCommandAction.runWriteCommandAction(project) {
+            document.replaceString(0, "module pkg.lib;".length, "module pkg.other;")
+            PsiDocumentManager.getInstance(project).commitDocument(document)
+        }
+        assertTrue(tracker.modificationCount > beforeBodyEdit)
+    }
+
+    fun testOrdinaryIdentifierIsNotSpecialCase() {
+        myFixture.configureByText("main.d", """
+            void foo() {}
+            void main() {
+                fo<caret>o();
+            }
+        """.trimIndent())
+
+        assertNull(SpecialCaseResolve.resolve(identifierAtCaret()))
+    }
+
+    private fun identifierAtCaret(): Identifier =
+        PsiTreeUtil.getParentOfType(myFixture.file.findElementAt(myFixture.caretOffset), Identifier::class.java)!!
+}
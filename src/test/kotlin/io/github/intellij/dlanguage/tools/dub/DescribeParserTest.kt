@@ -29,6 +29,10 @@ class DescribeParserTest : LightPlatformTestCase() {
         assertEquals(2, dubProject.platform.size)
 
         assertDubPackageValid("root package", dubProject.rootPackage)
+        assertEquals(7, dubProject.rootPackage.versions.size)
+        assertEquals("VibeDefaultMain", dubProject.rootPackage.versions[0])
+        assertEmpty(dubProject.rootPackage.debugVersions)
+        assertEmpty(dubProject.rootPackage.dflags)
 
         assertFalse(
             "The Root package should not be included in the dependencies",
@@ -55,6 +59,8 @@ class DescribeParserTest : LightPlatformTestCase() {
         assertNotNull("$name Should have resources", pkg.resources)
         assertNotNull("$name Should have sourceFiles", pkg.sourceFiles)
         assertNotNull("$name Should have stringImportFiles", pkg.stringImportFiles)
+        assertNotNull("$name Should have versions", pkg.versions)
+        assertNotNull("$name Should have dflags", pkg.dflags)
     }
 
     private fun assertNotBlank(message: String, value: String) {